@@ -58,6 +58,15 @@ public class IMConnection {
 	/** Instance used to read the messages. */
 	private MessageScanner messageScanner;
 
+	/** True if this connection asks the server for the binary protocol. */
+	private boolean binaryProtocol;
+
+	/** Most times a login follows the servers redirecting it. */
+	private static final int MAX_REDIRECTS = 3;
+
+	/** Times the current login has been redirected. */
+	private int redirects;
+
 	/**
 	 * Creates an instance that will manage a connection with an IM server, but does
 	 * not begin the process of making a connection to the IM server.
@@ -88,6 +97,17 @@ public class IMConnection {
 		this.password = password;
 	}
 
+	/**
+	 * Choose whether this connection talks to the server using the binary
+	 * protocol instead of text. This must be called before connecting; the
+	 * server answers in whichever protocol the login was sent with.
+	 * 
+	 * @param useBinary True to use the binary protocol; false to use text.
+	 */
+	public void setBinaryProtocol(boolean useBinary) {
+		binaryProtocol = useBinary;
+	}
+
 	/**
 	 * Add the given listener to be notified whenever 1 or more Messages are
 	 * received from IM server via this connection.
@@ -124,6 +144,7 @@ public class IMConnection {
 				throw new IllegalNameException("Cannot log in to the server using the name " + name);
 			}
 		}
+		redirects = 0;
 		boolean retVal = checkForCrudOperation(option);
 		MessageScanner rms = MessageScanner.getInstance();
 		addMessageListener(rms);
@@ -262,6 +283,45 @@ public class IMConnection {
 		socketConnection.print(grpMessage);
 	}
 	
+	/**
+	 * Broadcast a message to the users subscribed to a channel; a message on
+	 * the "global" channel goes to everyone.
+	 * 
+	 * @param channel Name of the channel.
+	 * @param message Text of the message.
+	 */
+	public void sendChannelMessage(String channel, String message) {
+		if (!connectionActive()) {
+			throw new IllegalOperationException("Cannot send a message if you are not connected to a server!\n");
+		}
+		Message chnMessage = Message.makeChannelMessage(userName, channel, message);
+		socketConnection.print(chnMessage);
+	}
+
+	/**
+	 * Start receiving the messages broadcast on a channel.
+	 * 
+	 * @param channel Name of the channel.
+	 */
+	public void sendSubscribeMessage(String channel) {
+		if (!connectionActive()) {
+			throw new IllegalOperationException("Cannot send a message if you are not connected to a server!\n");
+		}
+		socketConnection.print(Message.makeSubscribeMessage(userName, channel));
+	}
+
+	/**
+	 * Stop receiving the messages broadcast on a channel.
+	 * 
+	 * @param channel Name of the channel.
+	 */
+	public void sendUnsubscribeMessage(String channel) {
+		if (!connectionActive()) {
+			throw new IllegalOperationException("Cannot send a message if you are not connected to a server!\n");
+		}
+		socketConnection.print(Message.makeUnsubscribeMessage(userName, channel));
+	}
+	
 	public void sendGroupUpdateMessage(String groupName, String users) {
 		if (!connectionActive()) {
 			throw new IllegalOperationException("Cannot send a message if you are not connected to a server!\n");
@@ -329,6 +389,7 @@ public class IMConnection {
 		
 		try {
 			socketConnection = new SocketNB(hostName, portNum);
+			socketConnection.setBinary(binaryProtocol);
 			socketConnection.startIMConnection();
 		} catch (IOException e) {
 			// Report the error
@@ -366,6 +427,7 @@ public class IMConnection {
 		
 		try {
 			socketConnection = new SocketNB(hostName, portNum);
+			socketConnection.setBinary(binaryProtocol);
 			socketConnection.startIMConnection();
 		} catch (IOException e) {
 			// Report the error
@@ -394,6 +456,7 @@ public class IMConnection {
 		
 		try {
 			socketConnection = new SocketNB(hostName, portNum);
+			socketConnection.setBinary(binaryProtocol);
 			socketConnection.startIMConnection();
 		} catch (IOException e) {
 			// Report the error
@@ -415,6 +478,38 @@ public class IMConnection {
 		return true;
 	}
 
+	/**
+	 * Log in again at the server of the cluster that the one we logged in to
+	 * sent us to, dropping the connection to the first.
+	 * 
+	 * @param address Host and port, as host:port, of the server to log in at.
+	 * @return True if the new connection was made; false if the address is
+	 *         not usable or we have been redirected too often.
+	 */
+	protected boolean redirect(String address) {
+		int colon = (address != null) ? address.lastIndexOf(':') : -1;
+		if ((colon <= 0) || (redirects >= MAX_REDIRECTS)) {
+			return false;
+		}
+		int port;
+		try {
+			port = Integer.parseInt(address.substring(colon + 1));
+		} catch (NumberFormatException e) {
+			return false;
+		}
+		try {
+			if (socketConnection != null) {
+				socketConnection.close();
+			}
+		} catch (IOException e) {
+			// The old connection is abandoned either way.
+		}
+		redirects++;
+		hostName = address.substring(0, colon);
+		portNum = port;
+		return login();
+	}
+
 	@SuppressWarnings({ "unchecked" })
 	protected void fireSendMessages(List<Message> mess) {
 		Vector<MessageListener> targets;
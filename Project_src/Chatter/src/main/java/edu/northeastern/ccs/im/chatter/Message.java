@@ -56,7 +56,15 @@ public class Message {
 	/** search for messages that have already been sent **/
 	SEARCH("SRC"),
 	/** Toggles parental control on and off for the current user **/
-	PARENTAL_CONTROL("PRC");
+	PARENTAL_CONTROL("PRC"),
+	/** asks for, grants or resumes a resumable session **/
+	RESUME("RSM"),
+	/** broadcast to the subscribers of a named channel **/
+	CHANNEL("CHN"),
+	/** subscribe to, or unsubscribe from, a broadcast channel **/
+	SUBSCRIBE("SUB"), UNSUBSCRIBE("UNS"),
+	/** tells a client to log in at another server of the cluster **/
+	REDIRECT("RDR");
 
 		/** Store the short name of this message type. */
 		private String tla;
@@ -228,7 +236,77 @@ public class Message {
 			return null;
 		return new Message(MessageType.RECALL, myName, text);
 	}
+
+	/**
+	 * Create a message about a resumable session. Sent without any text once
+	 * logged in, it asks the server for a session; the server answers with the
+	 * resume token and the number of the last message it sent, separated by a
+	 * space. Sent in place of a login, with the token and the number of the
+	 * last private, group or broadcast message received, it resumes the
+	 * session and has the server resend only what was missed.
+	 * 
+	 * @param myName Name of the user whose session it is.
+	 * @param text   Token and sequence number, or null when asking for one.
+	 * @return Instance of Resume message
+	 */
+	public static Message makeResumeMessage(String myName, String text) {
+		if (myName == null)
+			return null;
+		return new Message(MessageType.RESUME, myName, text);
+	}
 	
+	/**
+	 * Create a new message broadcast to the users subscribed to a channel.
+	 * A message on the "global" channel goes to everyone.
+	 * 
+	 * @param myName  Name of the sender of this very important missive.
+	 * @param channel Name of the channel the message is broadcast on
+	 * @param text    Text of the message that will be sent to the subscribers
+	 * @return Instance of Message that transmits text to the channel.
+	 */
+	public static Message makeChannelMessage(String myName, String channel, String text) {
+		if (myName == null || channel == null)
+			return null;
+		return new Message(MessageType.CHANNEL, myName, channel, text);
+	}
+
+	/**
+	 * Create a message subscribing the user to a broadcast channel.
+	 * 
+	 * @param myName  Name of the user subscribing.
+	 * @param channel Name of the channel
+	 * @return Instance of Subscribe message
+	 */
+	public static Message makeSubscribeMessage(String myName, String channel) {
+		if (myName == null || channel == null)
+			return null;
+		return new Message(MessageType.SUBSCRIBE, myName, channel);
+	}
+
+	/**
+	 * Create a message unsubscribing the user from a broadcast channel.
+	 * 
+	 * @param myName  Name of the user unsubscribing.
+	 * @param channel Name of the channel
+	 * @return Instance of Unsubscribe message
+	 */
+	public static Message makeUnsubscribeMessage(String myName, String channel) {
+		if (myName == null || channel == null)
+			return null;
+		return new Message(MessageType.UNSUBSCRIBE, myName, channel);
+	}
+
+	/**
+	 * Create a message telling the user to log in at another server.
+	 * 
+	 * @param myName  Name of the user logging in.
+	 * @param address Host and port, as host:port, of the server to log in at
+	 * @return Instance of Redirect message
+	 */
+	public static Message makeRedirectMessage(String myName, String address) {
+		return new Message(MessageType.REDIRECT, myName, address);
+	}
+
 	/**
 	 * Create a new message group message to be sent to particular
 	 * group of users 
@@ -342,6 +420,12 @@ public class Message {
 			result = makeGroupMessage(srcName, destName, text);
 		}else if (handle.compareTo(MessageType.RECALL.toString()) == 0) {
 			result = makeRecallMessage(srcName, text);
+		}else if (handle.compareTo(MessageType.RESUME.toString()) == 0) {
+			result = makeResumeMessage(srcName, text);
+		}else if (handle.compareTo(MessageType.CHANNEL.toString()) == 0) {
+			result = makeChannelMessage(srcName, destName, text);
+		}else if (handle.compareTo(MessageType.REDIRECT.toString()) == 0) {
+			result = makeRedirectMessage(srcName, text);
 		}
 		return result;
 	}
@@ -664,6 +748,33 @@ public class Message {
 		return (msgType == MessageType.PARENTAL_CONTROL);
 	}
 
+	/**
+	 * Determine if this message is about a resumable session
+	 *
+	 * @return True if the message is of type RESUME, false otherwise
+	 */
+	public boolean isResumeMessage() {
+		return (msgType == MessageType.RESUME);
+	}
+
+	/**
+	 * Determine if this message was broadcast on a channel
+	 *
+	 * @return True if the message is of type CHANNEL, false otherwise
+	 */
+	public boolean isChannelMessage() {
+		return (msgType == MessageType.CHANNEL);
+	}
+
+	/**
+	 * Determine if this message tells us to log in at another server
+	 *
+	 * @return True if the message is of type REDIRECT, false otherwise
+	 */
+	public boolean isRedirectMessage() {
+		return (msgType == MessageType.REDIRECT);
+	}
+
 	/**
 	 * Determine if this message is a message signing off from the IM server.
 	 * 
@@ -673,6 +784,37 @@ public class Message {
 		return (msgType == MessageType.QUIT);
 	}
 
+	/**
+	 * Get the arguments that follow the handle when this message is sent, in
+	 * the order they are sent. Null fields are sent as {@link #NULL_OUTPUT}
+	 * wherever a message may leave them out.
+	 * 
+	 * @return Arguments of this message as they go over the network.
+	 */
+	String[] getArguments() {
+		if (msgType.equals(MessageType.PRIVATE)
+				|| msgType.equals(MessageType.HISTORY)
+				|| msgType.equals(MessageType.GROUP)
+				|| msgType.equals(MessageType.GROUPADD)
+				|| msgType.equals(MessageType.GROUPUPDATE)
+				|| msgType.equals(MessageType.CHANNEL)) {
+			return new String[] { msgSender, msgReceiver, orNullOutput(msgText) };
+		} else if (msgType.equals(MessageType.SEARCH)) {
+			return new String[] { msgSender, sentReceivedBoth, msgReceiver, startTime, endTime };
+		}
+		return new String[] { orNullOutput(msgSender), orNullOutput(msgText) };
+	}
+
+	/**
+	 * Get the text sent for a field that may be null.
+	 * 
+	 * @param field Value of the field.
+	 * @return The field, or {@link #NULL_OUTPUT} if it is null.
+	 */
+	private static String orNullOutput(String field) {
+		return (field != null) ? field : NULL_OUTPUT;
+	}
+
 	/**
 	 * Representation of this message as a String. This begins with the message
 	 * handle and then contains the length (as an integer) and the value of the
@@ -682,37 +824,10 @@ public class Message {
 	 */
 	@Override
 	public String toString() {
-		String result = msgType.toString();
-		if (msgType.equals(MessageType.PRIVATE)
-				|| msgType.equals(MessageType.HISTORY)
-				|| msgType.equals(MessageType.GROUP)
-				|| msgType.equals(MessageType.GROUPADD)
-				|| msgType.equals(MessageType.GROUPUPDATE)) {
-			result += " " + msgSender.length() + " " + msgSender;
-			result += " " + msgReceiver.length() + " " + msgReceiver;
-			if (msgText != null) {
-				result += " " + msgText.length() + " " + msgText;
-			} else {
-				result += " " + NULL_OUTPUT.length() + " " + NULL_OUTPUT;
-			}
-		}else if (msgType.equals(MessageType.SEARCH)) {
-			result += " " + msgSender.length() + " " + msgSender;
-			result += " " + sentReceivedBoth.length() + " " + sentReceivedBoth;
-			result += " " + msgReceiver.length() + " " + msgReceiver;
-			result += " " + startTime.length() + " " + startTime;
-			result += " " + endTime.length() + " " + endTime;
-		}else{
-			if (msgSender != null) {
-				result += " " + msgSender.length() + " " + msgSender;
-			} else {
-				result += " " + NULL_OUTPUT.length() + " " + NULL_OUTPUT;
-			}
-			if (msgText != null) {
-				result += " " + msgText.length() + " " + msgText;
-			} else {
-				result += " " + NULL_OUTPUT.length() + " " + NULL_OUTPUT;
-			}
+		StringBuilder result = new StringBuilder(msgType.toString());
+		for (String argument : getArguments()) {
+			result.append(' ').append(argument.length()).append(' ').append(argument);
 		}
-		return result;
+		return result.toString();
 	}
 }
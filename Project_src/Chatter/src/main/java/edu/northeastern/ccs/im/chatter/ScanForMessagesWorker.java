@@ -65,13 +65,33 @@ public final class ScanForMessagesWorker extends SwingWorker<Void, Message> {
 		while (!isCancelled()) {
 			realConnection.enqueueMessages(messages);
 			if (!messages.isEmpty()) {
+				Message m = messages.remove(0);
+				if (m.isRedirectMessage()) {
+					redirect(m.getText());
+					return null;
+				}
 				// Add this message into our queue
-				publish(messages.remove(0));
+				publish(m);
 			}
 		}
 		return null;
 	}
 
+	/**
+	 * Log in again at the server we were sent to, which starts a new worker
+	 * for the new connection. This connects over the network, so it is done
+	 * here rather than on the event dispatch thread. If the login cannot be
+	 * made, we are logged out as if the server had said goodbye.
+	 *
+	 * @param address Host and port, as host:port, of the server to log in at.
+	 */
+	private void redirect(String address) {
+		realConnection = null;
+		if (!imConnection.redirect(address)) {
+			publish(Message.makeQuitMessage(imConnection.getUserName()));
+		}
+	}
+
 	@Override
 	protected void process(List<Message> mess) {
 		List<Message> publishList = new LinkedList<Message>();
@@ -101,6 +121,9 @@ public final class ScanForMessagesWorker extends SwingWorker<Void, Message> {
 			case GROUP:
 				publishList.add(m);
 				break;
+			case CHANNEL:
+				publishList.add(m);
+				break;
 			case HISTORY:
 				publishList.add(m);
 				break;
@@ -56,6 +56,9 @@ public final class SocketNB {
 
 	private ByteBuffer buff;
 
+	/** True if we talk to the server using the binary protocol. */
+	private boolean binary;
+
 	/**
 	 * Creates a new network connection that connects to the specified port
 	 * number on the named host.
@@ -85,7 +88,7 @@ public final class SocketNB {
 	 *             Exception thrown when an I/O error occurs closing this
 	 *             socket.
 	 */
-	private void close() throws IOException {
+	protected void close() throws IOException {
 		selector.close();
 		channel.close();
 	}
@@ -147,6 +150,10 @@ public final class SocketNB {
 			} else {
 				return;
 			}
+			if (binary) {
+				enqueueBinaryMessages(messages);
+				return;
+			}
 			// Create a decoder which will convert our traffic to something
 			// useful
 			Charset charset = Charset.forName(CHARSET_NAME);
@@ -183,10 +190,10 @@ public final class SocketNB {
 					final String message = readArgument(charBuffer);
 					// Add this message into our queue
 					newMsg = Message.makeMessage(handle, sender, message,null,receiver );
-				}else if(handle.equalsIgnoreCase("GRP")) {
+				}else if(handle.equalsIgnoreCase("GRP") || handle.equalsIgnoreCase("CHN")) {
 					// Skip past the leading space
 					charBuffer.position(charBuffer.position() + 2);
-					// Read in the second argument containing the group name
+					// Read in the second argument containing the group or channel name
 					final String grpName = readArgument(charBuffer);
 				
 					// Skip past the leading space
@@ -235,6 +242,61 @@ public final class SocketNB {
 		}
 	}
 
+	/**
+	 * Add every binary frame that has fully arrived to the queue, keeping any
+	 * partial frame in the buffer until the rest of it is read.
+	 * 
+	 * @param messages
+	 *            Queue to which the messages should be added.
+	 * @throws IOException
+	 *             Exception thrown when closing the connection fails.
+	 */
+	private void enqueueBinaryMessages(List<Message> messages) throws IOException {
+		boolean quitter = false;
+		String[] frame;
+		while ((frame = WireProtocol.readFrame(buff)) != null) {
+			String handle = frame[0];
+			if (handle == null) {
+				// Skip messages of a type we do not know.
+				continue;
+			}
+			String sender = (frame.length > 1) ? frame[1] : null;
+			String second = (frame.length > 2) ? frame[2] : null;
+			Message newMsg;
+			if (handle.equalsIgnoreCase("PVT") || handle.equalsIgnoreCase("GRP")
+					|| handle.equalsIgnoreCase("CHN")) {
+				String message = (frame.length > 3) ? frame[3] : null;
+				newMsg = Message.makeMessage(handle, sender, message, null, second);
+			} else {
+				newMsg = Message.makeMessage(handle, sender, second, second, null);
+			}
+			if (newMsg == null) {
+				continue;
+			}
+			if (newMsg.getType() == Message.MessageType.QUIT) {
+				quitter = true;
+			}
+			messages.add(newMsg);
+		}
+		// Move all of the remaining data to the start of the buffer.
+		buff.compact();
+		if (quitter) {
+			close();
+		}
+	}
+
+	/**
+	 * Choose whether we talk to the server using the binary protocol. When
+	 * set, our login or registration asks the server to answer in binary too,
+	 * so this must be chosen before either is sent.
+	 * 
+	 * @param useBinary
+	 *            True to use the binary protocol; false to use text.
+	 */
+	protected void setBinary(boolean useBinary) {
+		binary = useBinary;
+	}
+
 	// Check if the socket is currently open.
 	protected boolean isConnected() {
 		if (channel == null) {
@@ -256,13 +318,19 @@ public final class SocketNB {
 		if (!isConnected()) {
 			throw new IllegalOperationException("Cannot send a message when we are not connected!");
 		}
-		String str = msg.toString();
+		byte[] bytes;
+		if (binary) {
+			// Logging in this way asks the server to answer in binary, too.
+			int flags = (msg.isInitialization() || msg.isRegister()) ? WireProtocol.FLAG_V2 : 0;
+			bytes = WireProtocol.encode(msg, flags);
+		} else {
+			bytes = msg.toString().getBytes();
+		}
 		
-		ByteBuffer wrapper = ByteBuffer.wrap(str.getBytes());
-		int bytesWritten = 0;
-		while (bytesWritten != str.length()) {
+		ByteBuffer wrapper = ByteBuffer.wrap(bytes);
+		while (wrapper.hasRemaining()) {
 			try {
-				bytesWritten += channel.write(wrapper);
+				channel.write(wrapper);
 			} catch (IOException e) {
 				// May want to do something here, but now will simply cover the
 				// issue up
@@ -0,0 +1,205 @@
+package edu.northeastern.ccs.im.chatter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constants and helpers for version 2 of our protocol, a length-prefixed binary
+ * form of the text protocol. Every binary frame starts with
+ * <ol>
+ * <li>{@link #MAGIC}, a byte that can never start a text handle;</li>
+ * <li>one byte giving the type of the message (see {@link #typeCode(String)});</li>
+ * <li>one byte of flags;</li>
+ * <li>a correlation id, as a varint, only if {@link #FLAG_CORRELATION} is set;</li>
+ * <li>the number of fields, as a varint;</li>
+ * </ol>
+ * followed by each field as its length in bytes, as a varint, and then its
+ * UTF-8 bytes. A field of length 0 is null. The fields are exactly the
+ * arguments the text protocol would send for the same message, in the same
+ * order, so both protocols carry the same Messages.
+ *
+ * A client asks for the binary protocol by sending its login (HLO) or
+ * registration (REG) as a binary frame with {@link #FLAG_V2} set; everything
+ * the server sends that client from then on is binary. Clients that never ask
+ * keep getting the text protocol. This must be kept in step with the server's
+ * copy of this class.
+ */
+public final class WireProtocol {
+
+	/** First byte of every binary frame. */
+	public static final byte MAGIC = (byte) 0xB2;
+
+	/** Flag set when the frame carries a correlation id. */
+	public static final int FLAG_CORRELATION = 0x01;
+
+	/** Flag set on a login or registration by clients that want binary replies. */
+	public static final int FLAG_V2 = 0x02;
+
+	/** Bytes in the fixed header: magic, type and flags. */
+	public static final int HEADER_LENGTH = 3;
+
+	/**
+	 * Handles of the messages, indexed by type code less one. New handles may
+	 * only ever be added at the end, since the codes are shared with clients.
+	 */
+	private static final String[] HANDLES = { "HLO", "ACK", "NAK", "BYE", "BCT",
+			"REG", "UPD", "DEL", "PVT", "HST", "HSR", "GAD", "GAK", "GNK", "GDL",
+			"GUP", "GRP", "RCL", "DUP", "SRC", "PRC", "RSM", "CHN", "SUB", "UNS", "RDR" };
+
+	/** Type codes of the messages, keyed by handle. */
+	private static final Map<String, Integer> CODES = new HashMap<>();
+
+	static {
+		for (int i = 0; i < HANDLES.length; i++) {
+			CODES.put(HANDLES[i], i + 1);
+		}
+	}
+
+	/** Bits of each varint byte that carry the value. */
+	private static final int VARINT_MASK = 0x7F;
+
+	/** Bit of a varint byte set when more bytes follow. */
+	private static final int VARINT_MORE = 0x80;
+
+	/** Bits of the value carried by each varint byte. */
+	private static final int VARINT_SHIFT = 7;
+
+	/** Most bits a varint may carry before we treat it as malformed. */
+	private static final int VARINT_MAX_SHIFT = 28;
+
+	/** This class only holds static members. */
+	private WireProtocol() {
+	}
+
+	/**
+	 * Get the code sent for the given handle.
+	 *
+	 * @param handle Three letter handle of the message.
+	 * @return Type code of the handle, or 0 if it is not one we know.
+	 */
+	public static int typeCode(String handle) {
+		Integer code = CODES.get(handle);
+		return (code != null) ? code : 0;
+	}
+
+	/**
+	 * Get the handle for the given code.
+	 *
+	 * @param code Type code read from a binary frame.
+	 * @return Handle of the message, or null if the code is not one we know.
+	 */
+	public static String handleFor(int code) {
+		if ((code < 1) || (code > HANDLES.length)) {
+			return null;
+		}
+		return HANDLES[code - 1];
+	}
+
+	/**
+	 * Build the binary frame for the given message.
+	 *
+	 * @param msg   Message to be sent.
+	 * @param flags Flags to send with the message; {@link #FLAG_CORRELATION}
+	 *              is not allowed here.
+	 * @return Bytes of the frame.
+	 */
+	public static byte[] encode(Message msg, int flags) {
+		String[] arguments = msg.getArguments();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_LENGTH
+				+ (arguments.length * 16));
+		out.write(MAGIC);
+		out.write(typeCode(msg.getType().toString()));
+		out.write(flags & ~FLAG_CORRELATION);
+		writeVarint(out, arguments.length);
+		for (String argument : arguments) {
+			byte[] bytes = (argument != null) ? argument.getBytes(StandardCharsets.UTF_8)
+					: new byte[0];
+			writeVarint(out, bytes.length);
+			out.write(bytes, 0, bytes.length);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write a non-negative number as a varint: seven bits per byte, lowest
+	 * bits first, with the high bit of every byte but the last set.
+	 *
+	 * @param out   Stream to which the number is written.
+	 * @param value Number to write.
+	 */
+	public static void writeVarint(ByteArrayOutputStream out, int value) {
+		int rest = value;
+		while ((rest & ~VARINT_MASK) != 0) {
+			out.write((rest & VARINT_MASK) | VARINT_MORE);
+			rest >>>= VARINT_SHIFT;
+		}
+		out.write(rest);
+	}
+
+	/**
+	 * Read one binary frame starting at the position of the buffer. When the
+	 * whole frame is there, the position is moved past it; otherwise the
+	 * position is left alone so that the frame can be read once the rest of it
+	 * arrives.
+	 *
+	 * @param buff Bytes received from over the network.
+	 * @return Handle of the frame (null if the type is unknown) followed by its
+	 *         fields, or null if the frame has not fully arrived.
+	 */
+	public static String[] readFrame(ByteBuffer buff) {
+		int start = buff.position();
+		if (buff.remaining() < HEADER_LENGTH) {
+			return null;
+		}
+		buff.get();
+		String handle = handleFor(buff.get() & 0xFF);
+		int flags = buff.get() & 0xFF;
+		if (((flags & FLAG_CORRELATION) != 0) && (readVarint(buff) < 0)) {
+			buff.position(start);
+			return null;
+		}
+		int count = readVarint(buff);
+		if (count < 0) {
+			buff.position(start);
+			return null;
+		}
+		String[] frame = new String[count + 1];
+		frame[0] = handle;
+		for (int i = 1; i <= count; i++) {
+			int length = readVarint(buff);
+			if ((length < 0) || (buff.remaining() < length)) {
+				buff.position(start);
+				return null;
+			}
+			if (length > 0) {
+				byte[] bytes = new byte[length];
+				buff.get(bytes);
+				frame[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Read a varint from the position of the buffer.
+	 *
+	 * @param buff Bytes holding the varint.
+	 * @return The number read, or -1 if not all of its bytes have arrived.
+	 */
+	private static int readVarint(ByteBuffer buff) {
+		int value = 0;
+		int shift = 0;
+		while (buff.hasRemaining() && (shift <= VARINT_MAX_SHIFT)) {
+			byte b = buff.get();
+			value |= (b & VARINT_MASK) << shift;
+			if ((b & VARINT_MORE) == 0) {
+				return value;
+			}
+			shift += VARINT_SHIFT;
+		}
+		return -1;
+	}
+}
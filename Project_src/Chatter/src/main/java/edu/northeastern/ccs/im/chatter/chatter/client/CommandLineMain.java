@@ -184,6 +184,12 @@ public class CommandLineMain {
 					}else if (line.contains("PRC")) {
 						String[] msg = line.split("\\s+");
 						connect.sendParentalControlMessage(msg[1]);
+					}else if (line.startsWith("CHN ")) {
+						connect.sendChannelMessage(getReceiver(line), getMessage(line));
+					}else if (line.startsWith("SUB ")) {
+						connect.sendSubscribeMessage(getReceiver(line));
+					}else if (line.startsWith("UNS ")) {
+						connect.sendUnsubscribeMessage(getReceiver(line));
 					}
 					else {
 						connect.sendMessage(line);
@@ -199,6 +205,10 @@ public class CommandLineMain {
 						connect.disconnect();
 					}else if (message.isHistoryResposeMessage()){
 						System.out.println(message.getText());
+					}else if (message.isChannelMessage()
+							&& !message.getSender().equals(connect.getUserName())) {
+						System.out.println("[" + message.getRecipientName() + "] "
+								+ message.getSender() + ": " + message.getText());
 					} else if (!message.getSender().equals(connect.getUserName())) {
 						System.out.println(
 								message.getSender() + ": " + message.getText());
@@ -225,6 +235,9 @@ public class CommandLineMain {
 								"groupname (* for all messages)> <start time (YYYY-MM-DD HH:MM:SS)> <end time " +
 								"(YYYY-MM-DD HH:MM:SS)>\"");
 						System.err.println("Change parental controls \"PRC <on or off>\"");
+						System.err.println("broadcast on a channel as \"CHN <channel> message\" "
+								+ "(the global channel reaches everyone); join or leave one via "
+								+ "\"SUB <channel>\" and \"UNS <channel>\"");
 
 					}else if (message.isGroupAcknowledge()) {
 						System.err.println(message.getText());
@@ -560,5 +560,19 @@ class MessageTest {
     assertTrue(searchMessage2.isSearchMessage());
     assertTrue(searchMessage3.isSearchMessage());
   }
-}
 
+  @Test
+  void testBinaryFrameCarriesTheTextArguments() {
+    Message pvt = Message.makePrivateMessage("Cole", "Sarah", "hi");
+    java.nio.ByteBuffer frame = java.nio.ByteBuffer.wrap(
+        WireProtocol.encode(pvt, WireProtocol.FLAG_V2));
+    java.nio.ByteBuffer partial = frame.duplicate();
+    partial.limit(frame.limit() - 1);
+    assertNull(WireProtocol.readFrame(partial));
+    assertEquals(0, partial.position());
+
+    String[] fields = WireProtocol.readFrame(frame);
+    assertArrayEquals(new String[] {"PVT", "Cole", "Sarah", "hi"}, fields);
+    assertFalse(frame.hasRemaining());
+  }
+}
@@ -0,0 +1,144 @@
+package edu.northeastern.ccs.im;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of direct byte buffers shared by all of the connections. Buffers come
+ * in a few size classes, each four times larger than the one before, from the
+ * smallest size up to the largest. A connection borrows a buffer only while it
+ * has input that it has not yet been able to use and hands it back as soon as
+ * it is empty, so idle connections hold no memory at all.
+ *
+ * Only a bounded number of bytes is kept in each class; buffers returned once
+ * a class is full are left to the garbage collector.
+ */
+public class BufferPool {
+
+	/** Growth factor between neighbouring size classes. */
+	private static final int CLASS_FACTOR = 4;
+
+	/** Capacity of the buffers in each size class, smallest first. */
+	private final int[] classSizes;
+
+	/** Buffers waiting to be borrowed, one queue per size class. */
+	private final Queue<ByteBuffer>[] free;
+
+	/** Number of buffers currently waiting in each size class. */
+	private final AtomicInteger[] freeCounts;
+
+	/** Most buffers kept waiting in each size class. */
+	private final int[] maxFree;
+
+	/**
+	 * Create a new pool of buffers.
+	 *
+	 * @param smallest      Capacity of the buffers in the smallest size class.
+	 * @param largest       Capacity of the buffers in the largest size class.
+	 * @param bytesPerClass Most bytes of free buffers kept in each size class.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public BufferPool(int smallest, int largest, long bytesPerClass) {
+		int count = 1;
+		for (long size = smallest; size < largest; size *= CLASS_FACTOR) {
+			count++;
+		}
+		classSizes = new int[count];
+		free = new Queue[count];
+		freeCounts = new AtomicInteger[count];
+		maxFree = new int[count];
+		long size = smallest;
+		for (int i = 0; i < count; i++) {
+			// The last class is exactly as large as the largest buffer allowed.
+			classSizes[i] = (int) Math.min(size, largest);
+			free[i] = new ConcurrentLinkedQueue<>();
+			freeCounts[i] = new AtomicInteger();
+			maxFree[i] = (int) Math.max(bytesPerClass / classSizes[i], 1);
+			size *= CLASS_FACTOR;
+		}
+	}
+
+	/**
+	 * Get the capacity of the smallest buffer this pool hands out.
+	 *
+	 * @return Capacity of the smallest size class.
+	 */
+	public int getSmallestSize() {
+		return classSizes[0];
+	}
+
+	/**
+	 * Get the capacity of the largest buffer this pool hands out.
+	 *
+	 * @return Capacity of the largest size class.
+	 */
+	public int getLargestSize() {
+		return classSizes[classSizes.length - 1];
+	}
+
+	/**
+	 * Borrow a cleared buffer that can hold at least the given number of
+	 * bytes, or the largest buffer we have if the request is larger still.
+	 *
+	 * @param minCapacity Number of bytes the buffer must be able to hold.
+	 * @return Direct buffer ready to be written into.
+	 */
+	public ByteBuffer acquire(int minCapacity) {
+		int index = classFor(minCapacity);
+		ByteBuffer buffer = free[index].poll();
+		if (buffer == null) {
+			return ByteBuffer.allocateDirect(classSizes[index]);
+		}
+		freeCounts[index].decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Hand a borrowed buffer back to the pool. The caller must not use the
+	 * buffer afterwards.
+	 *
+	 * @param buffer Buffer that was obtained from {@link #acquire(int)}.
+	 */
+	public void release(ByteBuffer buffer) {
+		int index = classFor(buffer.capacity());
+		if (classSizes[index] != buffer.capacity()) {
+			// Not one of ours; let it be collected.
+			return;
+		}
+		if (freeCounts[index].incrementAndGet() <= maxFree[index]) {
+			free[index].add(buffer);
+		} else {
+			freeCounts[index].decrementAndGet();
+		}
+	}
+
+	/**
+	 * Get the number of free buffers waiting in the class holding buffers of
+	 * the given capacity.
+	 *
+	 * @param capacity Capacity of the buffers in the size class.
+	 * @return Number of buffers that can be borrowed without allocating.
+	 */
+	public int getFreeCount(int capacity) {
+		return freeCounts[classFor(capacity)].get();
+	}
+
+	/**
+	 * Find the smallest size class whose buffers hold the given number of
+	 * bytes.
+	 *
+	 * @param capacity Number of bytes that must fit.
+	 * @return Index of the size class, or of the largest one if none fits.
+	 */
+	private int classFor(int capacity) {
+		for (int i = 0; i < classSizes.length; i++) {
+			if (classSizes[i] >= capacity) {
+				return i;
+			}
+		}
+		return classSizes.length - 1;
+	}
+}
@@ -0,0 +1,410 @@
+package edu.northeastern.ccs.im;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Turns the bytes of our text protocol into Messages. Every message starts with
+ * a three letter handle and a space, followed by its arguments; each argument
+ * is its length in decimal, a space and then that many characters, and
+ * arguments are separated by a single space. How many arguments follow depends
+ * on the handle.
+ *
+ * The parser works directly on the bytes it is given and may be handed a
+ * message in as many pieces as the network likes. When a message has not
+ * fully arrived, the parser remembers how far it got and leaves the bytes of
+ * the message in the buffer; all of its state is kept relative to the start of
+ * the message, so the caller is free to move those bytes (e.g., by compacting
+ * the buffer) before handing it more.
+ *
+ * Messages that start with {@link WireProtocol#MAGIC} are instead read as
+ * binary frames (see {@link WireProtocol}); both kinds may be mixed on one
+ * connection and are turned into the same Messages.
+ */
+class FrameParser {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(FrameParser.class.getName());
+
+	private static final int HANDLE_LENGTH = 3;
+
+	private static final int DECIMAL_RADIX = 10;
+
+	/** Most arguments sent with any message. */
+	private static final int MAX_ARGUMENTS = 5;
+
+	/** The parts of a message the parser can be waiting for. */
+	private enum State {
+		/** The handle and the space after it. */
+		HANDLE,
+		/** The digits giving the length of an argument. */
+		LENGTH,
+		/** The characters of an argument. */
+		CONTENT,
+		/** The space between two arguments. */
+		SEPARATOR,
+		/** The varint correlation id of a binary frame. */
+		CORRELATION,
+		/** The varint number of fields in a binary frame. */
+		FIELD_COUNT,
+		/** The varint length of a field in a binary frame. */
+		FIELD_LENGTH
+	}
+
+	/** Largest message, in bytes, that we accept. */
+	private final int maxFrameBytes;
+
+	/** Part of the current message that we are waiting for. */
+	private State state;
+
+	/** How far into the current message we have scanned. */
+	private int scanned;
+
+	/** Handle of the current message, once it has arrived. */
+	private String handle;
+
+	/** Number of arguments the current message carries. */
+	private int argumentCount;
+
+	/** Index of the argument we are working on. */
+	private int argument;
+
+	/** Length of the argument we are working on, as read so far. */
+	private int length;
+
+	/** Where each argument starts, relative to the start of the message. */
+	private final int[] offsets;
+
+	/** Length of each argument. */
+	private final int[] lengths;
+
+	/** True if the current message is a binary frame. */
+	private boolean binary;
+
+	/** Bits of the varint being read that have been found so far. */
+	private int varintShift;
+
+	/** True once the client has asked for binary replies. */
+	private boolean binaryRequested;
+
+	/** Space into which arguments are copied when they are made Strings. */
+	private byte[] scratch;
+
+	/**
+	 * Create a new parser for the messages of one connection.
+	 *
+	 * @param maxFrameBytes Largest message, in bytes, that we accept.
+	 */
+	FrameParser(int maxFrameBytes) {
+		this.maxFrameBytes = maxFrameBytes;
+		offsets = new int[MAX_ARGUMENTS];
+		lengths = new int[MAX_ARGUMENTS];
+		scratch = new byte[64];
+		reset();
+	}
+
+	/**
+	 * Parse every complete message between the position and limit of the
+	 * buffer and add them to the queue. The position is left at the start of
+	 * the first message that has not fully arrived, so that its bytes can be
+	 * kept until more of it is read.
+	 *
+	 * @param buff     Bytes received from over the network.
+	 * @param messages Queue to which the parsed messages are added.
+	 * @return False if a message is larger than we accept; true otherwise.
+	 */
+	boolean parse(ByteBuffer buff, Queue<Message> messages) {
+		int start = buff.position();
+		int limit = buff.limit();
+		int pos = start + scanned;
+		boolean waiting = false;
+		while (!waiting) {
+			switch (state) {
+			case HANDLE:
+				if ((start + HANDLE_LENGTH) >= limit) {
+					// Wait for the handle and the space after it.
+					waiting = true;
+					break;
+				}
+				if (buff.get(start) == WireProtocol.MAGIC) {
+					// The fixed header of a binary frame is as long as a handle.
+					readBinaryHeader(buff, start);
+					pos = start + WireProtocol.HEADER_LENGTH;
+					break;
+				}
+				handle = readHandle(buff, start);
+				argumentCount = argumentCount(handle);
+				pos = start + HANDLE_LENGTH + 1;
+				state = State.LENGTH;
+				break;
+			case LENGTH:
+				if (pos >= limit) {
+					waiting = true;
+					break;
+				}
+				byte b = buff.get(pos++);
+				if (Character.isDigit(b)) {
+					length = (length * DECIMAL_RADIX) + (b - '0');
+					if ((pos - start) + length > maxFrameBytes) {
+						return false;
+					}
+				} else {
+					// This was the space between the length and the text.
+					offsets[argument] = pos - start;
+					lengths[argument] = length;
+					state = State.CONTENT;
+				}
+				break;
+			case CONTENT:
+				int end = start + offsets[argument] + lengths[argument];
+				if (end > limit) {
+					// Wait for the rest of the argument.
+					waiting = true;
+					break;
+				}
+				pos = end;
+				argument += 1;
+				if (argument < argumentCount) {
+					state = binary ? State.FIELD_LENGTH : State.SEPARATOR;
+				} else {
+					// The message is complete; start looking for the next one.
+					addMessage(buff, start, messages);
+					start = end;
+					reset();
+				}
+				break;
+			case CORRELATION:
+			case FIELD_COUNT:
+			case FIELD_LENGTH:
+				if (pos >= limit) {
+					waiting = true;
+					break;
+				}
+				byte v = buff.get(pos++);
+				length |= WireProtocol.varintBits(v) << varintShift;
+				if (WireProtocol.hasMoreVarint(v)) {
+					varintShift += WireProtocol.VARINT_SHIFT;
+					if (varintShift > WireProtocol.VARINT_MAX_SHIFT) {
+						return false;
+					}
+					break;
+				}
+				boolean counted = (state == State.FIELD_COUNT);
+				if (!varintRead(pos - start)) {
+					return false;
+				}
+				if (counted && (argumentCount == 0)) {
+					// A frame without fields is complete as soon as it is counted.
+					addMessage(buff, start, messages);
+					start = pos;
+					reset();
+				}
+				break;
+			case SEPARATOR:
+			default:
+				if (pos >= limit) {
+					waiting = true;
+					break;
+				}
+				pos += 1;
+				length = 0;
+				state = State.LENGTH;
+				break;
+			}
+		}
+		scanned = pos - start;
+		buff.position(start);
+		return true;
+	}
+
+	/** Get ready to parse a new message. */
+	private void reset() {
+		state = State.HANDLE;
+		scanned = 0;
+		handle = null;
+		argumentCount = 0;
+		argument = 0;
+		length = 0;
+		binary = false;
+		varintShift = 0;
+	}
+
+	/**
+	 * Check if any binary frame has asked for replies in the binary protocol.
+	 *
+	 * @return True if the client sent a frame with {@link WireProtocol#FLAG_V2}.
+	 */
+	boolean isBinaryRequested() {
+		return binaryRequested;
+	}
+
+	/**
+	 * Read the fixed header of a binary frame and get ready for what follows.
+	 *
+	 * @param buff  Bytes received from over the network.
+	 * @param start Position at which the frame starts.
+	 */
+	private void readBinaryHeader(ByteBuffer buff, int start) {
+		binary = true;
+		handle = WireProtocol.handleFor(buff.get(start + 1) & 0xFF);
+		int flags = buff.get(start + 2) & 0xFF;
+		if ((flags & WireProtocol.FLAG_V2) != 0) {
+			binaryRequested = true;
+		}
+		length = 0;
+		state = ((flags & WireProtocol.FLAG_CORRELATION) != 0) ? State.CORRELATION
+				: State.FIELD_COUNT;
+	}
+
+	/**
+	 * Use a varint that has just been read in full and move on to what follows
+	 * it in the binary frame.
+	 *
+	 * @param scannedBytes Bytes of the frame read so far.
+	 * @return False if the frame is larger than we accept; true otherwise.
+	 */
+	private boolean varintRead(int scannedBytes) {
+		int value = length;
+		length = 0;
+		varintShift = 0;
+		switch (state) {
+		case CORRELATION:
+			// Nothing on the server answers by correlation id yet, so skip it.
+			state = State.FIELD_COUNT;
+			return true;
+		case FIELD_COUNT:
+			if ((value < 0) || (value > MAX_ARGUMENTS)) {
+				return false;
+			}
+			argumentCount = value;
+			state = State.FIELD_LENGTH;
+			return true;
+		case FIELD_LENGTH:
+		default:
+			if ((value < 0) || (scannedBytes + value > maxFrameBytes)) {
+				return false;
+			}
+			offsets[argument] = scannedBytes;
+			lengths[argument] = value;
+			state = State.CONTENT;
+			return true;
+		}
+	}
+
+	/**
+	 * Build the message whose arguments we have just found and add it to the
+	 * queue.
+	 *
+	 * @param buff     Bytes received from over the network.
+	 * @param start    Position at which the message starts.
+	 * @param messages Queue to which the message is added.
+	 */
+	private void addMessage(ByteBuffer buff, int start, Queue<Message> messages) {
+		if (handle == null) {
+			LOGGER.log(Level.WARN, "Ignoring a binary message of unknown type");
+			return;
+		}
+		final String sender = readArgument(buff, start, 0);
+		Message newMsg;
+		if (handle.equalsIgnoreCase("PVT") || handle.equals("HST")
+				|| handle.equalsIgnoreCase("GAD")
+				|| handle.equalsIgnoreCase("GUP")
+				|| handle.equalsIgnoreCase("GRP")
+				|| handle.equalsIgnoreCase("CHN")) {
+			// The second argument names the recipient, group or channel.
+			newMsg = Message.makeMessage(handle, sender,
+					readArgument(buff, start, 2), null,
+					readArgument(buff, start, 1));
+		} else if (handle.equalsIgnoreCase("SRC")) {
+			newMsg = Message.makeSearchMessage(sender,
+					readArgument(buff, start, 1), readArgument(buff, start, 2),
+					readArgument(buff, start, 3), readArgument(buff, start, 4));
+		} else if (handle.equalsIgnoreCase("PRC")) {
+			newMsg = Message.makeParentalControlMessage(sender,
+					readArgument(buff, start, 1));
+		} else {
+			// The text doubles as the password for the login messages.
+			final String message = readArgument(buff, start, 1);
+			newMsg = Message.makeMessage(handle, sender, message, message, null);
+		}
+		if (newMsg != null) {
+			messages.add(newMsg);
+		} else {
+			LOGGER.log(Level.WARN, "Ignoring a message with unknown handle " + handle);
+		}
+	}
+
+	/**
+	 * Turn one of the arguments of the current message into a String.
+	 *
+	 * @param buff  Bytes received from over the network.
+	 * @param start Position at which the message starts.
+	 * @param index Index of the argument.
+	 * @return The argument, or null if it is empty.
+	 */
+	private String readArgument(ByteBuffer buff, int start, int index) {
+		if (index >= argumentCount) {
+			// A binary frame may send fewer fields than the handle uses.
+			return null;
+		}
+		int len = lengths[index];
+		if (len == 0) {
+			// If the length is 0, this argument is null
+			return null;
+		}
+		if (scratch.length < len) {
+			scratch = new byte[Math.max(len, scratch.length * 2)];
+		}
+		int from = start + offsets[index];
+		for (int i = 0; i < len; i++) {
+			scratch[i] = buff.get(from + i);
+		}
+		return new String(scratch, 0, len,
+				binary ? StandardCharsets.UTF_8 : StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Read the handle of the message starting at the given position, using
+	 * the shared String of its message type when it is one we know.
+	 *
+	 * @param buff  Bytes received from over the network.
+	 * @param start Position at which the message starts.
+	 * @return Handle of the message.
+	 */
+	private static String readHandle(ByteBuffer buff, int start) {
+		Message.MessageType known = Message.MessageType.fromHandle(
+				buff.get(start), buff.get(start + 1), buff.get(start + 2));
+		if (known != null) {
+			return known.toString();
+		}
+		byte[] bytes = new byte[HANDLE_LENGTH];
+		for (int i = 0; i < HANDLE_LENGTH; i++) {
+			bytes[i] = buff.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Get the number of arguments sent with messages of the given handle.
+	 *
+	 * @param handle Handle of the message.
+	 * @return Number of arguments, including the sender.
+	 */
+	private static int argumentCount(String handle) {
+		if (handle.equalsIgnoreCase("PVT") || handle.equals("HST")
+				|| handle.equalsIgnoreCase("GAD")
+				|| handle.equalsIgnoreCase("GUP")
+				|| handle.equalsIgnoreCase("GRP")
+				|| handle.equalsIgnoreCase("CHN")) {
+			return 3;
+		} else if (handle.equalsIgnoreCase("SRC")) {
+			return 5;
+		}
+		return 2;
+	}
+}
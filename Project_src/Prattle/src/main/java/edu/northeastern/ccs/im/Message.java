@@ -1,5 +1,8 @@
 package edu.northeastern.ccs.im;
 
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -22,7 +25,7 @@ public class Message {
 	/**
 	 * List of the different possible message types.
 	 */
-	protected enum MessageType {
+	public enum MessageType {
 	/**
 	 * Message sent by the user attempting to login using a specified username.
 	 */
@@ -65,7 +68,29 @@ public class Message {
 	/** search for messages that have already been sent **/
 	SEARCH("SRC"),
 	/** Toggles parental control on and off for the current user **/
-    PARENTAL_CONTROL("PRC");
+    PARENTAL_CONTROL("PRC"),
+	/** asks for, grants or resumes a resumable session **/
+	RESUME("RSM"),
+	/** broadcast to the subscribers of a named channel **/
+	CHANNEL("CHN"),
+	/** subscribe to, or unsubscribe from, a broadcast channel **/
+	SUBSCRIBE("SUB"), UNSUBSCRIBE("UNS"),
+	/** tells a client to log in at another server of the cluster **/
+	REDIRECT("RDR");
+
+		/** Letters that may appear in a handle. */
+		private static final int LETTERS = 26;
+
+		/** Message types indexed by the letters of their handles. */
+		private static final MessageType[] BY_HANDLE =
+				new MessageType[LETTERS * LETTERS * LETTERS];
+
+		static {
+			for (MessageType type : values()) {
+				BY_HANDLE[handleIndex(type.tla.charAt(0), type.tla.charAt(1),
+						type.tla.charAt(2))] = type;
+			}
+		}
 
 		/** Store the short name of this message type. */
 		private String tla;
@@ -88,6 +113,59 @@ public class Message {
 		public String toString() {
 			return tla;
 		}
+
+		/**
+		 * Find the message type with the given handle.
+		 *
+		 * @param handle Three letter handle, as sent over the network.
+		 * @return Type with that handle, or null if there is none.
+		 */
+		public static MessageType fromHandle(String handle) {
+			if ((handle == null) || (handle.length() != 3)) {
+				return null;
+			}
+			return fromHandle(handle.charAt(0), handle.charAt(1), handle.charAt(2));
+		}
+
+		/**
+		 * Find the message type with the handle made up of the given three
+		 * characters, without building a String for it.
+		 *
+		 * @param first  First character of the handle.
+		 * @param second Second character of the handle.
+		 * @param third  Third character of the handle.
+		 * @return Type with that handle, or null if there is none.
+		 */
+		public static MessageType fromHandle(int first, int second, int third) {
+			int index = handleIndex(first, second, third);
+			return (index < 0) ? null : BY_HANDLE[index];
+		}
+
+		/**
+		 * Turn the characters of a handle into an index into our table.
+		 *
+		 * @param first  First character of the handle.
+		 * @param second Second character of the handle.
+		 * @param third  Third character of the handle.
+		 * @return Index of the handle, or -1 if it is not three capital letters.
+		 */
+		private static int handleIndex(int first, int second, int third) {
+			if (!isCapital(first) || !isCapital(second) || !isCapital(third)) {
+				return -1;
+			}
+			return (((first - 'A') * LETTERS) + (second - 'A')) * LETTERS
+					+ (third - 'A');
+		}
+
+		/**
+		 * Check if a character of a handle is a capital letter.
+		 *
+		 * @param c Character to check.
+		 * @return True if the character is between 'A' and 'Z'.
+		 */
+		private static boolean isCapital(int c) {
+			return (c >= 'A') && (c <= 'Z');
+		}
 	}
 
 	/** The string sent when a field is null. */
@@ -124,6 +202,18 @@ public class Message {
 	 **/
 	private String sentReceivedBoth;
 
+	/** Bytes sent over the network for this message, built once and shared. */
+	private volatile ByteBuffer frame;
+
+	/** This message encoded in the text protocol, built once when first needed. */
+	private volatile ByteBuffer encoded;
+
+	/** Bytes sent to clients using the binary protocol, built once and shared. */
+	private volatile ByteBuffer binaryFrame;
+
+	/** Binary frame of this message as it is, unfiltered, built once and shared. */
+	private volatile byte[] unfilteredFrame;
+
   /**
    * Create a new message that contains actual IM text. The type of
    * distribution is defined by the handle and we must also set the name of
@@ -163,6 +253,23 @@ public class Message {
 		return new Message(MessageType.RECALL, myName, text);
 	}
 
+	/**
+	 * Create a message about a resumable session. A logged in client sends it
+	 * without any text to ask for a session; the server answers with the
+	 * resume token and the number of the last message sent, separated by a
+	 * space; and a reconnecting client sends it in place of a login, with the
+	 * token and the number of the last message it received.
+	 * 
+	 * @param myName Name of the user whose session it is.
+	 * @param text   Token and sequence number, or null when asking for one.
+	 * @return Instance of Resume message
+	 */
+	public static Message makeResumeMessage(String myName, String text) {
+		if (myName == null)
+			return null;
+		return new Message(MessageType.RESUME, myName, text);
+	}
+
 
 	/**
 	 * Given a handle, name, text, password, and recipient name return the
@@ -179,42 +286,79 @@ public class Message {
 	 */
 	protected static Message makeMessage(String handle, String srcName,
 			String text, String password, String recipientName) {
-		Message result = null;
-		if (handle.compareTo(MessageType.QUIT.toString()) == 0) {
+		MessageType type = MessageType.fromHandle(handle);
+		if (type == null) {
+			return null;
+		}
+		Message result;
+		switch (type) {
+		case QUIT:
 			result = makeQuitMessage(srcName);
-		} else if (handle.compareTo(MessageType.HELLO.toString()) == 0) {
+			break;
+		case HELLO:
 			result = makeSimpleLoginMessage(srcName, password);
-		} else if (handle.compareTo(MessageType.BROADCAST.toString()) == 0) {
+			break;
+		case BROADCAST:
 			result = makeBroadcastMessage(srcName, text);
-		} else if (handle.compareTo(MessageType.ACKNOWLEDGE.toString()) == 0) {
+			break;
+		case ACKNOWLEDGE:
 			result = makeAcknowledgeMessage(srcName, text);
-		} else if (handle
-				.compareTo(MessageType.NO_ACKNOWLEDGE.toString()) == 0) {
+			break;
+		case NO_ACKNOWLEDGE:
 			result = makeNoAcknowledgeMessage(srcName, text);
-		} else if (handle.compareTo(MessageType.REGISTER.toString()) == 0) {
+			break;
+		case REGISTER:
 			result = makeRegisterMessage(srcName, password);
-		} else if (handle.compareTo(MessageType.UPDATE.toString()) == 0) {
+			break;
+		case UPDATE:
 			result = makeUpdateMessage(srcName, password);
-		} else if (handle.compareTo(MessageType.DELETE.toString()) == 0) {
+			break;
+		case DELETE:
 			result = makeDeleteMessage(srcName);
-		} else if (handle.compareTo(MessageType.PRIVATE.toString()) == 0) {
+			break;
+		case PRIVATE:
 			result = makePrivateMessage(srcName, recipientName, text);
-		}else if (handle.compareTo(MessageType.HISTORY.toString())==0) {
+			break;
+		case HISTORY:
 			result = makeHistoryMessage(srcName, recipientName, text);
-		}else if (handle.compareTo(MessageType.HISTORY_RESPONSE.toString())==0){
+			break;
+		case HISTORY_RESPONSE:
 			result = makeHistoryResponseMessage(recipientName, text);
-		} else if (handle.compareTo(MessageType.GROUPADD.toString()) == 0) {
+			break;
+		case GROUPADD:
 			result = makeGroupAdd(srcName, recipientName, text);
-		} else if (handle.compareTo(MessageType.GROUPDELETE.toString()) == 0) {
+			break;
+		case GROUPDELETE:
 			result = makeGroupDelete(srcName, text);
-		}else if (handle.compareTo(MessageType.GROUPUPDATE.toString()) == 0) {
+			break;
+		case GROUPUPDATE:
 			result = makeGroupUpdate(srcName, recipientName, text);
-		}else if (handle.compareTo(MessageType.GROUP.toString()) == 0) {
+			break;
+		case GROUP:
 			result = makeGroupMessage(srcName, recipientName, text);
-		}else if (handle.compareTo(MessageType.RECALL.toString()) == 0) {
+			break;
+		case RECALL:
 			result = makeRecallMessage(srcName, text);
-		}else if (handle.compareTo(MessageType.DUPING.toString()) == 0) {
+			break;
+		case DUPING:
 			result = makeDupingMessage(srcName, text);
+			break;
+		case RESUME:
+			result = makeResumeMessage(srcName, text);
+			break;
+		case CHANNEL:
+			result = makeChannelMessage(srcName, recipientName, text);
+			break;
+		case SUBSCRIBE:
+			result = makeSubscribeMessage(srcName, text);
+			break;
+		case UNSUBSCRIBE:
+			result = makeUnsubscribeMessage(srcName, text);
+			break;
+		default:
+			// The rest are only ever sent by the server or parsed on their own.
+			result = null;
+			break;
 		}
 		
 		return result;
@@ -327,6 +471,58 @@ public class Message {
     return new Message(MessageType.GROUP, myName, text, groupName);
   }
 
+  /**
+   * Create a new message broadcast to the users subscribed to a channel.
+   *
+   * @param myName  Name of the sender of this very important missive.
+   * @param channel Name of the channel the message is broadcast on
+   * @param text    Text of the message that will be sent to the subscribers
+   * @return Instance of Message that transmits text to the channel.
+   */
+  public static Message makeChannelMessage(String myName, String channel, String text) {
+    if (myName == null || channel == null)
+      return null;
+    return new Message(MessageType.CHANNEL, myName, text, channel);
+  }
+
+  /**
+   * Create a new message subscribing the user to a broadcast channel.
+   *
+   * @param myName  Name of the user subscribing.
+   * @param channel Name of the channel
+   * @return Instance of Subscribe message
+   */
+  public static Message makeSubscribeMessage(String myName, String channel) {
+    if (myName == null || channel == null)
+      return null;
+    return new Message(MessageType.SUBSCRIBE, myName, channel);
+  }
+
+  /**
+   * Create a new message unsubscribing the user from a broadcast channel.
+   *
+   * @param myName  Name of the user unsubscribing.
+   * @param channel Name of the channel
+   * @return Instance of Unsubscribe message
+   */
+  public static Message makeUnsubscribeMessage(String myName, String channel) {
+    if (myName == null || channel == null)
+      return null;
+    return new Message(MessageType.UNSUBSCRIBE, myName, channel);
+  }
+
+  /**
+   * Create a new message telling a client that is logging in to do so at
+   * another server instead.
+   *
+   * @param myName  Name of the user logging in.
+   * @param address Host and port, as host:port, of the server to log in at
+   * @return Instance of Redirect message
+   */
+  public static Message makeRedirectMessage(String myName, String address) {
+    return new Message(MessageType.REDIRECT, myName, address);
+  }
+
   /**
    * Create a new private message from the given myName to the given recipientName with the given
    * text.
@@ -733,47 +929,154 @@ public class Message {
   }
 
   /**
-   * Representation of this message as a String. This begins with the message
-   * handle and then contains the length (as an integer) and the value of the
-   * next two arguments.
+   * Return the three letter handle sent at the start of this message.
    *
-   * @return Representation of this message as a String.
+   * @return Handle of this message.
    */
-  @Override
-  public String toString() {
-    String result = msgType.toString();
+  public String getHandle() {
+    return msgType.toString();
+  }
+
+  /**
+   * Get the arguments that follow the handle when this message is sent, in
+   * the order they are sent. Null fields are sent as {@link #NULL_OUTPUT}
+   * wherever a message may leave them out.
+   *
+   * @return Arguments of this message as they go over the network.
+   */
+  String[] getArguments() {
     if (msgType.equals(MessageType.PRIVATE)
             || msgType.equals(MessageType.HISTORY)
             || msgType.equals(MessageType.GROUPADD)
             || msgType.equals(MessageType.GROUPUPDATE)
-            || msgType.equals(MessageType.GROUP)) {
+            || msgType.equals(MessageType.GROUP)
+            || msgType.equals(MessageType.CHANNEL)) {
       // msgSender and msgRecipient cannot be null in a Private message.
-      result += " " + msgSender.length() + " " + msgSender;
-      result += " " + recipientName.length() + " " + recipientName;
-      if (msgText != null) {
-        result += " " + msgText.length() + " " + msgText;
-      } else {
-        result += " " + NULL_OUTPUT.length() + " " + NULL_OUTPUT;
-      }
+      return new String[] {msgSender, recipientName, orNullOutput(msgText)};
     } else if (msgType.equals(MessageType.SEARCH)) {
-      result += " " + msgSender.length() + " " + msgSender;
-      result += " " + sentReceivedBoth.length() + " " + sentReceivedBoth;
-      result += " " + recipientName.length() + " " + recipientName;
-      result += " " + startTime.length() + " " + startTime;
-      result += " " + endTime.length() + " " + endTime;
-    } else {
-      if (msgSender != null) {
-        result += " " + msgSender.length() + " " + msgSender;
-      } else {
-        result += " " + NULL_OUTPUT.length() + " " + NULL_OUTPUT;
-      }
-      if (msgText != null) {
-        result += " " + msgText.length() + " " + msgText;
-      } else {
-        result += " " + NULL_OUTPUT.length() + " " + NULL_OUTPUT;
-      }
+      return new String[] {msgSender, sentReceivedBoth, recipientName, startTime, endTime};
     }
-    return result;
+    return new String[] {orNullOutput(msgSender), orNullOutput(msgText)};
+  }
+
+  /**
+   * Get the text sent for a field that may be null.
+   *
+   * @param field Value of the field.
+   * @return The field, or {@link #NULL_OUTPUT} if it is null.
+   */
+  private static String orNullOutput(String field) {
+    return (field != null) ? field : NULL_OUTPUT;
+  }
+
+  /**
+   * Get the number of bytes this message takes up in the text protocol.
+   *
+   * @return Number of bytes {@link #encode(ByteBuffer)} writes.
+   */
+  public int encodedLength() {
+    int length = msgType.toString().length();
+    for (String argument : getArguments()) {
+      length += 2 + decimalDigits(argument.length()) + argument.length();
+    }
+    return length;
+  }
+
+  /**
+   * Write this message in the text protocol straight into the given buffer,
+   * without building it as a String first. The protocol counts characters,
+   * so any character outside of ASCII is written as a '?' to keep the lengths
+   * right.
+   *
+   * @param out Buffer into which the message is written, starting at its
+   *            position; it must have {@link #encodedLength()} bytes left.
+   */
+  public void encode(ByteBuffer out) {
+    putAscii(out, msgType.toString());
+    for (String argument : getArguments()) {
+      out.put((byte) ' ');
+      putDecimal(out, argument.length());
+      out.put((byte) ' ');
+      putAscii(out, argument);
+    }
+  }
+
+  /**
+   * Get the bytes of this message in the text protocol. Messages do not
+   * change once they are made, so the bytes are encoded only the first time
+   * and every later send of the same message reuses them.
+   *
+   * @return New read-only view of the encoded message.
+   */
+  public ByteBuffer getEncoded() {
+    ByteBuffer bytes = encoded;
+    if (bytes == null) {
+      ByteBuffer buffer = ByteBuffer.allocate(encodedLength());
+      encode(buffer);
+      buffer.flip();
+      bytes = buffer.asReadOnlyBuffer();
+      encoded = bytes;
+    }
+    return bytes.duplicate();
+  }
+
+  /**
+   * Count the decimal digits needed to write a length.
+   *
+   * @param value Length to be written.
+   * @return Number of digits.
+   */
+  private static int decimalDigits(int value) {
+    int digits = 1;
+    for (int rest = value / 10; rest != 0; rest /= 10) {
+      digits++;
+    }
+    return digits;
+  }
+
+  /**
+   * Write a length as decimal digits.
+   *
+   * @param out   Buffer to write into.
+   * @param value Length to be written.
+   */
+  private static void putDecimal(ByteBuffer out, int value) {
+    int end = out.position() + decimalDigits(value);
+    int rest = value;
+    for (int pos = end - 1; pos >= out.position(); pos--) {
+      out.put(pos, (byte) ('0' + (rest % 10)));
+      rest /= 10;
+    }
+    out.position(end);
+  }
+
+  /**
+   * Write the characters of a String, one byte each.
+   *
+   * @param out  Buffer to write into.
+   * @param text Characters to be written.
+   */
+  private static void putAscii(ByteBuffer out, String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      out.put((c < 0x80) ? (byte) c : (byte) '?');
+    }
+  }
+
+  /**
+   * Representation of this message as a String. This begins with the message
+   * handle and then contains the length (as an integer) and the value of the
+   * next two arguments.
+   *
+   * @return Representation of this message as a String.
+   */
+  @Override
+  public String toString() {
+    StringBuilder result = new StringBuilder(msgType.toString());
+    for (String argument : getArguments()) {
+      result.append(' ').append(argument.length()).append(' ').append(argument);
+    }
+    return result.toString();
   }
   
   	/** checks if message type is RECALL
@@ -789,6 +1092,77 @@ public class Message {
   public boolean isDupingMessage() {
 	  return (msgType == MessageType.DUPING);
   }
-}
 
+  /** checks if message type is RESUME
+	 * @return true if message type is RESUME, else false
+	 */
+  public boolean isResumeMessage() {
+	  return (msgType == MessageType.RESUME);
+  }
+
+  /** checks if message type is CHANNEL
+	 * @return true if message type is CHANNEL, else false
+	 */
+  public boolean isChannelMessage() {
+	  return (msgType == MessageType.CHANNEL);
+  }
+
+  /** checks if message type is REDIRECT
+	 * @return true if message type is REDIRECT, else false
+	 */
+  public boolean isRedirectMessage() {
+	  return (msgType == MessageType.REDIRECT);
+  }
+
+  /**
+   * Get the bytes that are written out for this message, building them with
+   * the given encoder the first time they are needed. A broadcast or group
+   * message is queued for every recipient as the same instance, so it is
+   * filtered and encoded once no matter how many clients it goes to.
+   *
+   * @param encoder Builds the bytes sent over the network for a message.
+   * @return New view of the shared, read-only frame for the caller to consume.
+   */
+  ByteBuffer sharedFrame(Function<Message, ByteBuffer> encoder) {
+    ByteBuffer shared = frame;
+    if (shared == null) {
+      // Two threads may race to build the frame; both build the same bytes.
+      shared = encoder.apply(this).asReadOnlyBuffer();
+      frame = shared;
+    }
+    return shared.duplicate();
+  }
+
+  /**
+   * Get the bytes that are written out for this message to clients that speak
+   * the binary protocol. This works just like
+   * {@link #sharedFrame(Function)}, but keeps its own copy of the bytes.
+   *
+   * @param encoder Builds the binary frame sent over the network for a message.
+   * @return New view of the shared, read-only frame for the caller to consume.
+   */
+  ByteBuffer sharedBinaryFrame(Function<Message, ByteBuffer> encoder) {
+    ByteBuffer shared = binaryFrame;
+    if (shared == null) {
+      shared = encoder.apply(this).asReadOnlyBuffer();
+      binaryFrame = shared;
+    }
+    return shared.duplicate();
+  }
 
+  /**
+   * Get the binary frame of this message as it is, with no filtering, as it
+   * is handed to other servers. Like {@link #sharedBinaryFrame(Function)} it
+   * is built once, however many recipients it is for.
+   *
+   * @return Shared bytes of the frame, which must not be changed.
+   */
+  byte[] sharedUnfilteredFrame() {
+    byte[] shared = unfilteredFrame;
+    if (shared == null) {
+      shared = WireProtocol.encode(this, 0);
+      unfilteredFrame = shared;
+    }
+    return shared;
+  }
+}
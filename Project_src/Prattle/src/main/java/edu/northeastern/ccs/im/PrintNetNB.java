@@ -3,6 +3,10 @@ package edu.northeastern.ccs.im;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
@@ -13,9 +17,12 @@ import org.apache.logging.log4j.Logger;
 
 /**
  * This class is similar to the java.io.PrintWriter class, but this class's
- * methods work with our non-blocking Socket classes. This class could easily be
- * made to wait for network output (e.g., be made &quot;non-blocking&quot; in
- * technical parlance), but I have not worried about it yet.
+ * methods work with our non-blocking Socket classes. Printing never waits for
+ * the network: whatever the kernel will not take right away is queued, and the
+ * rest is written by {@link #flush()} once the channel has room again. The
+ * owner of the channel can ask to be told when that is needed by calling
+ * {@link #setWriteInterest(Runnable)}. Messages can also be queued and then
+ * flushed together, so that a batch of them costs a single gathering write.
  * 
  * This work is licensed under the Creative Commons Attribution-ShareAlike 4.0
  * International License. To view a copy of this license, visit
@@ -32,11 +39,29 @@ public class PrintNetNB {
 	/** Channel over which we will write out any messages. */
 	private final SocketChannel channel;
 
-	/**
-	 * Number of times to try sending a message before we give up in frustration.
-	 */
-	private static final int MAXIMUM_TRIES_SENDING = 100;
+	/** Most messages handed to the channel by a single write by default. */
+	public static final int DEFAULT_BATCH_MESSAGES = 64;
+
+	/** Most bytes handed to the channel by a single write by default. */
+	public static final int DEFAULT_BATCH_BYTES = 256 * 1024;
+
+	/** Bytes that the channel has not yet accepted, oldest first. */
+	private final Queue<ByteBuffer> pending;
+
+	/** Bytes in the queued output that the channel has not yet accepted. */
+	private long pendingBytes;
 
+	/** Buffers gathered for the write that is being made. */
+	private final ByteBuffer[] batch;
+
+	/** Most bytes handed to the channel by a single write. */
+	private final int maxBatchBytes;
+
+	/** Called when output is left over and the channel must be watched. */
+	private Runnable writeInterest;
+
+	/** True if messages are sent using the binary protocol. */
+	private volatile boolean binary;
 
 	/**
 	 * The string that represents parental control being on.
@@ -52,8 +77,25 @@ public class PrintNetNB {
 	 *                 communication.
 	 */
 	public PrintNetNB(SocketChannel sockChan) {
+		this(sockChan, DEFAULT_BATCH_MESSAGES, DEFAULT_BATCH_BYTES);
+	}
+
+	/**
+	 * Creates a new instance of this class that hands at most the given number
+	 * of messages and bytes to the channel in any one write.
+	 * 
+	 * @param sockChan      Non-blocking SocketChannel instance to which we will
+	 *                      send all communication.
+	 * @param batchMessages Most messages sent by a single write.
+	 * @param batchBytes    Most bytes sent by a single write; a larger message
+	 *                      is still sent, on its own.
+	 */
+	public PrintNetNB(SocketChannel sockChan, int batchMessages, int batchBytes) {
 		// Remember the channel that we will be using.
 		channel = sockChan;
+		pending = new ArrayDeque<>();
+		batch = new ByteBuffer[Math.max(batchMessages, 1)];
+		maxBatchBytes = batchBytes;
 	}
 
 	/**
@@ -66,48 +108,189 @@ public class PrintNetNB {
 	 */
 	public PrintNetNB(SocketNB connection) {
 		// Remember the channel that we will be using.
-		channel = connection.getSocket();
+		this(connection.getSocket());
 	}
 
 	/**
 	 * Send a Message over the network. This method performs its actions by printing
 	 * the given Message over the SocketNB instance with which the PrintNetNB was
-	 * instantiated. This returns whether our attempt to send the message was
-	 * successful.
+	 * instantiated. The bytes for a message are built only once, however many
+	 * clients it is printed to. Any part of the message that the channel cannot
+	 * take right now is kept and sent by a later call to {@link #flush()}. This
+	 * returns whether our attempt to send the message was successful.
 	 * 
 	 * @param msg Message to be sent out over the network.
-	 * @return True if we successfully send this message; false otherwise.
+	 * @return True if the message was sent or queued; false if the connection
+	 *         has failed.
 	 */
 	public boolean print(Message msg) {
-		msg = inappropriateLanguage(msg);
-		
-		String str = msg.toString();
-		ByteBuffer wrapper = ByteBuffer.wrap(str.getBytes());
-		int bytesWritten = 0;
-		int attemptsRemaining = MAXIMUM_TRIES_SENDING;
-		while (wrapper.hasRemaining() && (attemptsRemaining > 0)) {
-			try {
-				attemptsRemaining--;
-				bytesWritten += channel.write(wrapper);
-			} catch (IOException e) {
-				// Show that this was unsuccessful
-				return false;
+		queue(msg);
+		return flush();
+	}
+
+	/**
+	 * Add a Message to the output without writing anything yet. Messages
+	 * queued this way are sent together by the next call to {@link #flush()}.
+	 * 
+	 * @param msg Message to be sent out over the network.
+	 */
+	public void queue(Message msg) {
+		// Every recipient of the same message shares one filtered frame.
+		ByteBuffer frame;
+		if (binary) {
+			frame = msg.sharedBinaryFrame(
+					m -> ByteBuffer.wrap(WireProtocol.encode(inappropriateLanguage(m), 0)));
+		} else {
+			frame = msg.sharedFrame(m -> inappropriateLanguage(m).getEncoded());
+		}
+		synchronized (this) {
+			pending.add(frame);
+			pendingBytes += frame.remaining();
+		}
+	}
+
+	/**
+	 * Hand the queued output to the channel with a single gathering write of
+	 * at most one batch. When output is left over, either because the socket
+	 * buffer is full or because there was more than one batch, the write
+	 * interest set with {@link #setWriteInterest(Runnable)} is told so that we
+	 * are flushed again once the channel can take more.
+	 *
+	 * @return True unless the connection has failed.
+	 */
+	public synchronized boolean flush() {
+		if (pending.isEmpty()) {
+			return true;
+		}
+		// Gather the oldest frames, up to our limits, into one write.
+		int count = 0;
+		long bytes = 0;
+		for (ByteBuffer frame : pending) {
+			if ((count == batch.length)
+					|| ((count > 0) && (bytes + frame.remaining() > maxBatchBytes))) {
+				break;
 			}
+			batch[count++] = frame;
+			bytes += frame.remaining();
 		}
-		// Check to see if we were successful in our attempt to write the message
-		if (wrapper.hasRemaining()) {
-			LOGGER.log(Level.DEBUG, "WARNING: Sent only " + bytesWritten + " out of " + wrapper.limit()
-					+ " bytes -- dropping this user.");
+		try {
+			pendingBytes -= channel.write(batch, 0, count);
+		} catch (IOException e) {
+			LOGGER.log(Level.DEBUG, "Could not write to client -- dropping this user: " + e);
+			pending.clear();
+			pendingBytes = 0;
 			return false;
+		} finally {
+			Arrays.fill(batch, 0, count, null);
+		}
+		// Forget the frames that were sent in full.
+		while (!pending.isEmpty() && !pending.peek().hasRemaining()) {
+			pending.remove();
+		}
+		if (!pending.isEmpty() && (writeInterest != null)) {
+			writeInterest.run();
 		}
 		return true;
 	}
 
+	/**
+	 * Check if output is waiting for the channel to drain.
+	 *
+	 * @return True if queued output has not yet been written; false otherwise.
+	 */
+	public synchronized boolean hasPendingOutput() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Get the number of messages queued for the channel, including one that
+	 * may have been partly written.
+	 *
+	 * @return Number of messages not yet fully written.
+	 */
+	public synchronized int getPendingCount() {
+		return pending.size();
+	}
+
+	/**
+	 * Get the number of queued bytes the channel has not yet accepted.
+	 *
+	 * @return Bytes waiting to be written.
+	 */
+	public synchronized long getPendingBytes() {
+		return pendingBytes;
+	}
+
+	/**
+	 * Throw away the oldest queued message of which nothing has been written
+	 * yet. A message that has been partly written is kept, so that the other
+	 * end never sees half of one.
+	 *
+	 * @return Number of bytes thrown away, or -1 if there was nothing to drop.
+	 */
+	public synchronized int dropOldest() {
+		Iterator<ByteBuffer> frames = pending.iterator();
+		while (frames.hasNext()) {
+			ByteBuffer frame = frames.next();
+			if (frame.position() == 0) {
+				frames.remove();
+				pendingBytes -= frame.remaining();
+				return frame.remaining();
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Throw away every queued message of which nothing has been written yet,
+	 * keeping only a message that has been partly written.
+	 *
+	 * @return Number of messages thrown away.
+	 */
+	public synchronized int discardUnsent() {
+		int dropped = 0;
+		while (dropOldest() >= 0) {
+			dropped++;
+		}
+		return dropped;
+	}
+
+	/**
+	 * Set what to call when output is left over because the channel is full.
+	 * The callback should arrange for {@link #flush()} to be called once the
+	 * channel can be written again.
+	 *
+	 * @param interest Callback requesting a later flush, or null for none.
+	 */
+	public synchronized void setWriteInterest(Runnable interest) {
+		writeInterest = interest;
+	}
+
+	/**
+	 * Choose whether later messages are sent using the binary protocol
+	 * described in {@link WireProtocol} or the text protocol.
+	 *
+	 * @param useBinary True to send binary frames; false to send text.
+	 */
+	public void setBinary(boolean useBinary) {
+		binary = useBinary;
+	}
+
+	/**
+	 * Check if messages are sent using the binary protocol.
+	 *
+	 * @return True if binary frames are sent; false if text is sent.
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
 	/**
 	 * Checks the given srcName and recipientName to see if either has parental controls set to "on".
 	 * If at least one of the two users has parental controls on, then the given message text is
 	 * filtered for bad words. When a bad word is found in the msgText, it is replaced by asterisks
-	 * of the same length.
+	 * of the same length. A channel message names a channel rather than a recipient, so only its
+	 * sender is checked, as for a broadcast.
 	 *
 	 * @param msg Message to check for profanity
 	 * @return a String with profanity replaced by asterisks
@@ -118,12 +301,13 @@ public class PrintNetNB {
 		}
 
 		if (!msg.isPrivateMessage() && !msg.isGroupMessage() &&
-						!msg.isHistoryResponseMessage() && !msg.isBroadcastMessage()) {
+						!msg.isHistoryResponseMessage() && !msg.isBroadcastMessage() &&
+						!msg.isChannelMessage()) {
 			return msg;
 		}
 
-
-		if (UserCrud.isParentalControl(msg.getName(), msg.getRecipientName())) {
+		String recipientName = msg.isChannelMessage() ? null : msg.getRecipientName();
+		if (UserCrud.isParentalControl(msg.getName(), recipientName)) {
 			String newText = Prattle.getParentalControls().replaceWords(msg.getText());
 			Message newMsg;
 			if (msg.isPrivateMessage()) {
@@ -133,6 +317,8 @@ public class PrintNetNB {
 			} else if (msg.isBroadcastMessage()){
 
 				newMsg = Message.makeBroadcastMessage(msg.getName(), newText);
+			} else if (msg.isChannelMessage()) {
+				newMsg = Message.makeChannelMessage(msg.getName(), msg.getRecipientName(), newText);
 			} else {
 				newMsg = Message.makeHistoryResponseMessage(msg.getName(), newText);
 			}
@@ -2,12 +2,7 @@ package edu.northeastern.ccs.im;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.CharBuffer;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import org.apache.logging.log4j.Logger;
@@ -19,6 +14,13 @@ import org.apache.logging.log4j.LogManager;
  * methods return immediately and does not wait for network input (it is
  * &quot;non-blocking&quot; in technical parlance).
  * 
+ * The scanner does not watch its channel itself. Whoever owns the channel
+ * (on the server, the reactor that selects over every client channel) calls
+ * {@link #hasNextMessage()} once the channel is readable; that call reads
+ * whatever bytes are available and decodes the complete messages among them.
+ * An idle connection therefore costs neither a file descriptor nor a system
+ * call here.
+ * 
  * This work is licensed under the Creative Commons Attribution-ShareAlike 4.0
  * International License. To view a copy of this license, visit
  * http://creativecommons.org/licenses/by-sa/4.0/. It is based on work
@@ -28,29 +30,38 @@ import org.apache.logging.log4j.LogManager;
  * @version 1.3
  */
 public class ScanNetNB {
-	private static final int BUFFER_SIZE = 64 * 1024;
-
-	private static final int DECIMAL_RADIX = 10;
-
-	private static final int HANDLE_LENGTH = 3;
+	/** Size of the smallest buffer borrowed to read a message. */
+	public static final int MIN_BUFFER_SIZE = 4 * 1024;
 
-	private static final int MIN_MESSAGE_LENGTH = 7;
+	/** Largest message we accept unless told otherwise. */
+	public static final int DEFAULT_MAX_FRAME_SIZE = 1024 * 1024;
 
-	private static final String CHARSET_NAME = "us-ascii";
+	/** Pool used by scanners that are not given one of their own. */
+	private static final BufferPool DEFAULT_POOL = new BufferPool(
+			MIN_BUFFER_SIZE, DEFAULT_MAX_FRAME_SIZE, 16L * 1024 * 1024);
 
 	private static final Logger LOGGER = LogManager
 			.getLogger(ScanNetNB.class.getName());
 
 	private SocketChannel channel;
 
-	private Selector selector;
-
-	private SelectionKey key;
+	/** Pool from which we borrow buffers; its largest is our frame limit. */
+	private final BufferPool pool;
 
+	/** Input not yet turned into messages, or null when there is none. */
 	private ByteBuffer buff;
 
+	/** Turns our input into messages, remembering any partial message. */
+	private final FrameParser parser;
+
 	private Queue<Message> messages;
 
+	/** Set once the other end has closed the connection. */
+	private volatile boolean endOfStream;
+
+	/** Set if a message larger than we accept was sent. */
+	private volatile boolean frameTooLarge;
+
 	/**
 	 * Creates a new instance of this class. Since, by definition, this class
 	 * takes in input from the network, we need to supply the non-blocking
@@ -60,24 +71,30 @@ public class ScanNetNB {
 	 *                 communications.
 	 */
 	public ScanNetNB(SocketChannel sockChan) {
+		this(sockChan, DEFAULT_POOL);
+	}
+
+	/**
+	 * Creates a new instance of this class that borrows its buffers from the
+	 * given pool. Messages larger than the largest buffer of the pool are
+	 * rejected.
+	 * 
+	 * @param sockChan Non-blocking SocketChannel from which we will receive
+	 *                 communications.
+	 * @param pool     Pool of buffers shared with other connections.
+	 */
+	public ScanNetNB(SocketChannel sockChan, BufferPool pool) {
 		// Create the queue that will hold the messages received from over the
 		// network
 		messages = new ConcurrentLinkedQueue<>();
-		// Allocate the buffer we will use to read data
-		buff = ByteBuffer.allocate(BUFFER_SIZE);
+		// We only borrow a buffer once there is something to read.
+		this.pool = pool;
+		buff = null;
+		parser = new FrameParser(pool.getLargestSize());
 		// Remember the channel that we will be using.
 		channel = sockChan;
-		try {
-			// Open the selector to handle our non-blocking I/O
-			selector = Selector.open();
-			// Register our channel to receive alerts to complete the connection
-			key = channel.register(selector, SelectionKey.OP_READ);
-		} catch (IOException e) {
-			// For the moment we are going to simply cover up that there was a
-			// problem.
-			LOGGER.log(Level.WARN, e.toString(), e);
-			assert false;
-		}
+		endOfStream = false;
+		frameTooLarge = false;
 	}
 
 	/**
@@ -93,43 +110,6 @@ public class ScanNetNB {
 		this(connection.getSocket());
 	}
 
-	/**
-	 * Read in a new argument from the IM server.
-	 * 
-	 * @param charBuffer Buffer holding text from over the network.
-	 * @return String holding the next argument sent over the network.
-	 */
-	private String readArgument(CharBuffer charBuffer) {
-		// Compute the current position in the buffer
-		int pos = charBuffer.position();
-		// Compute the length of this argument
-		int length = 0;
-		// Track the number of locations visited.
-		int seen = 0;
-		// Assert that this character is a digit representing the length of the
-		// first argument
-		assert Character.isDigit(charBuffer.get(pos));
-		// Now read in the length of the first argument
-		while (Character.isDigit(charBuffer.get(pos))) {
-			// My quick-and-dirty numeric converter
-			length = length * DECIMAL_RADIX;
-			length += Character.digit(charBuffer.get(pos), DECIMAL_RADIX);
-			// Move to the next character
-			pos += 1;
-			seen += 1;
-		}
-		seen += 1;
-		if (length == 0) {
-			// Update our position
-			charBuffer.position(pos);
-			// If the length is 0, this argument is null
-			return null;
-		}
-		String result = charBuffer.subSequence(seen, length + seen).toString();
-		charBuffer.position(pos + length);
-		return result;
-	}
-
 	/**
 	 * Returns true if there is another line of input from this instance. This
 	 * method will NOT block while waiting for input. This class does not
@@ -139,132 +119,109 @@ public class ScanNetNB {
 	 *         of input
 	 * @see java.util.Scanner#hasNextLine()
 	 */
-	public boolean hasNextMessage() {
+	public synchronized boolean hasNextMessage() {
 		
 		// If we have messages waiting for us, return true.
 		if (!messages.isEmpty()) {
 			return true;
 		}
+		// Nothing more will arrive once the other end has hung up.
+		if (endOfStream) {
+			return false;
+		}
 		try {
-			// Otherwise, check if we can read in at least one new message
-			if (selector.selectNow() != 0) {
-				assert key.isReadable();
-				// Read in the next set of commands from the channel.
-				channel.read(buff);
-				selector.selectedKeys().remove(key);
-				buff.flip();
-			} else {
-				return false;
-			}
-			// Create a decoder which will convert our traffic to something
-			// useful
-			Charset charset = Charset.forName(CHARSET_NAME);
-			CharsetDecoder decoder = charset.newDecoder();
-			// Convert the buffer to a format that we can actually use.
-			CharBuffer charBuffer = decoder.decode(buff);
-			// get rid of any extra whitespace at the beginning
-			// Start scanning the buffer for any and all messages.
-			int start = 0;
-			// Scan through the entire buffer; check that we have the minimum
-			// message size
-			while ((start + MIN_MESSAGE_LENGTH) <= charBuffer.limit()) {
-				// If this is not the first message, skip extra space.
-				if (start != 0) {
-					charBuffer.position(start);
+			int count;
+			do {
+				if (buff == null) {
+					// Borrow a buffer only for as long as we hold unread input.
+					buff = pool.acquire(pool.getSmallestSize());
+				} else if (!buff.hasRemaining() && !growBuffer()) {
+					rejectFrame();
+					break;
 				}
-				// First read in the handle
-				final String handle = charBuffer.subSequence(0, HANDLE_LENGTH)
-						.toString();
-				// Skip past the handle
-				charBuffer.position(start + HANDLE_LENGTH + 1);
-				// Read the first argument containing the sender's name
-				final String sender = readArgument(charBuffer);
-
-				if (handle.equalsIgnoreCase("PVT")||
-						handle.equals("HST") ||
-						handle.equalsIgnoreCase("GAD") ||
-						handle.equalsIgnoreCase("GUP")) {
-					// Skip past the leading space
-					charBuffer.position(charBuffer.position() + 2);
-					// Read in the second argument containing the recipient
-					final String recipientName = readArgument(charBuffer);
-					// Skip past the leading space
-					charBuffer.position(charBuffer.position() + 2);
-					// Read in the third argument containing the message
-					final String message = readArgument(charBuffer);
-					// Add this message into our queue
-					Message newMsg = Message.makeMessage(handle, sender,
-							message, null, recipientName);
-					messages.add(newMsg);
-					// And move the position to the start of the next character
-					start = charBuffer.position() + 1;
-				} else if (handle.equalsIgnoreCase("SRC")){
-
-					charBuffer.position(charBuffer.position() + 2);
-					final String sentReceivedBoth = readArgument(charBuffer);
+				// Read whatever the channel has for us without waiting.
+				count = channel.read(buff);
+				if (count < 0) {
+					endOfStream = true;
+				} else if (count > 0) {
+					buff.flip();
+					decodeMessages();
+				}
+				// Keep going while part of a message fills the whole buffer.
+			} while ((count > 0) && !endOfStream && messages.isEmpty()
+					&& !buff.hasRemaining());
+		} catch (IOException ioe) {
+			// The connection is gone; treat it as if the client hung up.
+			LOGGER.log(Level.WARN, ioe.toString(), ioe);
+			endOfStream = true;
+		} finally {
+			releaseIfEmpty();
+		}
+		// Do we now have any messages?
+		return !messages.isEmpty();
+	}
 
-					charBuffer.position(charBuffer.position() + 2);
-					final String recipientName = readArgument(charBuffer);
+	/**
+	 * Move our input into a buffer from the next size class, as long as that
+	 * does not take us past the largest message we accept.
+	 *
+	 * @return True if the buffer grew; false if it is already the largest.
+	 */
+	private boolean growBuffer() {
+		if (buff.capacity() >= pool.getLargestSize()) {
+			return false;
+		}
+		ByteBuffer bigger = pool.acquire(buff.capacity() + 1);
+		buff.flip();
+		bigger.put(buff);
+		pool.release(buff);
+		buff = bigger;
+		return true;
+	}
 
-					charBuffer.position(charBuffer.position() + 2);
-					final String startTime = readArgument(charBuffer);
+	/**
+	 * Give up on a client that sent a message larger than we accept. There is
+	 * no way to find where the next message starts, so no more input is read.
+	 */
+	private void rejectFrame() {
+		LOGGER.log(Level.WARN, "Rejecting a message larger than "
+				+ pool.getLargestSize() + " bytes");
+		frameTooLarge = true;
+		endOfStream = true;
+	}
 
-					charBuffer.position(charBuffer.position() + 2);
-					final String endTime = readArgument(charBuffer);
+	/**
+	 * Hand our buffer back to the pool once it holds no unread input, so that
+	 * idle connections do not hold on to any memory.
+	 */
+	private void releaseIfEmpty() {
+		if ((buff != null) && (endOfStream || (buff.position() == 0))) {
+			pool.release(buff);
+			buff = null;
+		}
+	}
 
-					// Add this message into our queue
-					Message newMsg = Message.makeSearchMessage(sender, sentReceivedBoth,
-									recipientName, startTime, endTime);
-					messages.add(newMsg);
-					// And move the position to the start of the next character
-					start = charBuffer.position() + 1;
-				}
-				else if (handle.equalsIgnoreCase("GRP")) {
-					// Skip past the leading space
-					charBuffer.position(charBuffer.position() + 2);
-					// Read in the second argument containing the recipient
-					final String groupName = readArgument(charBuffer);
-					// Skip past the leading space
-					charBuffer.position(charBuffer.position() + 2);
-					// Read in the third argument containing the message
-					final String message = readArgument(charBuffer);
-					// Add this message into our queue
-					Message newMsg = Message.makeMessage(handle, sender,
-							message, null, groupName);
-					messages.add(newMsg);
-					// And move the position to the start of the next character
-					start = charBuffer.position() + 1;
-				} else if (handle.equalsIgnoreCase("PRC")) {
-					charBuffer.position(charBuffer.position() + 2);
-					// Read in the second argument containing on or off
-					final String newStatus = readArgument(charBuffer);
-					Message newMsg = Message.makeParentalControlMessage(sender, newStatus);
-					messages.add(newMsg);
-					start = charBuffer.position() + 1;
-				} else {
-					// Skip past the leading space
-					charBuffer.position(charBuffer.position() + 2);
-					// Read in the second argument containing the message
-					final String message = readArgument(charBuffer);
-					// Add this message into our queue
-					Message newMsg = Message.makeMessage(handle, sender,
-							message, message,null);
-					messages.add(newMsg);
-					// And move the position to the start of the next character
-					start = charBuffer.position() + 1;
-				}
-			}
-			// Move any read messages out of the buffer so that we can add to
-			// the end.
-			buff.position(start);
-			// Move all of the remaining data to the start of the buffer.
-			buff.compact();
-		} catch (IOException ioe) {
-			// For the moment, we will cover up this exception and hope it never
-			// occurs.
-			assert false;
+	/**
+	 * Parse every complete message in our buffer, which must have been
+	 * flipped for reading, and add them to our queue. The bytes of a message
+	 * that has not fully arrived are moved to the start of the buffer so that
+	 * the rest can be read after them.
+	 */
+	private void decodeMessages() {
+		if (!parser.parse(buff, messages)) {
+			rejectFrame();
 		}
-		// Do we now have any messages?
+		buff.compact();
+	}
+
+	/**
+	 * Returns true if a message has already been read from the network and is
+	 * waiting to be returned. Unlike {@link #hasNextMessage()}, this never
+	 * touches the channel.
+	 *
+	 * @return True if and only if a message can be returned without reading
+	 */
+	public boolean hasBufferedMessages() {
 		return !messages.isEmpty();
 	}
 
@@ -290,12 +247,42 @@ public class ScanNetNB {
 		return msg;
 	}
 
-	public void close() {
-		try {
-			selector.close();
-		} catch (IOException e) {
-			LOGGER.log(Level.WARN, e.toString(), e);
-			assert false;
-		}
+	/**
+	 * Returns true once the other end of the connection has closed it. Any
+	 * messages read before that can still be returned.
+	 *
+	 * @return True if and only if no more input will arrive on the channel
+	 */
+	public boolean isEndOfStream() {
+		return endOfStream;
+	}
+
+	/**
+	 * Returns true if the other end sent a message larger than we accept. No
+	 * more input is read once that happens.
+	 *
+	 * @return True if and only if an oversized message was rejected
+	 */
+	public boolean isFrameTooLarge() {
+		return frameTooLarge;
+	}
+
+	/**
+	 * Returns true once the other end has asked, with a binary login or
+	 * registration, to be sent the binary protocol.
+	 *
+	 * @return True if and only if replies should use {@link WireProtocol}
+	 */
+	public synchronized boolean isBinaryRequested() {
+		return parser.isBinaryRequested();
+	}
+
+	/**
+	 * Stop reading from the channel and hand back any buffer we hold. The
+	 * channel itself is not closed, as it belongs to whoever gave it to us.
+	 */
+	public synchronized void close() {
+		endOfStream = true;
+		releaseIfEmpty();
 	}
 }
@@ -0,0 +1,234 @@
+package edu.northeastern.ccs.im;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The attributes of users that are checked while their messages are sent,
+ * starting with whether parental controls are on, keyed by user name
+ * regardless of case. A user's attributes are read from the database when
+ * they log in, or the first time they are needed, and are then kept up to
+ * date as they are changed, so deciding whether to filter a message does not
+ * query the database.
+ *
+ * Names that are not users, such as those of groups, are remembered as
+ * having no attributes; past {@link #MAX_UNKNOWN_NAMES} of them, the one
+ * used least recently is forgotten. A name that could not be read is taken
+ * to have parental controls on, so that a database failure never lets
+ * unfiltered messages through, and is not read again for a short while, so
+ * that an outage does not send every message to the database. A user whose
+ * attributes were read before keeps them through the outage.
+ */
+public class UserAttributeCache {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(UserAttributeCache.class.getName());
+
+	/** Most names of non-users remembered, so that bad names cannot fill memory. */
+	public static final int MAX_UNKNOWN_NAMES = 10000;
+
+	/** Milliseconds before a name that could not be read is read again. */
+	public static final long DEFAULT_RETRY_MS = 5000;
+
+	/** Status of parental controls that turns them on. */
+	private static final String STATUS_ON = "on";
+
+	/** The cache used by the server, which reads the users' table. */
+	private static final UserAttributeCache SHARED = new UserAttributeCache(
+			new UserCrudImpl());
+
+	/** Source of the attributes when they are read. */
+	private final UserCrud crud;
+
+	/** Whether each user has parental controls on, by lower-case name. */
+	private final Map<String, Boolean> parentalControl = new ConcurrentHashMap<>();
+
+	/** Names that are not users, remembered so they are not read again. */
+	private final Map<String, Boolean> unknown = leastRecentlyUsed();
+
+	/**
+	 * Names that could not be read, with the time, on the System.nanoTime()
+	 * clock, at which they may be read again.
+	 */
+	private final Map<String, Long> failed = leastRecentlyUsed();
+
+	/** Nanoseconds before a name that could not be read is read again. */
+	private final long retryNanos;
+
+	/**
+	 * Create a new, empty cache.
+	 *
+	 * @param crud Source of the attributes.
+	 */
+	public UserAttributeCache(UserCrud crud) {
+		this(crud, DEFAULT_RETRY_MS);
+	}
+
+	/**
+	 * Create a new, empty cache.
+	 *
+	 * @param crud    Source of the attributes.
+	 * @param retryMs Milliseconds before a name that could not be read is
+	 *                read again.
+	 */
+	public UserAttributeCache(UserCrud crud, long retryMs) {
+		this.crud = crud;
+		this.retryNanos = TimeUnit.MILLISECONDS.toNanos(retryMs);
+	}
+
+	/**
+	 * Get the cache used by the server.
+	 *
+	 * @return Shared cache.
+	 */
+	public static UserAttributeCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Read a user's attributes from the database, replacing any that were
+	 * kept. Called when the user logs in.
+	 *
+	 * @param user Name of the user.
+	 */
+	public void load(String user) {
+		if (user != null) {
+			read(key(user));
+		}
+	}
+
+	/**
+	 * Check if a user has parental controls on.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return True if the user exists and has parental controls on, or if
+	 *         they could not be read.
+	 */
+	public boolean isParentalControl(String user) {
+		if (user == null) {
+			return false;
+		}
+		String key = key(user);
+		Boolean on = parentalControl.get(key);
+		if (on == null) {
+			if (unknown.containsKey(key)) {
+				return false;
+			}
+			Long retryAt = failed.get(key);
+			if ((retryAt != null) && (System.nanoTime() - retryAt < 0)) {
+				return true;
+			}
+			on = read(key);
+		}
+		return on;
+	}
+
+	/**
+	 * Record a change to a user's parental controls.
+	 *
+	 * @param user   Name of the user.
+	 * @param status New status of the parental controls, on or off.
+	 */
+	public void setParentalControl(String user, String status) {
+		String key = key(user);
+		unknown.remove(key);
+		failed.remove(key);
+		parentalControl.put(key, STATUS_ON.equalsIgnoreCase(status));
+	}
+
+	/**
+	 * Forget what is kept for a name, so it is read again when next needed.
+	 * Called when a user registers or deletes their account.
+	 *
+	 * @param user Name of the user.
+	 */
+	public void forget(String user) {
+		if (user != null) {
+			String key = key(user);
+			parentalControl.remove(key);
+			unknown.remove(key);
+			failed.remove(key);
+		}
+	}
+
+	/**
+	 * Forget everything that is kept, so that it is all read again when
+	 * next needed.
+	 */
+	public void clear() {
+		parentalControl.clear();
+		unknown.clear();
+		failed.clear();
+	}
+
+	/**
+	 * Get the number of users whose attributes are kept.
+	 *
+	 * @return Number of users.
+	 */
+	public int size() {
+		return parentalControl.size();
+	}
+
+	/**
+	 * Read a name's attributes from the database and keep them. If they
+	 * cannot be read, whatever was kept is left as it was, and the failure
+	 * is remembered until the name may be read again.
+	 *
+	 * @param key Lower-case name.
+	 * @return True if the name is a user with parental controls on, or if
+	 *         the name could not be read and nothing was kept for it.
+	 */
+	private boolean read(String key) {
+		String status;
+		try {
+			status = crud.getParentalControl(key);
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+			failed.put(key, System.nanoTime() + retryNanos);
+			Boolean known = parentalControl.get(key);
+			return (known != null) ? known : true;
+		}
+		failed.remove(key);
+		if (status == null) {
+			parentalControl.remove(key);
+			unknown.put(key, Boolean.TRUE);
+			return false;
+		}
+		boolean on = STATUS_ON.equalsIgnoreCase(status);
+		unknown.remove(key);
+		parentalControl.put(key, on);
+		return on;
+	}
+
+	/**
+	 * Create a map of names that forgets the one used least recently once it
+	 * holds more than {@link #MAX_UNKNOWN_NAMES}.
+	 *
+	 * @param <V> Type of what is kept for each name.
+	 * @return New, empty map, safe to share between threads.
+	 */
+	private static <V> Map<String, V> leastRecentlyUsed() {
+		return Collections.synchronizedMap(new LinkedHashMap<String, V>(16,
+				0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+				return size() > MAX_UNKNOWN_NAMES;
+			}
+		});
+	}
+
+	private static String key(String user) {
+		return user.toLowerCase();
+	}
+}
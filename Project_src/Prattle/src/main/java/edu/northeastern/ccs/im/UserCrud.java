@@ -1,12 +1,8 @@
 package edu.northeastern.ccs.im;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.Map;
 
 public interface UserCrud {
 
@@ -43,6 +39,22 @@ public interface UserCrud {
 	 * @return A list of string containing all usernames
 	 */
 	List<String> getAllUsernames();
+
+	/**
+	 * fetches the id of every user registered
+	 * 
+	 * @return ids of all the users, by username
+	 */
+	Map<String, Integer> getAllUserIds();
+
+	/**
+	 * fetches the id of a single user
+	 * 
+	 * @param username
+	 * @return id of the user, or -1 if no user has that name
+	 */
+	int getUserId(String username);
+
 	/**
 	 * Switch parental control from on to off or from off to on.
 	 *
@@ -52,52 +64,30 @@ public interface UserCrud {
 	 */
 	boolean changeParentalControl(User user, String newStatus);
 
+	/**
+	 * fetches the status of a user's parental controls
+	 *
+	 * @param username
+	 * @return "on" or "off", or null if no user has that name
+	 * @throws SQLException if the status could not be read
+	 */
+	String getParentalControl(String username) throws SQLException;
+
 	/**
 	 * Determines if the given user has parental controls on or off.
+	 * The status of the users is kept in memory, so this does not usually
+	 * query the database.
 	 *
 	 * @param srcName user to check
 	 * @return true if parental controls are set to "on", false otherwise
 	 */
 	static boolean isParentalControl(String srcName, String recipientName) {
-		final Logger LOGGER = Logger.getLogger(UserCrud.class.getName());
-		String fieldname = "parentalcontrol";
-		String statusOn = "on";
-
 		if (srcName == null) {
 			return false;
 		}
-
-		String parentalControlSender = "";
-		String parentalControlReceiver = "";
-		String sql = "SELECT fieldname FROM Users WHERE username=? OR username=?;";
-		sql = sql.replaceFirst("fieldname", fieldname);
-		ResultSet rs = null;
-		try (Connection dbConn = Database.getConnection();
-				 PreparedStatement pstmt = dbConn.prepareStatement(sql)) {
-			pstmt.setString(1, srcName);
-			pstmt.setString(2, recipientName);
-			rs = pstmt.executeQuery();
-			if (rs.next()) {
-				parentalControlSender = rs.getString(fieldname);
-			}
-			if (rs.next()) {
-				parentalControlReceiver = rs.getString(fieldname);
-			}
-		} catch (SQLException e) {
-			LOGGER.log(Level.SEVERE, e.toString(), e);
-		} finally {
-			try {
-				if (rs != null) {
-					rs.close();
-				}
-			} catch (Exception e) {
-				LOGGER.log(Level.SEVERE, e.toString(), e);
-			}
-		}
-
-
-		return (parentalControlSender != null && parentalControlSender.equalsIgnoreCase(statusOn)) ||
-						(parentalControlReceiver != null && parentalControlReceiver.equalsIgnoreCase(statusOn));
+		UserAttributeCache attributes = UserAttributeCache.getShared();
+		return attributes.isParentalControl(srcName)
+				|| attributes.isParentalControl(recipientName);
 	}
 	
 }
@@ -10,7 +10,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Level;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 
@@ -180,6 +182,64 @@ public class UserCrudImpl implements UserCrud {
 		return usernames;
 	}
 
+	/* (non-Javadoc)
+	 * @see edu.northeastern.ccs.im.UserCrud#getAllUserIds()
+	 */
+	@Override
+	public Map<String, Integer> getAllUserIds() {
+		Map<String, Integer> ids = new HashMap<>();
+		String sql = "SELECT id, username FROM Users";
+		try (Connection conn = Database.getConnection();
+				PreparedStatement pstmt = conn.prepareStatement(sql);
+				ResultSet rs = pstmt.executeQuery()) {
+			while (rs.next()) {
+				ids.put(rs.getString("username"), rs.getInt("id"));
+			}
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+		return ids;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.northeastern.ccs.im.UserCrud#getUserId(java.lang.String)
+	 */
+	@Override
+	public int getUserId(String username) {
+		String sql = "SELECT id FROM Users WHERE username = ?";
+		try (Connection conn = Database.getConnection();
+				PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			pstmt.setString(1, username);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next()) {
+					return rs.getInt("id");
+				}
+			}
+		} catch (SQLException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+		return -1;
+	}
+
+	/* (non-Javadoc)
+	 * @see edu.northeastern.ccs.im.UserCrud#getParentalControl(java.lang.String)
+	 */
+	@Override
+	public String getParentalControl(String username) throws SQLException {
+		String sql = "SELECT parentalcontrol FROM Users WHERE username = ?";
+		try (Connection conn = Database.getConnection();
+				PreparedStatement pstmt = conn.prepareStatement(sql)) {
+			pstmt.setString(1, username);
+			try (ResultSet rs = pstmt.executeQuery()) {
+				if (rs.next()) {
+					String status = rs.getString("parentalcontrol");
+					return (status != null) ? status : "off";
+				}
+			}
+		}
+		return null;
+	}
+
 	@Override
 	public boolean changeParentalControl(User user, String newStatus) {
 		if (newStatus.equalsIgnoreCase("on") || newStatus.equalsIgnoreCase("off")) {
@@ -191,6 +251,8 @@ public class UserCrudImpl implements UserCrud {
 				pstmt.setString(1, newStatus);
 				pstmt.setString(2, user.getUsername());
 				pstmt.executeUpdate();
+				UserAttributeCache.getShared().setParentalControl(user.getUsername(),
+						newStatus);
 			} catch (SQLException e) {
 				LOGGER.log(Level.WARN, e.toString(), e);
 			}
@@ -0,0 +1,34 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.User;
+import edu.northeastern.ccs.im.UserAttributeCache;
+
+/**
+ * Handles the messages with which a client changes its password (UPD) or
+ * deletes its account (DEL).
+ */
+class AccountHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		User user = new User();
+		user.setUsername(client.getName());
+		if (msg.isUpdateMessage()) {
+			user.setPassword(msg.getText());
+			client.getUserCrud().updateUser(user);
+			Message msg1 = Message.makeAcknowledgeMessage(client.getName(),
+					"Password update Successful, start sending messages");
+			Prattle.sendMessage(msg1, client);
+		} else {
+			client.getUserCrud().deleteUser(user);
+			Prattle.getGroups().userDeleted(user.getUsername());
+			Prattle.getUsers().userDeleted(user.getUsername());
+			UserAttributeCache.getShared().forget(user.getUsername());
+			Prattle.publishChange(ClusterLink.Change.USER, user.getUsername());
+			Message msg1 = Message.makeNoAcknowledgeMessage(
+					msg.getName(), "Your user has been deleted");
+			Prattle.sendMessage(msg1, client);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.UserCrud;
+
+/**
+ * Handles the broadcast (BCT) messages that a client sends to everyone.
+ */
+class BroadcastHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		// Check if the message is legal formatted
+		if (client.messageChecks(msg)) {
+			// Check for our "special messages"
+			if (!client.broadcastMessageIsSpecial(msg)) {
+				if (msg.getText() != null && UserCrud.isParentalControl(msg.getName(), null)
+								&& Prattle.getParentalControls().checkWords(msg.getText())) {
+					Message msg1 = Message.makeHistoryResponseMessage(msg.getName(),
+									"Watch your language! The last message you sent has been marked as inappropriate.");
+					Prattle.sendMessage(msg1, client);
+				}
+				// Check for our "special messages"
+				if ((msg.getText() != null)
+						&& (msg.getText().compareToIgnoreCase(
+								ServerConstants.BOMB_TEXT) == 0)) {
+					client.handleBomb();
+				} else {
+					Prattle.broadcastMessage(msg);
+				}
+			}
+		} else {
+			Message sendMsg;
+			sendMsg = Message.makeBroadcastMessage(
+					ServerConstants.BOUNCER_ID,
+					"Last message was rejected because it specified an incorrect user name.");
+			client.enqueueMessage(sendMsg);
+		}
+	}
+}
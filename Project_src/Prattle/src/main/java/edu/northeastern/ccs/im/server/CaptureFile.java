@@ -0,0 +1,65 @@
+package edu.northeastern.ccs.im.server;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * An append-only file to which intercepted messages are written, one line
+ * each: the time it was written, in milliseconds since the epoch, a tab, and
+ * the message as the text protocol sends it. The file is only ever added to,
+ * so captures from earlier runs of the server are kept.
+ */
+public class CaptureFile implements Consumer<Message>, Closeable {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(CaptureFile.class.getName());
+
+	/** Writer appending to the file. */
+	private final BufferedWriter out;
+
+	/**
+	 * Open the file to append to, creating it if there is none.
+	 *
+	 * @param path Path of the file.
+	 * @throws IOException If the file cannot be opened.
+	 */
+	public CaptureFile(String path) throws IOException {
+		out = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * Write a message to the end of the file.
+	 *
+	 * @param msg Message to write.
+	 */
+	@Override
+	public synchronized void accept(Message msg) {
+		try {
+			out.write(Long.toString(System.currentTimeMillis()));
+			out.write('\t');
+			out.write(msg.toString());
+			out.newLine();
+			out.flush();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,56 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.UserCrud;
+
+/**
+ * Handles the messages with which a client broadcasts on a channel (CHN) and
+ * subscribes to (SUB) or unsubscribes from (UNS) one.
+ */
+class ChannelHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		if (msg.isChannelMessage()) {
+			broadcast(client, msg);
+		} else {
+			subscribe(client, msg);
+		}
+	}
+
+	private void broadcast(ClientRunnable client, Message msg) {
+		if (!client.messageChecks(msg)) {
+			client.enqueueMessage(Message.makeBroadcastMessage(
+					ServerConstants.BOUNCER_ID,
+					"Last message was rejected because it specified an incorrect user name."));
+			return;
+		}
+		if (msg.getText() != null && UserCrud.isParentalControl(msg.getName(), null)
+				&& Prattle.getParentalControls().checkWords(msg.getText())) {
+			Prattle.sendMessage(Message.makeHistoryResponseMessage(msg.getName(),
+					"Watch your language! The last message you sent has been marked as inappropriate."),
+					client);
+		}
+		Prattle.channelMessage(msg, msg.getRecipientName());
+	}
+
+	private void subscribe(ClientRunnable client, Message msg) {
+		String channel = msg.getText();
+		String reply;
+		if ((channel == null) || channel.isEmpty()) {
+			reply = "Please name a channel";
+		} else if (ChannelIndex.isGlobal(channel)) {
+			reply = "Everyone is always on the " + ChannelIndex.GLOBAL_CHANNEL
+					+ " channel";
+		} else if (msg.getMsgType() == Message.MessageType.SUBSCRIBE) {
+			Prattle.getChannels().subscribe(channel, client);
+			reply = "Subscribed to channel " + channel;
+		} else if (Prattle.getChannels().unsubscribe(channel, client)) {
+			reply = "Unsubscribed from channel " + channel;
+		} else {
+			reply = "You were not subscribed to channel " + channel;
+		}
+		Prattle.sendMessage(Message.makeHistoryResponseMessage(client.getName(),
+				reply), client);
+	}
+}
@@ -0,0 +1,140 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The clients subscribed to each named broadcast channel, keyed by channel
+ * name regardless of case, so that a message on a channel goes only to the
+ * clients that asked for it. Every client is always on the
+ * {@link #GLOBAL_CHANNEL}, which is not kept here: a message on it goes to
+ * everyone, as a plain broadcast does.
+ *
+ * The index is safe to use from any thread. A channel is forgotten once its
+ * last subscriber leaves.
+ */
+public class ChannelIndex {
+
+	/** Name of the channel that every client is on. */
+	public static final String GLOBAL_CHANNEL = "global";
+
+	/** Subscribers of each channel, keyed by canonical channel name. */
+	private final Map<String, Set<ClientRunnable>> channels = new ConcurrentHashMap<>();
+
+	/** Channels of each client, so they can be left when the client goes. */
+	private final Map<ClientRunnable, Set<String>> byClient = new ConcurrentHashMap<>();
+
+	/**
+	 * Check if the given channel is the one every client is on.
+	 *
+	 * @param channel Name of the channel, in any case.
+	 * @return True if it is the global channel.
+	 */
+	public static boolean isGlobal(String channel) {
+		return GLOBAL_CHANNEL.equalsIgnoreCase(channel);
+	}
+
+	/**
+	 * Subscribe a client to a channel.
+	 *
+	 * @param channel Name of the channel, in any case.
+	 * @param client  Client subscribing.
+	 * @return False if the channel is the global one, which cannot be joined.
+	 */
+	public boolean subscribe(String channel, ClientRunnable client) {
+		if (isGlobal(channel)) {
+			return false;
+		}
+		String key = PresenceIndex.canonical(channel);
+		// Each client's channels change only inside its own entry, so that a
+		// client that is going cannot be left subscribed.
+		byClient.compute(client, (c, joined) -> {
+			Set<String> keys = (joined != null) ? joined : new HashSet<>();
+			if (keys.add(key)) {
+				channels.compute(key, (k, clients) -> {
+					Set<ClientRunnable> subscribers = (clients != null) ? clients
+							: ConcurrentHashMap.newKeySet();
+					subscribers.add(client);
+					return subscribers;
+				});
+			}
+			return keys;
+		});
+		return true;
+	}
+
+	/**
+	 * Unsubscribe a client from a channel.
+	 *
+	 * @param channel Name of the channel, in any case.
+	 * @param client  Client unsubscribing.
+	 * @return True if the client had been subscribed.
+	 */
+	public boolean unsubscribe(String channel, ClientRunnable client) {
+		String key = PresenceIndex.canonical(channel);
+		boolean[] left = new boolean[1];
+		byClient.computeIfPresent(client, (c, joined) -> {
+			if (joined.remove(key)) {
+				leave(key, client);
+				left[0] = true;
+			}
+			return joined.isEmpty() ? null : joined;
+		});
+		return left[0];
+	}
+
+	/**
+	 * Unsubscribe a client that has gone from every channel it was on.
+	 *
+	 * @param client Client that has gone.
+	 */
+	public void unsubscribeAll(ClientRunnable client) {
+		byClient.computeIfPresent(client, (c, joined) -> {
+			for (String key : joined) {
+				leave(key, client);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Get the clients subscribed to a channel.
+	 *
+	 * @param channel Name of the channel, in any case.
+	 * @return Live view of the subscribers; empty if the channel has none.
+	 */
+	public Collection<ClientRunnable> getSubscribers(String channel) {
+		if (channel == null) {
+			return Collections.emptySet();
+		}
+		Set<ClientRunnable> clients = channels.get(PresenceIndex.canonical(channel));
+		return (clients != null) ? clients : Collections.<ClientRunnable>emptySet();
+	}
+
+	/**
+	 * Get the number of channels with at least one subscriber.
+	 *
+	 * @return Number of channels.
+	 */
+	public int size() {
+		return channels.size();
+	}
+
+	/**
+	 * Take a client off the subscribers of a channel, forgetting the channel
+	 * if it was the last.
+	 *
+	 * @param key    Canonical name of the channel.
+	 * @param client Client leaving the channel.
+	 */
+	private void leave(String key, ClientRunnable client) {
+		channels.computeIfPresent(key, (k, clients) -> {
+			clients.remove(client);
+			return clients.isEmpty() ? null : clients;
+		});
+	}
+}
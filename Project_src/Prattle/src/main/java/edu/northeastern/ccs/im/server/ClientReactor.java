@@ -0,0 +1,261 @@
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A selector loop that owns the channels of a share of the connected clients.
+ * The reactor does nothing but wait for a channel to become ready; when one
+ * does, the client that owns it is handed to the worker pool. Clients that
+ * have nothing to say are never looked at, so an idle connection costs
+ * nothing.
+ *
+ * All changes to the selector (registrations and interest changes) are run on
+ * the reactor thread itself. Other threads queue them with
+ * {@link #execute(Runnable)}, which also wakes the selector up.
+ */
+public class ClientReactor implements Runnable {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(ClientReactor.class.getName());
+
+	/** Name of this reactor, also used for its thread. */
+	private final String name;
+
+	/** Selector with which the channels of our clients are registered. */
+	private final Selector selector;
+
+	/** Pool on which client handlers are executed. */
+	private final ScheduledExecutorService workers;
+
+	/** Wheel, shared by the whole group, that runs our clients' timers. */
+	private final TimingWheel timers;
+
+	/** Tasks that must be run on the reactor thread. */
+	private final Queue<Runnable> pendingTasks;
+
+	/** Number of clients whose channels this reactor owns. */
+	private final AtomicInteger connections;
+
+	/** Number of readiness events this reactor has handed to the workers. */
+	private final LongAdder events;
+
+	/** Cleared to make the selector loop exit. */
+	private volatile boolean running;
+
+	/**
+	 * Create a new reactor whose clients are processed by the given pool.
+	 *
+	 * @param name    Name of this reactor, also used for its thread.
+	 * @param workers Pool on which client handlers are executed.
+	 * @param timers  Wheel that runs the timers of our clients.
+	 * @throws IOException Exception thrown if the selector cannot be opened.
+	 */
+	public ClientReactor(String name, ScheduledExecutorService workers,
+			TimingWheel timers) throws IOException {
+		this.name = name;
+		this.workers = workers;
+		this.timers = timers;
+		connections = new AtomicInteger();
+		events = new LongAdder();
+		selector = Selector.open();
+		pendingTasks = new ConcurrentLinkedQueue<>();
+		running = true;
+	}
+
+	/**
+	 * Start watching the channel of the given client for input.
+	 *
+	 * @param client Client whose channel this reactor will own.
+	 */
+	public void register(ClientRunnable client) {
+		// Count the client right away so that it is seen by load balancing.
+		connections.incrementAndGet();
+		execute(() -> {
+			try {
+				SelectionKey key = client.getChannel().register(selector,
+						SelectionKey.OP_READ, client);
+				client.attach(this, key);
+			} catch (ClosedChannelException e) {
+				LOGGER.log(Level.WARN, e.toString(), e);
+				deregister();
+				client.terminateClient();
+			}
+		});
+	}
+
+	/**
+	 * Note that a client owned by this reactor has been terminated.
+	 */
+	void deregister() {
+		connections.decrementAndGet();
+	}
+
+	/**
+	 * Get the name of this reactor.
+	 *
+	 * @return Name of this reactor.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Get the number of clients whose channels this reactor owns.
+	 *
+	 * @return Number of connections owned by this reactor.
+	 */
+	public int getConnectionCount() {
+		return connections.get();
+	}
+
+	/**
+	 * Get the number of readiness events this reactor has handled.
+	 *
+	 * @return Number of times a client was handed to the workers.
+	 */
+	public long getEventCount() {
+		return events.sum();
+	}
+
+	/**
+	 * Run the given task on the reactor thread the next time the selector
+	 * wakes up.
+	 *
+	 * @param task Task to be run on the reactor thread.
+	 */
+	public void execute(Runnable task) {
+		pendingTasks.add(task);
+		selector.wakeup();
+	}
+
+	/**
+	 * Run the given task on the worker pool.
+	 *
+	 * @param task Task to be run by one of the workers.
+	 */
+	void dispatch(Runnable task) {
+		workers.execute(task);
+	}
+
+	/**
+	 * Run the given task on the timer thread once the delay has passed. The
+	 * task must be short; it should hand real work to {@link #dispatch}.
+	 *
+	 * @param task    Task to be run by the timer thread.
+	 * @param delayMs Number of milliseconds to wait before running the task.
+	 * @return Timeout that can be used to cancel the task.
+	 */
+	TimingWheel.Timeout schedule(Runnable task, long delayMs) {
+		return timers.schedule(task, delayMs);
+	}
+
+	/**
+	 * Start reporting input on the given key again. Reading is switched off
+	 * while a worker handles the client so that the selector does not keep
+	 * firing for data that the worker is about to consume.
+	 *
+	 * @param key Key of the client whose input should be watched again.
+	 */
+	void resumeReading(SelectionKey key) {
+		execute(() -> {
+			if (key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+			}
+		});
+	}
+
+	/**
+	 * Report the given key as ready once its channel can be written again.
+	 * This is asked for when a client has output that the socket buffer could
+	 * not take.
+	 *
+	 * @param key Key of the client whose output is waiting.
+	 */
+	void resumeWriting(SelectionKey key) {
+		execute(() -> {
+			if (key.isValid()) {
+				key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+			}
+		});
+	}
+
+	/**
+	 * Wait for channels to become ready and hand their clients to the workers
+	 * until {@link #shutdown()} is called.
+	 */
+	@Override
+	public void run() {
+		while (running) {
+			try {
+				selector.select();
+				runPendingTasks();
+				Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+				while (it.hasNext()) {
+					SelectionKey key = it.next();
+					it.remove();
+					handleReady(key);
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.WARN, e.toString(), e);
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+	}
+
+	/**
+	 * Stop the selector loop. Channels registered with this reactor are not
+	 * closed.
+	 */
+	public void shutdown() {
+		running = false;
+		selector.wakeup();
+	}
+
+	/**
+	 * Hand the client owning the given key to the workers.
+	 *
+	 * @param key Key that the selector reported as ready.
+	 */
+	private void handleReady(SelectionKey key) {
+		try {
+			if (key.isValid() && (key.isReadable() || key.isWritable())) {
+				events.increment();
+				// Stop watching for whatever fired until the worker is done.
+				key.interestOps(key.interestOps() & ~key.readyOps());
+				((ClientRunnable) key.attachment()).schedule();
+			}
+		} catch (CancelledKeyException e) {
+			// The client was terminated while we were waiting; nothing to do.
+		}
+	}
+
+	/** Run all of the tasks that other threads queued for this reactor. */
+	private void runPendingTasks() {
+		Runnable task;
+		while ((task = pendingTasks.poll()) != null) {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARN, e.toString(), e);
+			}
+		}
+	}
+}
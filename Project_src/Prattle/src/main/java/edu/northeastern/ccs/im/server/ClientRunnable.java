@@ -1,37 +1,44 @@
 package edu.northeastern.ccs.im.server;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
-import java.util.GregorianCalendar;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Level;
 
-import edu.northeastern.ccs.im.Group;
-import edu.northeastern.ccs.im.GroupCrud;
-import edu.northeastern.ccs.im.GroupCrudImpl;
+import edu.northeastern.ccs.im.BufferPool;
 import edu.northeastern.ccs.im.Message;
 import edu.northeastern.ccs.im.PrintNetNB;
 import edu.northeastern.ccs.im.ScanNetNB;
 import edu.northeastern.ccs.im.User;
+import edu.northeastern.ccs.im.UserAttributeCache;
 import edu.northeastern.ccs.im.UserCrud;
 import edu.northeastern.ccs.im.UserCrudImpl;
 
 /**
  * Instances of this class handle all of the incoming communication from a
  * single IM client. Instances are created when the client signs-on with the
- * server. After instantiation, it is executed periodically on one of the
- * threads from the thread pool and will stop being run only when the client
- * signs off.
+ * server. After instantiation, it is executed on one of the threads from the
+ * thread pool whenever its reactor sees input on the client's channel or a
+ * message is queued for the client, and will stop being run only when the
+ * client signs off.
  * 
  * This work is licensed under the Creative Commons Attribution-ShareAlike 4.0
  * International License. To view a copy of this license, visit
@@ -42,6 +49,37 @@ import edu.northeastern.ccs.im.UserCrudImpl;
  * @version 1.3
  */
 public class ClientRunnable implements Runnable {
+
+	/** What to do when a message would make a client's output too large. */
+	public enum OverflowPolicy {
+		/** Throw away the oldest messages that have not been sent. */
+		DROP_OLDEST,
+		/** Say goodbye to the client and drop the connection. */
+		DISCONNECT,
+		/**
+		 * Store private and group messages so they are delivered when the
+		 * client next logs in; anything else is treated as DROP_OLDEST.
+		 */
+		SPILL;
+
+		/**
+		 * Find the policy with the given name, i.e. "drop-oldest".
+		 *
+		 * @param name Name of the policy, ignoring case.
+		 * @return Matching policy, or DROP_OLDEST if none matches.
+		 */
+		public static OverflowPolicy fromName(String name) {
+			if (name != null) {
+				for (OverflowPolicy policy : values()) {
+					if (name.replace('-', '_').equalsIgnoreCase(policy.name())) {
+						return policy;
+					}
+				}
+			}
+			return DROP_OLDEST;
+		}
+	}
+
 	/**
 	 * Number of milliseconds that special responses are delayed before being
 	 * sent.
@@ -60,19 +98,76 @@ public class ClientRunnable implements Runnable {
 	 */
 	private static final long TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS = 600000;
 
+	/** Most messages sent to a client by a single write. */
+	private static final int WRITE_BATCH_MESSAGES = ServerConfig.getInt(
+			"prattle.write.batchMessages", PrintNetNB.DEFAULT_BATCH_MESSAGES);
+
+	/** Most bytes sent to a client by a single write. */
+	private static final int WRITE_BATCH_BYTES = ServerConfig.getInt(
+			"prattle.write.batchBytes", PrintNetNB.DEFAULT_BATCH_BYTES);
+
+	/** Most messages waiting to be sent to one client. */
+	private static final int MAX_QUEUED_MESSAGES = ServerConfig.getInt(
+			"prattle.client.maxQueuedMessages", 4096);
+
+	/** Most bytes waiting to be sent to one client. */
+	private static final long MAX_QUEUED_BYTES = ServerConfig.getLong(
+			"prattle.client.maxQueuedBytes", 4L * 1024 * 1024);
+
+	/** What to do when a client's output would grow past those limits. */
+	private static final OverflowPolicy OVERFLOW_POLICY = OverflowPolicy
+			.fromName(ServerConfig.getString("prattle.client.overflowPolicy",
+					"drop-oldest"));
+
+	/**
+	 * Thread that stores the messages spilled by clients that fell behind,
+	 * so that no client's queue is locked while the database is written.
+	 * When too many are waiting, the sender stores its own.
+	 */
+	private static final ExecutorService SPILLS = new ThreadPoolExecutor(1, 1,
+			0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1024),
+			task -> {
+				Thread thread = new Thread(task, "prattle-spill");
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.CallerRunsPolicy());
+
+	/** Limits on how quickly clients may send messages. */
+	private static final RateLimiter RATE_LIMITER = RateLimiter.fromConfig();
+
+	/** Sessions that clients may resume after losing their connection. */
+	private static final ResumeRegistry SESSIONS = ResumeRegistry.fromConfig();
+
+	/** Messages over the rate limits after which a client is dropped. */
+	private static final int MAX_RATE_VIOLATIONS = ServerConfig.getInt(
+			"prattle.limit.maxViolations", 50);
+
+	/** Nanoseconds over which those messages are counted. */
+	private static final long RATE_VIOLATION_WINDOW_NANOS = TimeUnit.SECONDS
+			.toNanos(ServerConfig.getInt("prattle.limit.violationWindowSeconds", 60));
+
+	/** Buffers that clients borrow while part of a message has arrived. */
+	private static final BufferPool READ_BUFFERS = new BufferPool(
+			ScanNetNB.MIN_BUFFER_SIZE,
+			ServerConfig.getInt("prattle.read.maxFrameBytes",
+					ScanNetNB.DEFAULT_MAX_FRAME_SIZE),
+			ServerConfig.getLong("prattle.read.poolBytesPerClass",
+					16L * 1024 * 1024));
+
 	private static final Logger LOGGER = LogManager
 			.getLogger(ClientRunnable.class.getName());
 
 	/**
-	 * Time at which we should send a response to the (private) messages we were
-	 * sent.
+	 * Time, on the System.nanoTime() clock, at which we should send a response
+	 * to the (private) messages we were sent.
 	 */
-	private Date sendResponses;
+	private long sendResponsesAt;
 
 	/**
-	 * Time at which the client should be terminated due to lack of activity.
+	 * Time, on the System.nanoTime() clock, at which the client should be
+	 * terminated due to lack of activity.
 	 */
-	private GregorianCalendar terminateInactivity;
+	private volatile long terminateInactivityAt;
 
 	/** Queue of special Messages that we must send immediately. */
 	private Queue<Message> immediateResponse;
@@ -114,19 +209,63 @@ public class ClientRunnable implements Runnable {
 	 */
 	private String groupName;
 
+	/** Reactor that owns our channel, or null when we are run by hand. */
+	private ClientReactor reactor;
+
+	/** Key with which our channel is registered in the reactor. */
+	private SelectionKey key;
+
+	/** Pending check that terminates this client once it has gone idle. */
+	private volatile TimingWheel.Timeout inactivityCheck;
+
+	/** Statistics of our session, or null until we have logged in. */
+	private volatile SessionStats stats;
+
+	/** Ring of our resumable session, or null if we did not ask for one. */
+	private volatile ReplayRing replay;
+
+	/** Set while this client is queued for, or running on, a worker. */
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	/** Set once this client has been terminated. */
+	private final AtomicBoolean terminated = new AtomicBoolean();
+
+	/** Address from which this client connected, without the port. */
+	private final String remoteHost;
+
 	/**
-	 * The future that is used to schedule the client for execution in the
-	 * thread pool.
+	 * Number of messages this client has sent over the rate limits since
+	 * violationsSince.
 	 */
-	private ScheduledFuture<ClientRunnable> runnableMe;
+	private int rateViolations;
+
+	/**
+	 * Time, on the System.nanoTime() clock, at which we started counting the
+	 * messages over the rate limits.
+	 */
+	private long violationsSince;
+
+	/** Set by a handler when the client has asked to log off. */
+	private boolean terminateRequested;
+
+	/** Set once this client has fallen too far behind and is to be dropped. */
+	private volatile boolean slowConsumer;
+
+	/** Handlers for the messages sent once a client has logged in. */
+	private static final HandlerRegistry HANDLERS = HandlerRegistry.createDefault();
 
 	/** Collection of messages queued up to be sent to this client. */
-	private Queue<Message> waitingList;
+	private final Queue<Message> waitingList;
+
+	/** Number of messages in the waiting list. */
+	private final AtomicInteger waitingCount = new AtomicInteger();
+
+	/** Bytes of the messages in the waiting list. */
+	private final AtomicLong waitingBytes = new AtomicLong();
+
+	/** Number of messages thrown away because this client fell behind. */
+	private final AtomicLong droppedCount = new AtomicLong();
 	UserCrud obj = new UserCrudImpl();
-	/**List of users to be duped*/
-	private static List<User> dupUser = new ArrayList<>();
-	/**Group to be duped*/
-	private static List<String> dupGroup = new ArrayList<>();
 	/**Agency agent name*/
 	private static final String AGENCY_AGENT_NAME = "agency";
 
@@ -143,10 +282,12 @@ public class ClientRunnable implements Runnable {
 		// Set up the SocketChannel over which we will communicate.
 		socket = client;
 		socket.configureBlocking(false);
+		remoteHost = hostOf(socket);
 		// Create the class we will use to receive input
-		input = new ScanNetNB(socket);
+		input = new ScanNetNB(socket, READ_BUFFERS);
 		// Create the class we will use to send output
-		output = new PrintNetNB(socket);
+		output = new PrintNetNB(socket, WRITE_BATCH_MESSAGES,
+				WRITE_BATCH_BYTES);
 		// Mark that we are not initialized
 		initialized = false;
 		// Create our queue of special messages
@@ -157,10 +298,7 @@ public class ClientRunnable implements Runnable {
 		immediateResponse = new LinkedList<>();
 		// Mark that the client is active now and start the timer until we
 		// terminate for inactivity.
-		terminateInactivity = new GregorianCalendar();
-		terminateInactivity
-				.setTimeInMillis(terminateInactivity.getTimeInMillis()
-						+ TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
+		extendInactivity(TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
 	}
 
 	/**
@@ -171,7 +309,7 @@ public class ClientRunnable implements Runnable {
 	 * @param msg Message in which we are interested.
 	 * @return True if msg is "special"; false otherwise.
 	 */
-	private boolean broadcastMessageIsSpecial(Message msg) {
+	boolean broadcastMessageIsSpecial(Message msg) {
 		boolean result = false;
 		String text = msg.getText();
 		if (text != null) {
@@ -204,8 +342,25 @@ public class ClientRunnable implements Runnable {
 		if (input.hasNextMessage()) {
 			// If a message exists, try to use it to initialize the connection
 			Message msg = input.nextMessage();
+			// Clients that log in with a binary frame are answered the same way.
+			if (input.isBinaryRequested()) {
+				output.setBinary(true);
+			}
 
-			handleMessageType(msg);
+			// Nobody has logged in yet, so only the limit on the address
+			// applies.
+			if (msg.terminate() || RATE_LIMITER.tryAcquire(null, remoteHost,
+					msg.getMsgType())) {
+				handleMessageType(msg);
+			} else {
+				boolean drop = countViolation(System.nanoTime());
+				sendMessage(Message.makeNoAcknowledgeMessage(msg.getName(), drop
+						? "Disconnected for sending too many messages"
+						: "You are sending messages too quickly, please try again"));
+				if (!output.flush() || drop) {
+					terminateClient();
+				}
+			}
 
 		}
 	}
@@ -215,30 +370,40 @@ public class ClientRunnable implements Runnable {
 			handleLoginMessage(msg);
 		} else if (msg.isRegister()) {
 			handleRegisterMessage(msg);
+		} else if (msg.isResumeMessage()) {
+			handleResumeMessage(msg);
 		}
 
 	}
 
 	private void handleLoginMessage(Message msg) {
+		// Users whose home is another node of the cluster log in there.
+		String home = Prattle.redirectFor(msg.getName());
+		if (home != null) {
+			// The client never logs in here, so hang up once it is told.
+			output.queue(Message.makeRedirectMessage(msg.getName(), home));
+			output.flush();
+			terminateClient();
+			return;
+		}
 		if (checkUserCreds(msg)) {
 
 			if (setUserName(msg.getName())) {
 				// Update the time until we terminate this client due to
 				// inactivity.
-				terminateInactivity.setTimeInMillis(
-						new GregorianCalendar().getTimeInMillis()
-								+ TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
+				extendInactivity(TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
 				// Set that the client is initialized.
 				initialized = true;
+				// Read the user's attributes now, not as their messages go.
+				UserAttributeCache.getShared().load(getName());
+				Prattle.addOnline(this);
 				Message msg1 = Message.makeAcknowledgeMessage(getName(),
 						"Login Successful");
 
 				Prattle.sendMessage(msg1, this);
-				try {
-					Prattle.addIPtoMap(msg.getName(), this.socket.getRemoteAddress().toString());
-				}catch(IOException e){
-					LOGGER.log(Level.WARN, e.toString(), e);
-				}
+				openSession();
+				// The archive holds everything an earlier session was keeping.
+				SESSIONS.close(msg.getName());
 				sendQueuedMessages(checkForQueuedMessages(msg.getName()));
 			} else {
 				initialized = false;
@@ -254,6 +419,102 @@ public class ClientRunnable implements Runnable {
 		}
 	}
 	
+	/**
+	 * Log a reconnecting client back in to the session it names, without
+	 * checking its password, and resend what it missed. The messages queued
+	 * for the user are only read from the archive if the session could not
+	 * hold all of them.
+	 * 
+	 * @param msg Resume message holding the token and the number of the last
+	 *            message the client received.
+	 */
+	private void handleResumeMessage(Message msg) {
+		String[] parts = (msg.getText() != null) ? msg.getText().split(" ")
+				: new String[0];
+		ReplayRing ring = null;
+		long lastSeen = 0;
+		if (parts.length == 2) {
+			try {
+				lastSeen = Long.parseLong(parts[1]);
+				ring = SESSIONS.find(msg.getName(), parts[0]);
+			} catch (NumberFormatException e) {
+				LOGGER.log(Level.WARN, e.toString(), e);
+			}
+		}
+		if ((ring == null) || !setUserName(msg.getName())) {
+			initialized = true;
+			Prattle.sendMessage(Message.makeNoAcknowledgeMessage(msg.getName(),
+					"Session expired, please log in again"), this);
+			return;
+		}
+		extendInactivity(TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
+		List<Message> missed = new ArrayList<>();
+		int heldOffline = ring.attach(this, lastSeen, missed);
+		replay = ring;
+		Prattle.sendMessage(Message.makeAcknowledgeMessage(getName(),
+				"Session resumed"), this);
+		String address = openSession();
+		int arrived;
+		// Nothing sent to us directly may overtake what the ring held.
+		synchronized (waitingList) {
+			initialized = true;
+			Prattle.addOnline(this);
+			// Until now, messages for us were still held by the ring.
+			arrived = ring.online(this, missed);
+			if ((arrived < 0) && (heldOffline > 0)) {
+				// They are all read back from the archive below.
+				missed.subList(missed.size() - heldOffline, missed.size()).clear();
+			}
+			for (Message missedMsg : missed) {
+				enqueueMessage(missedMsg);
+			}
+		}
+		if ((heldOffline < 0) || (arrived < 0)) {
+			// Too much arrived while we were away; read it all back.
+			sendQueuedMessages(checkForQueuedMessages(getName()));
+		} else if (heldOffline + arrived > 0) {
+			// Everything queued for us has now been resent.
+			MessageArchive.updateQueuedMessage(getName(), address);
+		}
+	}
+
+	/**
+	 * Start a session that this client can resume if its connection drops,
+	 * replacing any it had before.
+	 * 
+	 * @return Ring of the new session.
+	 */
+	ReplayRing openResumableSession() {
+		replay = SESSIONS.open(getName(), this);
+		return replay;
+	}
+
+	/**
+	 * Record where this client logged in from and start counting its traffic,
+	 * for routing, the archive and the operator's view of the busiest users.
+	 * 
+	 * @return Remote address of the client, or null if it is not known.
+	 */
+	private String openSession() {
+		String address = null;
+		try {
+			address = socket.getRemoteAddress().toString();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+		stats = Prattle.getSessionRegistry().open(getName(), address, this);
+		return address;
+	}
+
+	/**
+	 * Get the statistics of this client's session.
+	 * 
+	 * @return Statistics of the session, or null if we have not logged in.
+	 */
+	SessionStats getSessionStats() {
+		return stats;
+	}
+
 	/**
 	 * Function checks for queueing messages 
 	 * @param username
@@ -308,29 +569,6 @@ public class ClientRunnable implements Runnable {
 		return message;
 	}
 	
-	/**
-	 * the method is used for recalling messages
-	 * @param msg
-	 */
-	private void recallMessage(Message msg) {
-		String text = getTextFromRecallMessage(msg.toString());
-		MessageArchive.recallMessage(getName(), text);
-	}
-	
-	/**
-	 * used for getting the recalled message texts
-	 * @param line
-	 * @return
-	 */
-	public static String getTextFromRecallMessage(String line) {
-		String lineClone = line;
-		String[] arr = lineClone.split(" ");
-		String message = "";
-		for(int i = 4; i < arr.length; i++)
-			message = message + arr[i] + " ";
-		return message;
-	}
-	
 	/**
 	 * method to handle registration requests
 	 * @param msg
@@ -361,20 +599,18 @@ public class ClientRunnable implements Runnable {
 			if (setUserName(msg.getName())) {
 
 				crud.addUser(user);
+				Prattle.getUsers().userAdded(user.getUsername());
+				UserAttributeCache.getShared().forget(user.getUsername());
+				Prattle.publishChange(ClusterLink.Change.USER, user.getUsername());
 				// Update the time until we terminate this client due to
 				// inactivity.
-				terminateInactivity.setTimeInMillis(
-						new GregorianCalendar().getTimeInMillis()
-								+ TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
+				extendInactivity(TERMINATE_AFTER_INACTIVE_INITIAL_IN_MS);
 				// Set that the client is initialized.
 				initialized = true;
+				Prattle.addOnline(this);
 				Message msg1 = Message.makeAcknowledgeMessage(getName(),
 						"Regisration Successful, start sending messages");
-				try {
-					Prattle.addIPtoMap(msg.getName(), this.socket.getRemoteAddress().toString());
-				}catch(IOException e){
-					LOGGER.log(Level.WARN, e.toString(), e);
-				}
+				openSession();
 				Prattle.sendMessage(msg1, this);
 			} else {
 				initialized = false;
@@ -389,9 +625,12 @@ public class ClientRunnable implements Runnable {
 	 */
 	private void handleSpecial(Message msg) {
 		if (specialResponse.isEmpty()) {
-			sendResponses = new Date();
-			sendResponses.setTime(
-					sendResponses.getTime() + SPECIAL_RESPONSE_DELAY_IN_MS);
+			sendResponsesAt = System.nanoTime()
+					+ TimeUnit.MILLISECONDS.toNanos(SPECIAL_RESPONSE_DELAY_IN_MS);
+			// Make sure we get run again once the responses are due.
+			if (reactor != null) {
+				reactor.schedule(this::schedule, SPECIAL_RESPONSE_DELAY_IN_MS);
+			}
 		}
 		specialResponse.add(msg);
 	}
@@ -403,21 +642,146 @@ public class ClientRunnable implements Runnable {
 	 * @param msg Message to be checked
 	 * @return True if message is correct; false otherwise
 	 */
-	private boolean messageChecks(Message msg) {
+	boolean messageChecks(Message msg) {
 		// Check that the message name matches.
 		return (msg.getName() != null)
 				&& (msg.getName().compareToIgnoreCase(getName()) == 0);
 	}
 
 	/**
-	 * Immediately send this message to the client. This returns if we were
-	 * successful or not in our attempt to send the message.
+	 * Handle a message whose text is {@link ServerConstants#BOMB_TEXT}: this
+	 * client stops being treated as logged in and everyone is told to quit.
+	 */
+	void handleBomb() {
+		initialized = false;
+		Prattle.broadcastMessage(Message.makeQuitMessage(name));
+	}
+
+	/**
+	 * Add a message to those sent back to the client as soon as the message it
+	 * answers has been handled.
+	 *
+	 * @param message Message to be sent right away.
+	 */
+	void addImmediateResponse(Message message) {
+		immediateResponse.add(message);
+	}
+
+	/**
+	 * Terminate this client once the message being handled is done with.
+	 */
+	void requestTermination() {
+		terminateRequested = true;
+	}
+
+	/**
+	 * Turn away a message sent over the rate limits. The client is warned
+	 * until it has done this too often, at which point it is told it is being
+	 * dropped.
+	 *
+	 * @return True if the client should now be terminated.
+	 */
+	private boolean rejectOverLimit() {
+		if (countViolation(System.nanoTime())) {
+			LOGGER.log(Level.INFO, "Disconnecting " + name
+					+ " for sending messages too quickly");
+			sendMessage(Message.makeNoAcknowledgeMessage(name,
+					"Disconnected for sending too many messages"));
+			return true;
+		}
+		addImmediateResponse(Message.makeHistoryResponseMessage(name,
+				"You are sending messages too quickly; your last message was not sent."));
+		return false;
+	}
+
+	/**
+	 * Count a message sent over the rate limits. Only those within the last
+	 * window are counted, so a client that is over the limits now and again
+	 * is not dropped in the end.
+	 *
+	 * @param now Current time, on the System.nanoTime() clock.
+	 * @return True if the client has now sent too many such messages.
+	 */
+	boolean countViolation(long now) {
+		if ((rateViolations == 0)
+				|| (now - violationsSince > RATE_VIOLATION_WINDOW_NANOS)) {
+			rateViolations = 0;
+			violationsSince = now;
+		}
+		rateViolations++;
+		return rateViolations >= MAX_RATE_VIOLATIONS;
+	}
+
+	/**
+	 * Find the address of the other end of a connection.
+	 *
+	 * @param channel Connection to look at.
+	 * @return Address of the other end without its port, or null if unknown.
+	 */
+	private static String hostOf(SocketChannel channel) {
+		try {
+			SocketAddress address = channel.getRemoteAddress();
+			if (address instanceof InetSocketAddress) {
+				return ((InetSocketAddress) address).getAddress().getHostAddress();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+		return null;
+	}
+
+	/**
+	 * Get the limits on how quickly clients may send messages.
+	 *
+	 * @return Rate limiter shared by all clients.
+	 */
+	public static RateLimiter getRateLimiter() {
+		return RATE_LIMITER;
+	}
+
+	/**
+	 * Get the sessions that clients may resume.
+	 *
+	 * @return Registry of resumable sessions shared by all clients.
+	 */
+	public static ResumeRegistry getSessions() {
+		return SESSIONS;
+	}
+
+	/**
+	 * Get the object through which this client reads and changes users.
+	 *
+	 * @return User store used by this client.
+	 */
+	UserCrud getUserCrud() {
+		return obj;
+	}
+
+	/**
+	 * Get the handlers used for the messages of logged in clients.
+	 *
+	 * @return Registry of the message handlers.
+	 */
+	public static HandlerRegistry getHandlers() {
+		return HANDLERS;
+	}
+
+	/**
+	 * Queue this message to be sent to the client by the next flush of our
+	 * output, which writes all of the queued messages together.
 	 * 
-	 * @param message Message to be sent immediately.
-	 * @return True if we sent the message successfully; false otherwise.
+	 * @param message Message to be sent with the next flush.
 	 */
-	private boolean sendMessage(Message message) {
-		return output.print(message);
+	private void sendMessage(Message message) {
+		ReplayRing ring = replay;
+		if ((ring != null) && ReplayRing.isReplayable(message)) {
+			ring.record(this, message);
+		}
+		SessionStats current = stats;
+		if (current != null) {
+			current.sent(message);
+		}
+		output.queue(message);
 	}
 
 	/**
@@ -443,7 +807,7 @@ public class ClientRunnable implements Runnable {
 	 * set name of recipient private message
 	 * @param msg
 	 */
-	private boolean setReceiverName(String recipientName) {
+	boolean setReceiverName(String recipientName) {
 		// Now make sure this name is legal.
 		if (recipientName != null) {
 			// Optimistically set this users ID number.
@@ -457,7 +821,7 @@ public class ClientRunnable implements Runnable {
 	 * @param groupName
 	 * @return
 	 */
-	private boolean setGroupName(String groupName) {
+	boolean setGroupName(String groupName) {
 		// Now make sure this name is legal.
 		if (groupName != null) {
 			// Optimistically set this users ID number.
@@ -470,12 +834,180 @@ public class ClientRunnable implements Runnable {
 
 	/**
 	 * Add the given message to this client to the queue of message to be sent
-	 * to the client.
+	 * to the client. A private or group message for which there is no room is
+	 * spilled, if that is our policy.
 	 * 
 	 * @param message Complete message to be sent.
 	 */
 	public void enqueueMessage(Message message) {
-		waitingList.add(message);
+		if (!offerMessage(message) && (OVERFLOW_POLICY == OverflowPolicy.SPILL)) {
+			spill(message);
+		}
+	}
+
+	/**
+	 * Add the given message to the queue of messages to be sent to this
+	 * client, if there is room for it. Unlike {@link #enqueueMessage(Message)}
+	 * a message that does not fit is never spilled, so a caller that stores
+	 * its messages itself can store it once, as not yet delivered.
+	 * 
+	 * @param message Complete message to be sent.
+	 * @return True if the message was queued; false if it was dropped.
+	 */
+	boolean offerMessage(Message message) {
+		int size = message.encodedLength();
+		boolean queued;
+		synchronized (waitingList) {
+			queued = !slowConsumer
+					&& (!isOverfull(size) || makeRoom(message, size));
+			if (queued) {
+				waitingList.add(message);
+				waitingCount.incrementAndGet();
+				waitingBytes.addAndGet(size);
+			}
+		}
+		// Our worker sends the message, or drops us if we fell behind.
+		schedule();
+		return queued;
+	}
+
+	/**
+	 * Take the oldest message off of the waiting list.
+	 *
+	 * @return Oldest waiting message, or null if there is none.
+	 */
+	private Message pollWaiting() {
+		Message message = waitingList.poll();
+		if (message != null) {
+			waitingCount.decrementAndGet();
+			waitingBytes.addAndGet(-message.encodedLength());
+		}
+		return message;
+	}
+
+	/**
+	 * Check if adding a message of the given size would take the output of
+	 * this client past our limits.
+	 *
+	 * @param size Bytes in the message to be added.
+	 * @return True if there is no room for the message.
+	 */
+	private boolean isOverfull(int size) {
+		return (getQueuedMessageCount() + 1 > MAX_QUEUED_MESSAGES)
+				|| (getQueuedBytes() + size > MAX_QUEUED_BYTES);
+	}
+
+	/**
+	 * Deal with a message for which there is no room, as our overflow policy
+	 * says. Called while the waiting list is locked, so nothing here waits on
+	 * the network or the database: a client to be disconnected is only
+	 * marked, and a message to be spilled is stored once the lock is let go.
+	 *
+	 * @param message Message that does not fit.
+	 * @param size    Bytes in the message.
+	 * @return True if there is now room to queue the message; false if it
+	 *         must not be queued.
+	 */
+	private boolean makeRoom(Message message, int size) {
+		switch (OVERFLOW_POLICY) {
+		case DISCONNECT:
+			if (!terminated.get()) {
+				slowConsumer = true;
+				droppedCount.addAndGet(waitingCount.get() + output.discardUnsent());
+				while (pollWaiting() != null) {
+					// Nothing more will be sent to this client.
+				}
+			}
+			return false;
+		case SPILL:
+			if (message.isPrivateMessage() || message.isGroupMessage()) {
+				droppedCount.incrementAndGet();
+				return false;
+			}
+			return dropOldest(size);
+		case DROP_OLDEST:
+		default:
+			return dropOldest(size);
+		}
+	}
+
+	/**
+	 * Throw away the oldest messages waiting to be sent until there is room
+	 * for a message of the given size.
+	 *
+	 * @param size Bytes in the message that needs room.
+	 * @return True if there is now room; false if not enough could be dropped.
+	 */
+	private boolean dropOldest(int size) {
+		while (isOverfull(size)) {
+			// Messages handed to the output are older than those waiting.
+			if ((output.dropOldest() < 0) && (pollWaiting() == null)) {
+				droppedCount.incrementAndGet();
+				return false;
+			}
+			droppedCount.incrementAndGet();
+		}
+		return true;
+	}
+
+	/**
+	 * Store a private or group message for which there was no room, so it is
+	 * delivered the next time the client logs in. Other messages are left
+	 * dropped.
+	 *
+	 * @param message Message that did not fit.
+	 */
+	private void spill(Message message) {
+		if (message.isPrivateMessage() || message.isGroupMessage()) {
+			Message stored = Message.makePrivateMessage(message.getName(),
+					getName(), message.getText());
+			SPILLS.execute(() -> MessageArchive.archiveMessage(stored, false));
+		}
+	}
+
+	/**
+	 * Drop a client that has stopped reading what we send it, telling it why
+	 * if the connection will still take that. Run by the worker processing
+	 * this client, once it has been marked as falling behind.
+	 */
+	private void disconnectSlowConsumer() {
+		LOGGER.log(Level.INFO, "Disconnecting " + name
+				+ ", who is not keeping up with their messages");
+		Message quit = Message.makeQuitMessage(name);
+		if (quit != null) {
+			output.queue(quit);
+			output.flush();
+		}
+		terminateClient();
+	}
+
+	/**
+	 * Get the number of messages waiting to be sent to this client, whether
+	 * or not they have been handed to the output yet.
+	 *
+	 * @return Depth of this client's outbound queue, in messages.
+	 */
+	public int getQueuedMessageCount() {
+		return waitingCount.get() + output.getPendingCount();
+	}
+
+	/**
+	 * Get the number of bytes waiting to be sent to this client.
+	 *
+	 * @return Depth of this client's outbound queue, in bytes.
+	 */
+	public long getQueuedBytes() {
+		return waitingBytes.get() + output.getPendingBytes();
+	}
+
+	/**
+	 * Get the number of messages for this client that were thrown away, or
+	 * stored for later, because it fell behind.
+	 *
+	 * @return Number of messages that overflowed this client's queue.
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
 	}
 
 	/**
@@ -554,280 +1086,46 @@ public class ClientRunnable implements Runnable {
 					// messages.
 					// Get the next message
 					Message msg = input.nextMessage();
+					SessionStats current = stats;
+					if (current != null) {
+						current.received(msg);
+					}
 					// Update the time until we terminate the client for
 					// inactivity.
-					terminateInactivity.setTimeInMillis(new GregorianCalendar()
-							.getTimeInMillis()
-							+ TERMINATE_AFTER_INACTIVE_BUT_LOGGEDIN_IN_MS);
-					// If the message is a broadcast message, send it out
-					if (msg.isDisplayMessage()) {
-						// Check if the message is legal formatted
-						if (messageChecks(msg)) {
-							// Check for our "special messages"
-							if ((msg.isBroadcastMessage())
-									&& (!broadcastMessageIsSpecial(msg))) {
-
-								if (msg.getText() != null && UserCrud.isParentalControl(msg.getName(), null)
-												&& Prattle.getParentalControls().checkWords(msg.getText())) {
-									Message msg1 = Message.makeHistoryResponseMessage(msg.getName(),
-													"Watch your language! The last message you sent has been marked as inappropriate.");
-									Prattle.sendMessage(msg1, this);
-								}
-								// Check for our "special messages"
-								if ((msg.getText() != null)
-										&& (msg.getText().compareToIgnoreCase(
-												ServerConstants.BOMB_TEXT) == 0)) {
-									initialized = false;
-									Prattle.broadcastMessage(
-											Message.makeQuitMessage(name));
-								} else {
-									Prattle.broadcastMessage(msg);
-								}
-							}
-						} else {
-							Message sendMsg;
-							sendMsg = Message.makeBroadcastMessage(
-									ServerConstants.BOUNCER_ID,
-									"Last message was rejected because it specified an incorrect user name.");
-							enqueueMessage(sendMsg);
-						}
-					} else if (msg.isUpdateMessage()) {
-						User user = new User();
-						user.setUsername(getName());
-						user.setPassword(msg.getText());
-						obj.updateUser(user);
-						Message msg1 = Message.makeAcknowledgeMessage(getName(),
-								"Password update Successful, start sending messages");
-
-						Prattle.sendMessage(msg1, this);
-					} else if (msg.isDeleteMessage()) {
-						User user = new User();
-						user.setUsername(getName());
-						obj.deleteUser(user);
-						Message msg1 = Message.makeNoAcknowledgeMessage(
-								msg.getName(), "Your user has been deleted");
-						Prattle.sendMessage(msg1, this);
-					} else if (msg.isPrivateMessage()) {
-
-						if (msg.getText() != null && UserCrud.isParentalControl(msg.getName(), msg.getRecipientName())
-										&& Prattle.getParentalControls().checkWords(msg.getText())) {
-							Message msg1 = Message.makeHistoryResponseMessage(msg.getName(),
-											"Watch your language! The last message you sent was sent from or sent to a user that " +
-															"\nhas parental controls on and has been marked as inappropriate.");
-							Prattle.sendMessage(msg1, this);
-						}
-
-						boolean checkUser = false;
-						setReceiverName(msg.getRecipientName());
-						// Check if the message is legal formatted
-						if (messageChecks(msg)) {
-							if (((msg.getText() != null)
-									|| (msg.getRecipientName() != null))
-									&& (msg.getText().compareToIgnoreCase(
-											ServerConstants.BOMB_TEXT) == 0)) {
-								initialized = false;
-								Prattle.broadcastMessage(
-										Message.makeQuitMessage(name));
-							} else if (msg.getRecipientName() != null) {
-								List<String> dupName = new ArrayList<>();
-								
-								for(User users : dupUser) {
-									dupName.add(users.getUsername().toLowerCase());
-								}
-								if(dupUser!=null && 
-										!dupUser.isEmpty() &&
-										(dupName.contains(getName().toLowerCase())
-												||
-										dupName.contains(msg.getRecipientName().toLowerCase()))) {
-									checkUser = true;
-								}
-								
-								Prattle.directMessage(msg, recipientName,checkUser);
-							}
-						}
-
-					}else if (msg.isRecallMessage()) {
-						if (messageChecks(msg)) {
-							if ((msg.getText() != null)
-									&& (msg.getText().compareToIgnoreCase(
-											ServerConstants.BOMB_TEXT) == 0)) {
-								initialized = false;
-								Prattle.broadcastMessage(
-										Message.makeQuitMessage(name));
-							} else if (msg.getName() != null) {
-								recallMessage(msg);
-							}
-						}
-
-					}else if (msg.isGroupAddMessage()) {
-
-						Group group = new Group();
-						group.setGroupName(msg.getText());
-						if (new GroupCrudImpl().getGroup(group)
-								|| msg.getRecipientName() == null
-								|| msg.getRecipientName() == "") {
-
-							Message msg1 = Message
-									.makeGroupNoAcknowledgeMessage(getName(),
-											"Group creation unsuccessful");
-
-							Prattle.sendMessage(msg1, this);
-						} else {
-
-							List<User> userList = fetchAllUsers(
-									msg.getRecipientName());
-							group.setUsers(userList);
-							GroupCrud crud = new GroupCrudImpl();
-							crud.addGroup(group);
-
-							Message msg1 = Message.makeGroupAcknowledgeMessage(
-									getName(), "Group creation successful");
-
-							Prattle.sendMessage(msg1, this);
-						}
-
-					} else if (msg.isGroupDelete()) {
-						Group group = new Group();
-						group.setGroupName(msg.getText());
-						if (new GroupCrudImpl().getGroup(group)) {
-							GroupCrud crud = new GroupCrudImpl();
-							crud.deleteGroup(group);
-							Message msg1 = Message.makeGroupAcknowledgeMessage(
-									getName(), "Group deletion successful");
-
-							Prattle.sendMessage(msg1, this);
-						}else {
-							Message msg1 = Message.makeGroupNoAcknowledgeMessage(
-									getName(), "Group deletion unsuccessful");
-
-							Prattle.sendMessage(msg1, this);
-						}
-						
-						
-					}else if (msg.isGroupUpdate()) {
-						Group group = new Group();
-						group.setGroupName(msg.getText());
-						if (new GroupCrudImpl().getGroup(group)) {
-							List<User> userList = fetchAllUsers(
-									msg.getRecipientName());
-							group.setUsers(userList);
-							GroupCrud crud = new GroupCrudImpl();
-							crud.updateGroup(group);
-							Message msg1 = Message.makeGroupAcknowledgeMessage(
-									getName(), "Group update successful");
-							Prattle.sendMessage(msg1, this);
-						}else {
-							Message msg1 = Message.makeGroupNoAcknowledgeMessage(
-									getName(), "Group update unsuccessful");
-
-							Prattle.sendMessage(msg1, this);
-						}
-						
-					}else if (msg.isGroupMessage()) {
-						if (msg.getText() != null && UserCrud.isParentalControl(msg.getName(), msg.getRecipientName())
-										&& Prattle.getParentalControls().checkWords(msg.getText())) {
-							Message msg1 = Message.makeHistoryResponseMessage(msg.getName(),
-											"Watch your language! The last message you sent was sent from or sent to a user that " +
-																"\nhas parental controls on and has been marked as inappropriate.");
-							Prattle.sendMessage(msg1, this);
-						}
-						setGroupName(msg.getRecipientName());
-						// Check if the message is legal formatted
-						if (messageChecks(msg)) {
-							if (((msg.getText() != null)
-									|| (msg.getRecipientName() != null))
-									&& (msg.getText().compareToIgnoreCase(
-									ServerConstants.BOMB_TEXT) == 0)) {
-								initialized = false;
-								Prattle.broadcastMessage(
-										Message.makeQuitMessage(name));
-							} else if (msg.getRecipientName() != null) {
-								Prattle.groupMessage(msg, getName(), groupName,dupGroup,dupUser);
-							}
-						}
-					}else if (msg.isHistoryMessage()) {
-						List<Message> archives = MessageArchive.getArchivedMessages(msg);
-						for (Message retMsg : archives) {
-							immediateResponse.add(retMsg);
-						}
-					}else if (msg.isDupingMessage()){
-						
-						Group group = new Group();
-						group.setGroupName(msg.getText());
-						GroupCrud crud = new GroupCrudImpl();
-						if (crud.getGroup(group)) {
-							
-							List<User> users = crud.getUsers(group);
-							if(users !=null) {
-								for(User user : users) {
-									dupUser.add(user);	
-								}
-							}
-							dupGroup.add(msg.getText());
-						}else {
-							List<User> tempUser = fetchAllUsers(msg.getText());
-							if(tempUser !=null) {
-								for(User user : tempUser) {
-									dupUser.add(user);	
-								}
-							}
-						}		
-					}else if (msg.isSearchMessage()) {
-						List<Message> archives = MessageArchive.searchMessages(msg);
-						immediateResponse.addAll(archives);
-					} else if (msg.isParentalControlMessage()){
-						User user = new User();
-						user.setUsername(getName());
-						boolean status = obj.changeParentalControl(user, msg.getText());
-						Message msg1;
-						if (status) {
-							msg1 = Message.makeHistoryResponseMessage(getName(),
-											String.format("Parental controls have been changed to: %s", msg.getText()));
-						} else {
-							msg1 = Message.makeHistoryResponseMessage(getName(), "Parental controls could not be changed. Enter \"PRC <on or off>\" again");
-						}
-						Prattle.sendMessage(msg1, this);
-					} else if (msg.terminate()) {
-						terminate = true;
-						// Reply with a quit message.
-						enqueueMessage(Message.makeQuitMessage(name));
-					} 
-					// Otherwise, ignore it (for now).
-				}
-				if (!immediateResponse.isEmpty()) {
-					while (!immediateResponse.isEmpty()) {
-						sendMessage(immediateResponse.remove());
+					extendInactivity(TERMINATE_AFTER_INACTIVE_BUT_LOGGEDIN_IN_MS);
+					// Hand the message to the handler for its type; anything
+					// without one is ignored (for now). Logging off is never
+					// held back by the rate limits.
+					if (msg.terminate() || RATE_LIMITER.tryAcquire(getName(),
+							remoteHost, msg.getMsgType())) {
+						HANDLERS.dispatch(this, msg);
+						terminate = terminateRequested;
+					} else {
+						terminate = rejectOverLimit();
 					}
 				}
+				while (!immediateResponse.isEmpty()) {
+					sendMessage(immediateResponse.remove());
+				}
 
 				// Check to make sure we have a client to send to.
 				boolean processSpecial = !specialResponse.isEmpty()
 						&& ((!initialized) || (!waitingList.isEmpty())
-								|| sendResponses.before(new Date()));
-				boolean keepAlive = !processSpecial;
+								|| (System.nanoTime() - sendResponsesAt >= 0));
 				// Send the responses to any special messages we were asked.
 				if (processSpecial) {
-					// Send all of the messages and check that we get valid
-					// responses.
 					while (!specialResponse.isEmpty()) {
-						keepAlive |= sendMessage(specialResponse.remove());
+						sendMessage(specialResponse.remove());
 					}
 				}
-				if (!waitingList.isEmpty()) {
-					if (!processSpecial) {
-						keepAlive = false;
-					}
-					// Send out all of the message that have been added to the
-					// queue.
-					do {
-
-						Message msg = waitingList.remove();
-
-						boolean sentGood = sendMessage(msg);
-						keepAlive |= sentGood;
-					} while (!waitingList.isEmpty());
+				// Send out all of the message that have been added to the
+				// queue.
+				for (Message waiting = pollWaiting(); waiting != null; waiting = pollWaiting()) {
+					sendMessage(waiting);
 				}
-				terminate |= !keepAlive;
+				// Write everything queued above together, and give up on the
+				// client if the connection has failed.
+				terminate |= !output.flush();
 			} finally {
 				// When it is appropriate, terminate the current client.
 				if (terminate) {
@@ -839,15 +1137,14 @@ public class ClientRunnable implements Runnable {
 		// Finally, check if this client have been inactive for too long and,
 		// when they have, terminate
 		// the client.
-		if (!terminate && terminateInactivity.before(new GregorianCalendar())) {
+		boolean inactive = isInactive();
+		if (!terminate && inactive) {
 			LOGGER.log(Level.INFO, "Timing out or forcing off a user " + name);
 			terminateClient();
 		}
-		if(name!=null && name.equalsIgnoreCase(AGENCY_AGENT_NAME) &&
-				terminateInactivity.before(new GregorianCalendar())) {
+		if(name!=null && name.equalsIgnoreCase(AGENCY_AGENT_NAME) && inactive) {
 			LOGGER.log(Level.INFO, "Timing out or forcing off a user " + name);
-			dupUser.clear();
-			dupGroup.clear();
+			Prattle.getInterception().clear();
 			terminateClient();
 		}
 	}
@@ -870,14 +1167,147 @@ public class ClientRunnable implements Runnable {
 	}
 
 	/**
-	 * Store the object used by this client runnable to control when it is
-	 * scheduled for execution in the thread pool.
-	 * 
-	 * @param future Instance controlling when the runnable is executed from
-	 *               within the thread pool.
+	 * Get the channel over which we communicate with this client.
+	 *
+	 * @return SocketChannel connected to the client.
+	 */
+	SocketChannel getChannel() {
+		return socket;
+	}
+
+	/**
+	 * Record the reactor that now owns our channel and start the timer that
+	 * terminates this client once it has been inactive for too long.
+	 *
+	 * @param owner  Reactor with which our channel is registered.
+	 * @param selKey Key of our channel in that reactor.
+	 */
+	void attach(ClientReactor owner, SelectionKey selKey) {
+		reactor = owner;
+		key = selKey;
+		output.setWriteInterest(() -> reactor.resumeWriting(key));
+		scheduleInactivityCheck();
+		// Handle anything that arrived before we were registered.
+		schedule();
+	}
+
+	/**
+	 * Ask the worker pool to process this client. At most one worker handles a
+	 * client at any time; a request made while a worker is busy with this
+	 * client is picked up by that worker before it lets go.
+	 */
+	void schedule() {
+		if ((reactor != null) && !terminated.get()
+				&& scheduled.compareAndSet(false, true)) {
+			reactor.dispatch(this::drain);
+		}
+	}
+
+	/**
+	 * Run this client until it has no more work to do and then hand our
+	 * channel back to the reactor.
+	 */
+	private void drain() {
+		try {
+			// Send whatever was left over when the socket buffer was full.
+			if (!output.flush()) {
+				terminateClient();
+				return;
+			}
+			do {
+				if (slowConsumer) {
+					disconnectSlowConsumer();
+					return;
+				}
+				run();
+			} while (!terminated.get() && hasPendingWork());
+			if (input.isEndOfStream() && !terminated.get()) {
+				if (input.isFrameTooLarge()) {
+					// Tell the client why we are hanging up on them.
+					output.print(Message.makeNoAcknowledgeMessage(getName(),
+							"Message too large"));
+				}
+				// The client hung up, so there is nobody left to talk to.
+				terminateClient();
+			}
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+			terminateClient();
+		} finally {
+			scheduled.set(false);
+		}
+		if (!terminated.get()) {
+			// Work may have been queued after we last checked.
+			if (hasPendingWork()) {
+				schedule();
+			} else {
+				reactor.resumeReading(key);
+			}
+			// A write event that arrived while we were busy was not handled.
+			if (output.hasPendingOutput()) {
+				reactor.resumeWriting(key);
+			}
+		}
+	}
+
+	/**
+	 * Check if a call to {@link #run()} would have something to do without
+	 * waiting for more input from the network.
+	 *
+	 * @return True if messages are waiting to be processed; false otherwise.
 	 */
-	public void setFuture(ScheduledFuture<ClientRunnable> future) {
-		runnableMe = future;
+	private boolean hasPendingWork() {
+		return input.hasBufferedMessages() || slowConsumer
+				|| (initialized && !waitingList.isEmpty()) || isInactive();
+	}
+
+	/**
+	 * Push back the time at which this client is terminated for inactivity.
+	 * Only the deadline moves; the timer watching it is left alone.
+	 *
+	 * @param delayMs Milliseconds from now until the client is terminated.
+	 */
+	private void extendInactivity(long delayMs) {
+		terminateInactivityAt = System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(delayMs);
+	}
+
+	/**
+	 * Check if this client has been inactive for so long that it should be
+	 * terminated.
+	 *
+	 * @return True if the inactivity deadline has passed.
+	 */
+	private boolean isInactive() {
+		return System.nanoTime() - terminateInactivityAt >= 0;
+	}
+
+	/**
+	 * Arrange for this client to be run once it should be terminated for
+	 * inactivity. Activity only moves the deadline; the timer is re-armed when
+	 * it fires and finds that the deadline has not yet passed.
+	 */
+	private void scheduleInactivityCheck() {
+		long delay = TimeUnit.NANOSECONDS.toMillis(terminateInactivityAt
+				- System.nanoTime());
+		inactivityCheck = reactor.schedule(this::checkInactivity,
+				Math.max(delay, 1));
+	}
+
+	/**
+	 * Called by the timer once the inactivity deadline we last saw has
+	 * passed. A client that has been active since gets a new timer; one that
+	 * has not is run, which terminates it.
+	 */
+	private void checkInactivity() {
+		if (terminated.get()) {
+			return;
+		}
+		if (isInactive()) {
+			schedule();
+		} else {
+			scheduleInactivityCheck();
+		}
 	}
 
 	/**
@@ -885,6 +1315,10 @@ public class ClientRunnable implements Runnable {
 	 * at the client's request or due to system need.
 	 */
 	public void terminateClient() {
+		if (!terminated.compareAndSet(false, true)) {
+			// We have already been through here.
+			return;
+		}
 		try {
 			// Once the communication is done, close this connection.
 			input.close();
@@ -895,8 +1329,23 @@ public class ClientRunnable implements Runnable {
 		} finally {
 			// Remove the client from our client listing.
 			Prattle.removeClient(this);
-			// And remove the client from our client pool.
-			runnableMe.cancel(false);
+			// And stop waiting to time this client out.
+			TimingWheel.Timeout check = inactivityCheck;
+			if (check != null) {
+				check.cancel();
+			}
+			// Keep our session for a reconnect, unless we logged off.
+			ReplayRing ring = replay;
+			if (ring != null) {
+				if (terminateRequested) {
+					SESSIONS.close(name, ring);
+				} else {
+					ring.detach(this, System.nanoTime());
+				}
+			}
+			if (reactor != null) {
+				reactor.deregister();
+			}
 		}
 	}
 
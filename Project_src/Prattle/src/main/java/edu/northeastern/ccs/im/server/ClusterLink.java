@@ -0,0 +1,927 @@
+package edu.northeastern.ccs.im.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.ScanNetNB;
+import edu.northeastern.ccs.im.WireProtocol;
+
+/**
+ * The link between this server and the other nodes of a cluster, over which
+ * each node publishes which users are connected to it and hands the messages
+ * for those users to it, so that a user connected to another node is not
+ * treated as offline.
+ *
+ * Every node listens for the other nodes, on the loopback address unless
+ * another is configured, and dials the peers it is given; a pair of nodes
+ * that dial each other keep the connection dialed by the node whose id sorts
+ * first. Each connection starts with the id of the node and a random
+ * challenge. When the cluster has a shared secret, each node then proves it
+ * knows the secret by answering the other's challenge with an HMAC, and
+ * nothing else is read from a node until it has; a node that cannot prove
+ * it is dropped. Then each node sends every user connected to it.
+ *
+ * The link also carries word of users, groups and user attributes changed
+ * on one node, so that the others stop trusting what they have cached for
+ * them; a node that has just linked may have missed some, so it is told
+ * that everything may have changed. After that, users coming and going are batched
+ * and published every few milliseconds, so that a flood of logins costs the
+ * peers a frame per batch rather than per user. Whether a user is here is
+ * only decided when the batch is published, so a user whose clients come and
+ * go at once is published as they are left. Messages are handed over as the
+ * binary frames clients are sent, each with the user it is for.
+ *
+ * Each connection has its own queue of frames to send, written by a thread
+ * of its own, so no thread that publishes presence or forwards a message
+ * waits for the network. A node that falls so far behind that its queue
+ * fills is dropped, and gets every user again when it links back.
+ */
+public class ClusterLink {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(ClusterLink.class.getName());
+
+	/** Frame naming the node at the other end of a connection. */
+	private static final byte HELLO = 'H';
+
+	/** Frame listing users who have come or gone. */
+	private static final byte PRESENCE = 'P';
+
+	/** Frame carrying a message for a user connected to the receiving node. */
+	private static final byte FORWARD = 'F';
+
+	/** Frame answering the challenge of the node at the other end. */
+	private static final byte AUTH = 'A';
+
+	/** Frame naming something that has changed on the sending node. */
+	private static final byte CHANGE = 'C';
+
+	/** Kinds of thing whose change one node publishes to the others. */
+	public enum Change {
+		/** A user has registered or deleted their account. */
+		USER,
+		/** A group has been created, changed or deleted. */
+		GROUP,
+		/** A user's attributes, such as parental controls, have changed. */
+		ATTRIBUTES
+	}
+
+	/** Bytes in the challenge each node sends the other. */
+	private static final int CHALLENGE_BYTES = 16;
+
+	/** MAC with which challenges are answered. */
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	/** Source of the challenges. */
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	/** Milliseconds between attempts to reach peers we are not linked to. */
+	private static final int RECONNECT_MS = 1000;
+
+	/** Most frames waiting to be sent to one node. */
+	private static final int MAX_QUEUED_FRAMES = 10000;
+
+	/** Milliseconds a new connection has to say who it is. */
+	private static final int HANDSHAKE_MS = 5000;
+
+	/** Id of this node, unique within the cluster. */
+	private final String nodeId;
+
+	/** Socket on which the other nodes reach this one. */
+	private final ServerSocket listener;
+
+	/** Addresses of the nodes this one dials. */
+	private final List<InetSocketAddress> peers;
+
+	/** Milliseconds for which presence changes are batched. */
+	private final long batchMs;
+
+	/** Delivers the messages forwarded to this node to the local user. */
+	private final BiConsumer<String, Message> delivery;
+
+	/** Checks if a user, by canonical name, is connected to this node. */
+	private final Predicate<String> isLocal;
+
+	/** Secret shared by the nodes of the cluster, or null if there is none. */
+	private final SecretKeySpec secret;
+
+	/** Told of every change another node publishes. */
+	private volatile BiConsumer<Change, String> changes = (change, name) -> { };
+
+	/** Connection to each node we are linked to, by node id. */
+	private final Map<String, Peer> links = new ConcurrentHashMap<>();
+
+	/** Node id found at each address we dial, once it has answered. */
+	private final Map<InetSocketAddress, String> dialed = new ConcurrentHashMap<>();
+
+	/** Nodes each remote user is connected to, by canonical user name. */
+	private final Map<String, Set<String>> remote = new ConcurrentHashMap<>();
+
+	/** Number of users connected to each other node, by node id. */
+	private final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+
+	/**
+	 * Users connected to this node as last published, sent to each node that
+	 * links to us. Guarded by {@link #pending}.
+	 */
+	private final Set<String> local = new HashSet<>();
+
+	/**
+	 * Users who may have come or gone since the last batch, in order. Guarded
+	 * by itself, which is also held while presence is queued for the links so
+	 * that no node sees it out of order.
+	 */
+	private final Set<String> pending = new LinkedHashSet<>();
+
+	/** Publishes the batched presence changes. */
+	private final ScheduledExecutorService flusher;
+
+	/** Number of messages forwarded to and from other nodes. */
+	private final LongAdder forwarded = new LongAdder();
+	private final LongAdder received = new LongAdder();
+
+	/** Cleared to stop every thread of the link. */
+	private volatile boolean running;
+
+	/**
+	 * Create a new link and start listening for the other nodes; nothing is
+	 * read or dialed until {@link #start()} is called.
+	 *
+	 * @param nodeId   Id of this node, unique within the cluster.
+	 * @param bind     Address on which to listen for other nodes.
+	 * @param port     Port on which to listen for other nodes, or 0 for any.
+	 * @param secret   Secret shared by the nodes of the cluster, or null or
+	 *                 empty if the nodes do not prove who they are.
+	 * @param peers    Addresses of the nodes to dial.
+	 * @param batchMs  Milliseconds for which presence changes are batched.
+	 * @param delivery Called with the user and message of every message
+	 *                 another node forwards to this one.
+	 * @param isLocal  Checks if a user, by canonical name, is connected to
+	 *                 this node.
+	 * @throws IOException If the port cannot be listened on.
+	 */
+	public ClusterLink(String nodeId, InetAddress bind, int port, String secret,
+			List<InetSocketAddress> peers, long batchMs,
+			BiConsumer<String, Message> delivery, Predicate<String> isLocal)
+			throws IOException {
+		this.nodeId = nodeId;
+		this.peers = new ArrayList<>(peers);
+		this.batchMs = Math.max(batchMs, 1);
+		this.delivery = delivery;
+		this.isLocal = isLocal;
+		this.secret = ((secret == null) || secret.isEmpty()) ? null
+				: new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8),
+						MAC_ALGORITHM);
+		listener = new ServerSocket(port, 0, bind);
+		flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "prattle-cluster-flush");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Create the link described by the server's configuration, unless this
+	 * server is not part of a cluster.
+	 *
+	 * @param delivery Called with the user and message of every message
+	 *                 another node forwards to this one.
+	 * @param isLocal  Checks if a user, by canonical name, is connected to
+	 *                 this node.
+	 * @return New link, or null if no node id is configured, or if the link
+	 *         would listen beyond the loopback address without a secret.
+	 * @throws IOException If the cluster port cannot be listened on.
+	 */
+	public static ClusterLink fromConfig(BiConsumer<String, Message> delivery,
+			Predicate<String> isLocal) throws IOException {
+		String node = ServerConfig.getString("prattle.cluster.node", null);
+		if (node == null) {
+			return null;
+		}
+		InetAddress bind = InetAddress.getByName(ServerConfig.getString(
+				"prattle.cluster.bindAddress", "127.0.0.1"));
+		String secret = ServerConfig.getString("prattle.cluster.secret", null);
+		if ((secret == null) && !bind.isLoopbackAddress()) {
+			LOGGER.log(Level.ERROR, "Not joining the cluster: listening on "
+					+ bind.getHostAddress() + " needs prattle.cluster.secret");
+			return null;
+		}
+		List<InetSocketAddress> peers = new ArrayList<>();
+		for (String peer : ServerConfig.getString("prattle.cluster.peers", "")
+				.split(",")) {
+			String address = peer.trim();
+			int colon = address.lastIndexOf(':');
+			if (colon > 0) {
+				try {
+					peers.add(new InetSocketAddress(address.substring(0, colon),
+							Integer.parseInt(address.substring(colon + 1))));
+				} catch (IllegalArgumentException e) {
+					LOGGER.log(Level.WARN, "Ignoring cluster peer " + address, e);
+				}
+			}
+		}
+		return new ClusterLink(node, bind,
+				ServerConfig.getInt("prattle.cluster.port", 4546), secret, peers,
+				ServerConfig.getLong("prattle.cluster.presenceBatchMs", 100),
+				delivery, isLocal);
+	}
+
+	/**
+	 * Start accepting and dialing the other nodes and publishing presence.
+	 */
+	public void start() {
+		running = true;
+		startThread("prattle-cluster-accept", this::acceptLoop);
+		startThread("prattle-cluster-dial", this::dialLoop);
+		flusher.scheduleWithFixedDelay(this::flush, batchMs, batchMs,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Close every connection and stop every thread of the link.
+	 */
+	public void stop() {
+		running = false;
+		flusher.shutdownNow();
+		try {
+			listener.close();
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+		for (Peer peer : links.values()) {
+			peer.close();
+		}
+	}
+
+	/**
+	 * Get the id of this node.
+	 *
+	 * @return Node id.
+	 */
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	/**
+	 * Get the port on which this node listens for the others.
+	 *
+	 * @return Local port of the listener.
+	 */
+	public int getPort() {
+		return listener.getLocalPort();
+	}
+
+	/**
+	 * Publish, with the next batch, whether a user who has just logged in or
+	 * out is still connected to this node.
+	 *
+	 * @param user Name of the user.
+	 */
+	public void presenceChanged(String user) {
+		synchronized (pending) {
+			pending.add(PresenceIndex.canonical(user));
+		}
+	}
+
+	/**
+	 * Set what is told of the changes other nodes publish. It is called with
+	 * the kind of change and the name of what changed, or with a null name
+	 * for each kind when a node links to us and anything may have changed.
+	 *
+	 * @param listener Told of every change, on the thread reading the link.
+	 */
+	public void setChangeListener(BiConsumer<Change, String> listener) {
+		changes = listener;
+	}
+
+	/**
+	 * Tell every other node that something has changed here. A node whose
+	 * queue is full is dropped, since it would otherwise keep what is stale.
+	 *
+	 * @param change Kind of thing that changed.
+	 * @param name   Name of the user or group that changed.
+	 */
+	public void publish(Change change, String name) {
+		if (name == null) {
+			return;
+		}
+		byte[] frame = changeFrame(change, PresenceIndex.canonical(name));
+		for (Peer peer : links.values()) {
+			peer.sendPresence(frame);
+		}
+	}
+
+	/**
+	 * Get the other nodes a user is connected to.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Ids of the nodes; empty if the user is on none of them.
+	 */
+	public Collection<String> getNodes(String user) {
+		Set<String> nodes = (user != null)
+				? remote.get(PresenceIndex.canonical(user)) : null;
+		return (nodes != null) ? nodes : Collections.<String>emptySet();
+	}
+
+	/**
+	 * Get the number of users connected to a node, as it last published.
+	 *
+	 * @param node Id of the node; this node's own id gives its own load.
+	 * @return Number of users, or -1 if we are not linked to the node.
+	 */
+	public int getLoad(String node) {
+		if (nodeId.equals(node)) {
+			synchronized (pending) {
+				return local.size();
+			}
+		}
+		if (!links.containsKey(node)) {
+			return -1;
+		}
+		AtomicInteger load = loads.get(node);
+		return (load != null) ? load.get() : 0;
+	}
+
+	/**
+	 * Hand a message to every other node the user is connected to.
+	 *
+	 * @param user Name of the user the message is for.
+	 * @param msg  Message to deliver.
+	 * @return True if the message was sent to at least one node.
+	 */
+	public boolean forward(String user, Message msg) {
+		Collection<String> nodes = getNodes(user);
+		if (nodes.isEmpty()) {
+			return false;
+		}
+		// The message is encoded once, however many users it is for.
+		byte[] body = WireProtocol.encodeShared(msg);
+		byte[][] frame = { forwardHeader(user, body.length), body };
+		boolean sent = false;
+		for (String node : nodes) {
+			Peer peer = links.get(node);
+			if ((peer != null) && peer.send(frame)) {
+				sent = true;
+			}
+		}
+		if (sent) {
+			forwarded.increment();
+		}
+		return sent;
+	}
+
+	/**
+	 * Get the number of other nodes this one is linked to.
+	 *
+	 * @return Number of links.
+	 */
+	public int size() {
+		return links.size();
+	}
+
+	/**
+	 * Describe the traffic over the link, for logging.
+	 *
+	 * @return One line giving the nodes linked and the messages forwarded.
+	 */
+	public String report() {
+		return "cluster node " + nodeId + ": " + links.keySet() + " linked, "
+				+ remote.size() + " remote users, " + forwarded.sum()
+				+ " msgs forwarded, " + received.sum() + " received";
+	}
+
+	/**
+	 * Publish the users who have come or gone since the last flush. Each is
+	 * looked up as they are now, and only those whose presence differs from
+	 * what was last published are sent. The batch is only queued for each
+	 * link here; nothing waits for the network.
+	 */
+	private void flush() {
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				return;
+			}
+			Map<String, Boolean> users = new LinkedHashMap<>();
+			for (String user : pending) {
+				boolean online = isLocal.test(user);
+				if (online ? local.add(user) : local.remove(user)) {
+					users.put(user, online);
+				}
+			}
+			pending.clear();
+			if (!users.isEmpty()) {
+				byte[] frame = presenceFrame(users);
+				for (Peer peer : links.values()) {
+					peer.sendPresence(frame);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accept the connections of the other nodes until the link is stopped.
+	 */
+	private void acceptLoop() {
+		while (running) {
+			try {
+				Socket socket = listener.accept();
+				startPeer(socket, false, null);
+			} catch (IOException e) {
+				if (running) {
+					LOGGER.log(Level.WARN, e.toString(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Dial the peers we are not linked to, again and again, until the link is
+	 * stopped.
+	 */
+	private void dialLoop() {
+		while (running) {
+			for (InetSocketAddress address : peers) {
+				String node = dialed.get(address);
+				if ((node == null) || !links.containsKey(node)) {
+					try {
+						Socket socket = new Socket();
+						socket.connect(address, RECONNECT_MS);
+						startPeer(socket, true, address);
+					} catch (IOException e) {
+						LOGGER.log(Level.DEBUG, "Cluster peer " + address
+								+ " is not reachable: " + e);
+					}
+				}
+			}
+			try {
+				Thread.sleep(RECONNECT_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Introduce this node over a new connection and start reading from it.
+	 *
+	 * @param socket  Connection to another node.
+	 * @param dialer  True if this node dialed the connection.
+	 * @param address Address that was dialed, or null if the other node
+	 *                dialed.
+	 * @throws IOException If the connection cannot be used.
+	 */
+	private void startPeer(Socket socket, boolean dialer,
+			InetSocketAddress address) throws IOException {
+		socket.setTcpNoDelay(true);
+		Peer peer = new Peer(socket, dialer, address);
+		peer.hello();
+		startThread("prattle-cluster-send", peer::writeLoop);
+		startThread("prattle-cluster-peer", peer);
+	}
+
+	/**
+	 * Build the frame publishing a batch of presence changes.
+	 *
+	 * @param users Users who have come (true) or gone (false).
+	 * @return Frame to send.
+	 */
+	private static byte[] presenceFrame(Map<String, Boolean> users) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream frame = new DataOutputStream(bytes)) {
+			frame.writeByte(PRESENCE);
+			frame.writeInt(users.size());
+			for (Map.Entry<String, Boolean> user : users.entrySet()) {
+				frame.writeBoolean(user.getValue());
+				frame.writeUTF(user.getKey());
+			}
+		} catch (IOException e) {
+			// Writing to memory does not fail.
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Build the frame publishing a change.
+	 *
+	 * @param change Kind of thing that changed.
+	 * @param name   Canonical name of what changed.
+	 * @return Frame to send.
+	 */
+	private static byte[] changeFrame(Change change, String name) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(name.length() + 8);
+		try (DataOutputStream frame = new DataOutputStream(bytes)) {
+			frame.writeByte(CHANGE);
+			frame.writeByte(change.ordinal());
+			frame.writeUTF(name);
+		} catch (IOException e) {
+			// Writing to memory does not fail.
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Build the start of the frame handing a message to the node a user is
+	 * connected to; the binary frame of the message follows it.
+	 *
+	 * @param user   Name of the user.
+	 * @param length Bytes in the binary frame of the message.
+	 * @return Start of the frame to send.
+	 */
+	private static byte[] forwardHeader(String user, int length) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(user.length() + 16);
+		try (DataOutputStream frame = new DataOutputStream(bytes)) {
+			frame.writeByte(FORWARD);
+			frame.writeUTF(user);
+			frame.writeInt(length);
+		} catch (IOException e) {
+			// Writing to memory does not fail.
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Start a daemon thread of the link.
+	 *
+	 * @param name Name of the thread.
+	 * @param task What the thread runs.
+	 */
+	private static void startThread(String name, Runnable task) {
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Record the presence changes published by another node.
+	 *
+	 * @param node  Id of the node.
+	 * @param users Users who have come (true) or gone (false).
+	 */
+	private void applyPresence(String node, Map<String, Boolean> users) {
+		AtomicInteger load = loads.computeIfAbsent(node, n -> new AtomicInteger());
+		for (Map.Entry<String, Boolean> user : users.entrySet()) {
+			if (user.getValue()) {
+				if (remote.computeIfAbsent(user.getKey(),
+						u -> ConcurrentHashMap.newKeySet()).add(node)) {
+					load.incrementAndGet();
+				}
+			} else {
+				remote.computeIfPresent(user.getKey(), (u, nodes) -> {
+					if (nodes.remove(node)) {
+						load.decrementAndGet();
+					}
+					return nodes.isEmpty() ? null : nodes;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Forget every user of a node we are no longer linked to.
+	 *
+	 * @param node Id of the node.
+	 */
+	private void forgetNode(String node) {
+		for (String user : remote.keySet()) {
+			remote.computeIfPresent(user, (u, nodes) -> {
+				nodes.remove(node);
+				return nodes.isEmpty() ? null : nodes;
+			});
+		}
+		loads.remove(node);
+	}
+
+	/**
+	 * One connection to another node, whose frames are read by one thread of
+	 * its own and written, from its queue, by another.
+	 */
+	private final class Peer implements Runnable {
+
+		private final Socket socket;
+		private final DataInputStream in;
+		private final DataOutputStream out;
+
+		/**
+		 * Frames waiting to be written, in order, each as the parts that are
+		 * written one after the other.
+		 */
+		private final BlockingQueue<byte[][]> outbound = new ArrayBlockingQueue<>(
+				MAX_QUEUED_FRAMES);
+
+		/** Set once the connection has been closed. */
+		private volatile boolean closed;
+
+		/** Challenge this node sent, which the other node must answer. */
+		private final byte[] challenge = new byte[CHALLENGE_BYTES];
+
+		/** True if this node dialed the connection. */
+		private final boolean dialer;
+
+		/** Address that was dialed, or null if the other node dialed. */
+		private final InetSocketAddress address;
+
+		/** Id of the node at the other end, once it has said. */
+		private String node;
+
+		Peer(Socket socket, boolean dialer, InetSocketAddress address)
+				throws IOException {
+			this.socket = socket;
+			this.dialer = dialer;
+			this.address = address;
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+		}
+
+		/**
+		 * Send the id of this node, before any other frame.
+		 *
+		 * @throws IOException If the connection has failed.
+		 */
+		void hello() throws IOException {
+			RANDOM.nextBytes(challenge);
+			out.writeByte(HELLO);
+			out.writeUTF(nodeId);
+			out.write(challenge);
+			out.flush();
+		}
+
+		/**
+		 * Read the other node's hello and, if the cluster has a secret, answer
+		 * its challenge and check its answer to ours. Nothing else is read
+		 * from the node until this has passed, and it must pass quickly.
+		 *
+		 * @throws IOException If the connection has failed or the other node
+		 *                     is not one of ours.
+		 */
+		private void handshake() throws IOException {
+			socket.setSoTimeout(HANDSHAKE_MS);
+			if (in.readByte() != HELLO) {
+				throw new IOException("Cluster peer did not say hello");
+			}
+			String id = in.readUTF();
+			byte[] theirs = new byte[CHALLENGE_BYTES];
+			in.readFully(theirs);
+			if (nodeId.equals(id)) {
+				throw new IOException("Cluster peer claims to be this node");
+			}
+			if (secret != null) {
+				send(new byte[][] { { AUTH }, answer(theirs, nodeId) });
+				byte[] proof = new byte[answer(challenge, id).length];
+				if (in.readByte() != AUTH) {
+					throw new IOException("Cluster peer " + id + " did not authenticate");
+				}
+				in.readFully(proof);
+				if (!MessageDigest.isEqual(proof, answer(challenge, id))) {
+					throw new IOException("Cluster peer " + id + " failed to authenticate");
+				}
+			}
+			socket.setSoTimeout(0);
+			node = id;
+		}
+
+		/**
+		 * Answer a challenge as the given node, with the cluster's secret.
+		 *
+		 * @param nonce Challenge sent by the node being answered.
+		 * @param id    Id of the node answering.
+		 * @return MAC of the challenge and the id.
+		 */
+		private byte[] answer(byte[] nonce, String id) {
+			try {
+				Mac mac = Mac.getInstance(MAC_ALGORITHM);
+				mac.init(secret);
+				mac.update(nonce);
+				return mac.doFinal(id.getBytes(StandardCharsets.UTF_8));
+			} catch (GeneralSecurityException e) {
+				// Every Java runtime has HmacSHA256.
+				throw new IllegalStateException(e);
+			}
+		}
+
+		/**
+		 * Send every user connected to this node. Later changes follow in the
+		 * batches, as the connection is already one of the links.
+		 */
+		void snapshot() {
+			synchronized (pending) {
+				Map<String, Boolean> users = new LinkedHashMap<>();
+				for (String user : local) {
+					users.put(user, Boolean.TRUE);
+				}
+				sendPresence(presenceFrame(users));
+			}
+		}
+
+		/**
+		 * Queue a batch of presence changes, or a change to what the other
+		 * node caches. Missing one would leave the other node wrong, so a node
+		 * whose queue is full is dropped.
+		 *
+		 * @param frame Frame publishing the changes.
+		 */
+		void sendPresence(byte[] frame) {
+			if (!closed && !outbound.offer(new byte[][] { frame })) {
+				LOGGER.log(Level.WARN, "Dropping cluster node " + node
+						+ ", which is not keeping up");
+				close();
+			}
+		}
+
+		/**
+		 * Queue a frame to be written.
+		 *
+		 * @param frame Parts of the frame to send, which may be shared with
+		 *              other connections and must not be changed.
+		 * @return False if the connection is closed or too many frames are
+		 *         already waiting.
+		 */
+		boolean send(byte[][] frame) {
+			return !closed && outbound.offer(frame);
+		}
+
+		/**
+		 * Write the queued frames until the connection is closed, flushing
+		 * once whenever the queue runs dry.
+		 */
+		void writeLoop() {
+			try {
+				while (running && !closed) {
+					byte[][] frame = outbound.poll(RECONNECT_MS, TimeUnit.MILLISECONDS);
+					if (frame != null) {
+						do {
+							for (byte[] part : frame) {
+								out.write(part);
+							}
+							frame = outbound.poll();
+						} while (frame != null);
+						out.flush();
+					}
+				}
+			} catch (IOException e) {
+				if (running && !closed) {
+					LOGGER.log(Level.WARN, e.toString(), e);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				close();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				handshake();
+				if (!register()) {
+					return;
+				}
+				// We may have missed changes while we were not linked.
+				for (Change change : Change.values()) {
+					changes.accept(change, null);
+				}
+				snapshot();
+				while (running) {
+					byte type = in.readByte();
+					if (type == PRESENCE) {
+						applyPresence(node, readPresence());
+					} else if (type == FORWARD) {
+						readForward();
+					} else if (type == CHANGE) {
+						readChange();
+					} else {
+						throw new IOException("Unknown cluster frame " + type);
+					}
+				}
+			} catch (IOException e) {
+				if (running) {
+					LOGGER.log(Level.INFO, "Lost cluster node " + node + ": " + e);
+				}
+			} finally {
+				close();
+			}
+		}
+
+		/**
+		 * Make this the connection to its node, unless a connection dialed by
+		 * the node whose id sorts first is already kept.
+		 *
+		 * @return False if this connection is not kept.
+		 */
+		private boolean register() {
+			if (address != null) {
+				dialed.put(address, node);
+			}
+			Peer[] replaced = new Peer[1];
+			Peer kept = links.merge(node, this, (old, peer) -> {
+				if (peer.dialerId().compareTo(old.dialerId()) < 0) {
+					replaced[0] = old;
+					return peer;
+				}
+				return old;
+			});
+			if (replaced[0] != null) {
+				replaced[0].close();
+			}
+			return kept == this;
+		}
+
+		/** Id of the node that dialed this connection. */
+		private String dialerId() {
+			return dialer ? nodeId : node;
+		}
+
+		private Map<String, Boolean> readPresence() throws IOException {
+			int count = in.readInt();
+			Map<String, Boolean> users = new LinkedHashMap<>();
+			for (int i = 0; i < count; i++) {
+				boolean online = in.readBoolean();
+				users.put(in.readUTF(), online);
+			}
+			return users;
+		}
+
+		private void readChange() throws IOException {
+			int kind = in.readUnsignedByte();
+			String name = in.readUTF();
+			if (kind >= Change.values().length) {
+				throw new IOException("Unknown cluster change " + kind);
+			}
+			changes.accept(Change.values()[kind], name);
+		}
+
+		private void readForward() throws IOException {
+			String user = in.readUTF();
+			int length = in.readInt();
+			if ((length <= 0) || (length > ScanNetNB.DEFAULT_MAX_FRAME_SIZE)) {
+				throw new IOException("Cluster frame of " + length + " bytes");
+			}
+			byte[] frame = new byte[length];
+			in.readFully(frame);
+			Message msg = WireProtocol.decode(frame);
+			if (msg != null) {
+				received.increment();
+				delivery.accept(user, msg);
+			}
+		}
+
+		/**
+		 * Close the connection and, if it was the one kept for its node,
+		 * forget the users of that node.
+		 */
+		void close() {
+			closed = true;
+			outbound.clear();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				LOGGER.log(Level.WARN, e.toString(), e);
+			}
+			if ((node != null) && links.remove(node, this)) {
+				forgetNode(node);
+			}
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.northeastern.ccs.im.Group;
+import edu.northeastern.ccs.im.GroupCrud;
+import edu.northeastern.ccs.im.GroupCrudImpl;
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.User;
+
+/**
+ * Handles the requests (DUP) to copy the messages of a group or of some users
+ * to the agency.
+ */
+class DupingHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		InterceptionEngine interception = Prattle.getInterception();
+		Group group = new Group();
+		group.setGroupName(msg.getText());
+		GroupCrud crud = new GroupCrudImpl();
+		if (crud.getGroup(group)) {
+			interception.addGroup(msg.getText(),
+					Prattle.getGroups().getMembers(msg.getText()));
+		}else {
+			List<User> tempUser = client.fetchAllUsers(msg.getText());
+			if(tempUser !=null) {
+				List<String> names = new ArrayList<>();
+				for (User user : tempUser) {
+					names.add(user.getUsername());
+				}
+				interception.addUsers(names);
+			}
+		}
+	}
+}
@@ -0,0 +1,227 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Delivers a message to the members of groups in parallel, so that sending to
+ * a group takes time bounded by the number of cores rather than by the number
+ * of members, and the worker that handled the send is free for its other
+ * clients straight away.
+ *
+ * The members are split between a fixed number of lanes, each a single thread
+ * that delivers its share in turn. Every delivery to a member goes through
+ * that member's lane, whatever the size of the group, so the messages fanned
+ * out to them arrive in the order they were sent, even when they come from
+ * different groups.
+ */
+public class FanOutEngine {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(FanOutEngine.class.getName());
+
+	/** Threads that deliver the messages, each to its own share of users. */
+	private final ExecutorService[] lanes;
+
+	/**
+	 * Number of messages fanned out, and how many of those were split between
+	 * more than one lane.
+	 */
+	private final LongAdder fanOuts;
+	private final LongAdder parallelFanOuts;
+
+	/** Number of recipients the messages were fanned out to. */
+	private final LongAdder recipients;
+
+	/** Nanoseconds from the start to the end of each fan-out, summed. */
+	private final LongAdder nanos;
+
+	/** Most recipients of a single fan-out. */
+	private final LongAccumulator largest;
+
+	/**
+	 * Create a new engine. Its lane threads start the first time they are
+	 * needed and never stop the server from exiting.
+	 *
+	 * @param laneCount Number of threads that deliver in parallel.
+	 */
+	public FanOutEngine(int laneCount) {
+		lanes = new ExecutorService[Math.max(laneCount, 1)];
+		for (int i = 0; i < lanes.length; i++) {
+			String name = "prattle-fanout-" + i;
+			lanes[i] = Executors.newSingleThreadExecutor(task -> {
+				Thread thread = new Thread(task, name);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		fanOuts = new LongAdder();
+		parallelFanOuts = new LongAdder();
+		recipients = new LongAdder();
+		nanos = new LongAdder();
+		largest = new LongAccumulator(Math::max, 0);
+	}
+
+	/**
+	 * Create the engine described by our settings.
+	 *
+	 * @return New engine.
+	 */
+	public static FanOutEngine fromConfig() {
+		return new FanOutEngine(
+				ServerConfig.getInt("prattle.fanout.lanes",
+						Runtime.getRuntime().availableProcessors()));
+	}
+
+	/**
+	 * Deliver something to each of the given users, each on their own lane.
+	 *
+	 * @param users    Names of the users, in lower case.
+	 * @param delivery Delivers to one user; it is called once for each of them,
+	 *                 on the lane of that user.
+	 * @return Future that completes once every user has been delivered to.
+	 */
+	public CompletableFuture<Void> deliver(Collection<String> users,
+			Consumer<String> delivery) {
+		long start = System.nanoTime();
+		int size = users.size();
+		List<List<String>> shares = new ArrayList<>(lanes.length);
+		for (int i = 0; i < lanes.length; i++) {
+			shares.add(new ArrayList<>(size / lanes.length + 1));
+		}
+		for (String user : users) {
+			shares.get(laneOf(user)).add(user);
+		}
+		List<CompletableFuture<Void>> done = new ArrayList<>(lanes.length);
+		for (int i = 0; i < lanes.length; i++) {
+			List<String> share = shares.get(i);
+			if (!share.isEmpty()) {
+				done.add(CompletableFuture.runAsync(() -> {
+					for (String user : share) {
+						deliverTo(user, delivery);
+					}
+				}, lanes[i]));
+			}
+		}
+		if (done.size() > 1) {
+			parallelFanOuts.increment();
+		}
+		return CompletableFuture
+				.allOf(done.toArray(new CompletableFuture<?>[done.size()]))
+				.whenComplete((result, error) -> record(size, start));
+	}
+
+	/**
+	 * Get the number of messages that have been fanned out.
+	 *
+	 * @return Number of fan-outs.
+	 */
+	public long getFanOutCount() {
+		return fanOuts.sum();
+	}
+
+	/**
+	 * Get the number of messages that were fanned out to more than one lane.
+	 *
+	 * @return Number of fan-outs split between the lanes.
+	 */
+	public long getParallelCount() {
+		return parallelFanOuts.sum();
+	}
+
+	/**
+	 * Get the number of recipients of all the fan-outs.
+	 *
+	 * @return Total number of recipients.
+	 */
+	public long getRecipientCount() {
+		return recipients.sum();
+	}
+
+	/**
+	 * Get the most recipients of a single fan-out.
+	 *
+	 * @return Size of the largest fan-out.
+	 */
+	public long getLargest() {
+		return largest.get();
+	}
+
+	/**
+	 * Get the total time taken by the fan-outs that have finished.
+	 *
+	 * @return Nanoseconds from start to finish, summed over the fan-outs.
+	 */
+	public long getTotalNanos() {
+		return nanos.sum();
+	}
+
+	/**
+	 * Describe the fan-outs so far, for logging.
+	 *
+	 * @return One line with their number, size and mean time.
+	 */
+	public String report() {
+		long count = getFanOutCount();
+		StringBuilder report = new StringBuilder("fan-out load: ")
+				.append(count).append(" msgs, ").append(getParallelCount())
+				.append(" parallel");
+		if (count > 0) {
+			report.append(", ").append(getRecipientCount() / count)
+					.append(" recipients mean/").append(getLargest())
+					.append(" max, ")
+					.append(TimeUnit.NANOSECONDS.toMicros(getTotalNanos() / count))
+					.append(" us");
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Get the lane that delivers to the given user.
+	 *
+	 * @param user Name of the user, in lower case.
+	 * @return Index of the user's lane.
+	 */
+	int laneOf(String user) {
+		return (user.hashCode() & Integer.MAX_VALUE) % lanes.length;
+	}
+
+	/**
+	 * Deliver to one user, without letting a failure stop the others.
+	 *
+	 * @param user     Name of the user.
+	 * @param delivery Delivers to the user.
+	 */
+	private static void deliverTo(String user, Consumer<String> delivery) {
+		try {
+			delivery.accept(user);
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+	}
+
+	/**
+	 * Count a fan-out that has finished.
+	 *
+	 * @param size  Number of recipients.
+	 * @param start Time, on the System.nanoTime() clock, at which it started.
+	 */
+	private void record(int size, long start) {
+		fanOuts.increment();
+		recipients.add(size);
+		largest.accumulate(size);
+		nanos.add(System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,98 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.List;
+
+import edu.northeastern.ccs.im.Group;
+import edu.northeastern.ccs.im.GroupCrud;
+import edu.northeastern.ccs.im.GroupCrudImpl;
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.User;
+
+/**
+ * Handles the messages with which a client creates (GAD), updates (GUP) or
+ * deletes (GDL) a group.
+ */
+class GroupChangeHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		if (msg.isGroupAddMessage()) {
+			addGroup(client, msg);
+		} else if (msg.isGroupUpdate()) {
+			updateGroup(client, msg);
+		} else {
+			deleteGroup(client, msg);
+		}
+	}
+
+	private void addGroup(ClientRunnable client, Message msg) {
+		Group group = new Group();
+		group.setGroupName(msg.getText());
+		if (new GroupCrudImpl().getGroup(group)
+				|| msg.getRecipientName() == null
+				|| msg.getRecipientName() == "") {
+
+			Message msg1 = Message
+					.makeGroupNoAcknowledgeMessage(client.getName(),
+							"Group creation unsuccessful");
+
+			Prattle.sendMessage(msg1, client);
+		} else {
+
+			List<User> userList = client.fetchAllUsers(
+					msg.getRecipientName());
+			group.setUsers(userList);
+			GroupCrud crud = new GroupCrudImpl();
+			crud.addGroup(group);
+			Prattle.getGroups().groupCreated(group.getGroupName(), userList);
+			Prattle.publishChange(ClusterLink.Change.GROUP, group.getGroupName());
+
+			Message msg1 = Message.makeGroupAcknowledgeMessage(
+					client.getName(), "Group creation successful");
+
+			Prattle.sendMessage(msg1, client);
+		}
+	}
+
+	private void deleteGroup(ClientRunnable client, Message msg) {
+		Group group = new Group();
+		group.setGroupName(msg.getText());
+		if (new GroupCrudImpl().getGroup(group)) {
+			GroupCrud crud = new GroupCrudImpl();
+			crud.deleteGroup(group);
+			Prattle.getGroups().groupDeleted(group.getGroupName());
+			Prattle.publishChange(ClusterLink.Change.GROUP, group.getGroupName());
+			Message msg1 = Message.makeGroupAcknowledgeMessage(
+					client.getName(), "Group deletion successful");
+
+			Prattle.sendMessage(msg1, client);
+		}else {
+			Message msg1 = Message.makeGroupNoAcknowledgeMessage(
+					client.getName(), "Group deletion unsuccessful");
+
+			Prattle.sendMessage(msg1, client);
+		}
+	}
+
+	private void updateGroup(ClientRunnable client, Message msg) {
+		Group group = new Group();
+		group.setGroupName(msg.getText());
+		if (new GroupCrudImpl().getGroup(group)) {
+			List<User> userList = client.fetchAllUsers(
+					msg.getRecipientName());
+			group.setUsers(userList);
+			GroupCrud crud = new GroupCrudImpl();
+			crud.updateGroup(group);
+			Prattle.getGroups().membersAdded(group.getGroupName(), userList);
+			Prattle.publishChange(ClusterLink.Change.GROUP, group.getGroupName());
+			Message msg1 = Message.makeGroupAcknowledgeMessage(
+					client.getName(), "Group update successful");
+			Prattle.sendMessage(msg1, client);
+		}else {
+			Message msg1 = Message.makeGroupNoAcknowledgeMessage(
+					client.getName(), "Group update unsuccessful");
+
+			Prattle.sendMessage(msg1, client);
+		}
+	}
+}
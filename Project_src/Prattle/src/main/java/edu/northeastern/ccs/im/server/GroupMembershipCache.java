@@ -0,0 +1,192 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.northeastern.ccs.im.Group;
+import edu.northeastern.ccs.im.GroupCrud;
+import edu.northeastern.ccs.im.User;
+
+/**
+ * The members of each group, kept in memory so that sending to a group needs
+ * no trip to the database. A group's members are read from the database the
+ * first time they are needed; after that, the handlers that change groups and
+ * users keep them up to date as they write the change through to the
+ * database.
+ *
+ * Groups and members are kept under their names in lower case, the same form
+ * the {@link PresenceIndex} uses. Each group's members are an immutable set
+ * that is replaced, never changed, so readers need no locking.
+ *
+ * A read that finds no members is not kept, since the database gives the
+ * same answer for a name that is not a group and for a read that failed.
+ * Keeping it would let any name take up memory, and could hide a real group
+ * until the server restarts.
+ */
+public class GroupMembershipCache {
+
+	/** Where the members of groups we have not yet seen are read from. */
+	private final GroupCrud crud;
+
+	/** Members of each group we have seen, keyed by canonical group name. */
+	private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a new, empty cache.
+	 *
+	 * @param crud Source of the members of groups that are not yet cached.
+	 */
+	public GroupMembershipCache(GroupCrud crud) {
+		this.crud = crud;
+	}
+
+	/**
+	 * Get the members of a group, reading them from the database if the group
+	 * has not been cached yet. A change written while the members are being
+	 * read waits for the read to finish, so it is never lost. A group with no
+	 * members is read again each time it is asked for.
+	 *
+	 * @param groupName Name of the group, in any case.
+	 * @return Canonical names of the members; empty if the group has none or
+	 *         does not exist.
+	 */
+	public Set<String> getMembers(String groupName) {
+		if (groupName == null) {
+			return Collections.emptySet();
+		}
+		String key = PresenceIndex.canonical(groupName);
+		Set<String> members = groups.get(key);
+		if (members == null) {
+			members = groups.computeIfAbsent(key, k -> load(groupName));
+		}
+		return (members != null) ? members : Collections.<String>emptySet();
+	}
+
+	/**
+	 * Check if a user belongs to a group.
+	 *
+	 * @param groupName Name of the group, in any case.
+	 * @param user      Name of the user, in any case.
+	 * @return True if the user is a member of the group.
+	 */
+	public boolean isMember(String groupName, String user) {
+		return (user != null)
+				&& getMembers(groupName).contains(PresenceIndex.canonical(user));
+	}
+
+	/**
+	 * Record a group that has just been created.
+	 *
+	 * @param groupName Name of the new group.
+	 * @param users     Its members.
+	 */
+	public void groupCreated(String groupName, Collection<User> users) {
+		groups.put(PresenceIndex.canonical(groupName), namesOf(users, null));
+	}
+
+	/**
+	 * Record users that have just been added to a group. A group that has not
+	 * been cached is left to be read from the database when it is needed.
+	 *
+	 * @param groupName Name of the group.
+	 * @param users     Users added to it.
+	 */
+	public void membersAdded(String groupName, Collection<User> users) {
+		groups.computeIfPresent(PresenceIndex.canonical(groupName),
+				(key, members) -> namesOf(users, members));
+	}
+
+	/**
+	 * Forget a group that has just been deleted.
+	 *
+	 * @param groupName Name of the group.
+	 */
+	public void groupDeleted(String groupName) {
+		groups.remove(PresenceIndex.canonical(groupName));
+	}
+
+	/**
+	 * Forget a group that has changed on another node of the cluster, so its
+	 * members are read again when next needed.
+	 *
+	 * @param groupName Name of the group.
+	 */
+	public void groupChanged(String groupName) {
+		groups.remove(PresenceIndex.canonical(groupName));
+	}
+
+	/**
+	 * Forget every group, so their members are read again when next needed.
+	 */
+	public void clear() {
+		groups.clear();
+	}
+
+	/**
+	 * Take a user whose account has just been deleted out of every group.
+	 *
+	 * @param user Name of the user.
+	 */
+	public void userDeleted(String user) {
+		String name = PresenceIndex.canonical(user);
+		for (String key : groups.keySet()) {
+			groups.computeIfPresent(key, (k, members) -> {
+				if (!members.contains(name)) {
+					return members;
+				}
+				Set<String> left = new HashSet<>(members);
+				left.remove(name);
+				return Collections.unmodifiableSet(left);
+			});
+		}
+	}
+
+	/**
+	 * Get the number of groups whose members are cached.
+	 *
+	 * @return Number of groups cached.
+	 */
+	public int size() {
+		return groups.size();
+	}
+
+	/**
+	 * Read the members of a group from the database.
+	 *
+	 * @param groupName Name of the group.
+	 * @return Canonical names of its members, or null if none were found, so
+	 *         that nothing is cached.
+	 */
+	private Set<String> load(String groupName) {
+		Group group = new Group();
+		group.setGroupName(groupName);
+		Set<String> members = namesOf(crud.getUsers(group), null);
+		return members.isEmpty() ? null : members;
+	}
+
+	/**
+	 * Build the immutable set of members holding the given users, along with
+	 * any existing members.
+	 *
+	 * @param users    Users to include.
+	 * @param existing Members to keep, or null for none.
+	 * @return New set of canonical member names.
+	 */
+	private static Set<String> namesOf(Collection<User> users,
+			Set<String> existing) {
+		Set<String> names = (existing != null) ? new HashSet<>(existing)
+				: new HashSet<>();
+		if (users != null) {
+			for (User user : users) {
+				if (user.getUsername() != null) {
+					names.add(PresenceIndex.canonical(user.getUsername()));
+				}
+			}
+		}
+		return Collections.unmodifiableSet(names);
+	}
+}
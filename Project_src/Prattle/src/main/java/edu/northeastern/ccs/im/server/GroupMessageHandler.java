@@ -0,0 +1,33 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.UserCrud;
+
+/**
+ * Handles the messages (GRP) a client sends to the members of a group.
+ */
+class GroupMessageHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		if (msg.getText() != null && UserCrud.isParentalControl(msg.getName(), msg.getRecipientName())
+						&& Prattle.getParentalControls().checkWords(msg.getText())) {
+			Message msg1 = Message.makeHistoryResponseMessage(msg.getName(),
+							"Watch your language! The last message you sent was sent from or sent to a user that " +
+												"\nhas parental controls on and has been marked as inappropriate.");
+			Prattle.sendMessage(msg1, client);
+		}
+		client.setGroupName(msg.getRecipientName());
+		// Check if the message is legal formatted
+		if (client.messageChecks(msg)) {
+			if (((msg.getText() != null)
+					|| (msg.getRecipientName() != null))
+					&& (msg.getText().compareToIgnoreCase(
+					ServerConstants.BOMB_TEXT) == 0)) {
+				client.handleBomb();
+			} else if (msg.getRecipientName() != null) {
+				Prattle.groupMessage(msg, client.getName(), client.getGroupName());
+			}
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.Message.MessageType;
+
+/**
+ * Table of the handlers for the messages sent by logged in clients, indexed by
+ * message type so that finding the handler for a message takes the same time
+ * whatever its type. The registry also counts the messages of each type and
+ * the time spent handling them.
+ */
+public class HandlerRegistry {
+
+	/** Handler for each message type, indexed by ordinal. */
+	private final MessageHandler[] handlers;
+
+	/** Number of messages handled for each message type. */
+	private final LongAdder[] counts;
+
+	/** Nanoseconds spent handling the messages of each message type. */
+	private final LongAdder[] nanos;
+
+	/**
+	 * Create a new registry without any handlers.
+	 */
+	public HandlerRegistry() {
+		int size = MessageType.values().length;
+		handlers = new MessageHandler[size];
+		counts = new LongAdder[size];
+		nanos = new LongAdder[size];
+		for (int i = 0; i < size; i++) {
+			counts[i] = new LongAdder();
+			nanos[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Create the registry holding the handler for every message a logged in
+	 * client may send.
+	 *
+	 * @return New registry with all of our handlers.
+	 */
+	public static HandlerRegistry createDefault() {
+		HandlerRegistry registry = new HandlerRegistry();
+		registry.register(new BroadcastHandler(), MessageType.BROADCAST);
+		registry.register(new AccountHandler(), MessageType.UPDATE,
+				MessageType.DELETE);
+		registry.register(new PrivateMessageHandler(), MessageType.PRIVATE);
+		registry.register(new RecallHandler(), MessageType.RECALL);
+		registry.register(new GroupChangeHandler(), MessageType.GROUPADD,
+				MessageType.GROUPUPDATE, MessageType.GROUPDELETE);
+		registry.register(new GroupMessageHandler(), MessageType.GROUP);
+		registry.register(new HistoryHandler(), MessageType.HISTORY);
+		registry.register(new DupingHandler(), MessageType.DUPING);
+		registry.register(new SearchHandler(), MessageType.SEARCH);
+		registry.register(new ParentalControlHandler(),
+				MessageType.PARENTAL_CONTROL);
+		registry.register(new QuitHandler(), MessageType.QUIT);
+		registry.register(new ResumeHandler(), MessageType.RESUME);
+		registry.register(new ChannelHandler(), MessageType.CHANNEL,
+				MessageType.SUBSCRIBE, MessageType.UNSUBSCRIBE);
+		return registry;
+	}
+
+	/**
+	 * Use the given handler for messages of the given types, replacing any
+	 * handler they had before.
+	 *
+	 * @param handler Handler for the messages.
+	 * @param types   Types of message it handles.
+	 */
+	public void register(MessageHandler handler, MessageType... types) {
+		for (MessageType type : types) {
+			handlers[type.ordinal()] = handler;
+		}
+	}
+
+	/**
+	 * Get the handler used for messages of the given type.
+	 *
+	 * @param type Type of message.
+	 * @return Handler for the type, or null if it has none.
+	 */
+	public MessageHandler getHandler(MessageType type) {
+		return handlers[type.ordinal()];
+	}
+
+	/**
+	 * Hand a message to the handler for its type, timing how long it takes.
+	 *
+	 * @param client Client that sent the message.
+	 * @param msg    Message that was sent.
+	 * @return True if the message had a handler; false if it was ignored.
+	 */
+	public boolean dispatch(ClientRunnable client, Message msg) {
+		int index = msg.getMsgType().ordinal();
+		MessageHandler handler = handlers[index];
+		if (handler == null) {
+			return false;
+		}
+		long start = System.nanoTime();
+		try {
+			handler.handle(client, msg);
+		} finally {
+			counts[index].increment();
+			nanos[index].add(System.nanoTime() - start);
+		}
+		return true;
+	}
+
+	/**
+	 * Get the number of messages of the given type that have been handled.
+	 *
+	 * @param type Type of message.
+	 * @return Number of messages handled.
+	 */
+	public long getCount(MessageType type) {
+		return counts[type.ordinal()].sum();
+	}
+
+	/**
+	 * Get the total time spent handling messages of the given type.
+	 *
+	 * @param type Type of message.
+	 * @return Nanoseconds spent in the handler.
+	 */
+	public long getTotalNanos(MessageType type) {
+		return nanos[type.ordinal()].sum();
+	}
+
+	/**
+	 * Describe how many messages of each type have been handled and the mean
+	 * time each took, for logging.
+	 *
+	 * @return One line listing every type that has been handled.
+	 */
+	public String report() {
+		StringBuilder report = new StringBuilder("handler load:");
+		for (MessageType type : MessageType.values()) {
+			long count = getCount(type);
+			if (count > 0) {
+				report.append(' ').append(type).append('=').append(count)
+						.append(" msgs/")
+						.append(TimeUnit.NANOSECONDS.toMicros(getTotalNanos(type) / count))
+						.append(" us");
+			}
+		}
+		return report.toString();
+	}
+}
@@ -0,0 +1,94 @@
+package edu.northeastern.ccs.im.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A consistent-hash ring that gives every user a home node of the cluster,
+ * regardless of the case of their name. Each node is placed on the ring at
+ * many points, so the users are spread evenly, and adding or removing a node
+ * moves only the users between its points and the ones before them.
+ *
+ * A ring never changes once it is built, so it may be read from any thread.
+ */
+public class HashRing {
+
+	/** Points each node is given on the ring when no number is chosen. */
+	public static final int DEFAULT_REPLICAS = 160;
+
+	/** FNV-1a offset basis and prime, for 64-bit hashes. */
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** Node owning each point of the ring, by the point's hash. */
+	private final TreeMap<Long, String> points = new TreeMap<>();
+
+	/** Nodes on the ring, in the order they were given. */
+	private final Set<String> nodes;
+
+	/**
+	 * Create a ring holding the given nodes.
+	 *
+	 * @param nodes    Ids of the nodes.
+	 * @param replicas Points each node is given on the ring.
+	 */
+	public HashRing(Collection<String> nodes, int replicas) {
+		this.nodes = Collections.unmodifiableSet(new LinkedHashSet<>(nodes));
+		for (String node : this.nodes) {
+			for (int i = 0; i < Math.max(replicas, 1); i++) {
+				points.put(hash(node + "#" + i), node);
+			}
+		}
+	}
+
+	/**
+	 * Find the home node of a user: the first node at or after the user's
+	 * point, going round the ring.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Id of the node, or null if the ring is empty.
+	 */
+	public String nodeFor(String user) {
+		if (points.isEmpty() || (user == null)) {
+			return null;
+		}
+		Map.Entry<Long, String> point = points.ceilingEntry(
+				hash(PresenceIndex.canonical(user)));
+		return ((point != null) ? point : points.firstEntry()).getValue();
+	}
+
+	/**
+	 * Get the nodes on the ring.
+	 *
+	 * @return Ids of the nodes.
+	 */
+	public Set<String> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Hash a key to its point on the ring. FNV-1a is cheap but leaves similar
+	 * keys close together, so its result is mixed to spread them out.
+	 *
+	 * @param key Key to hash.
+	 * @return Point of the key.
+	 */
+	static long hash(String key) {
+		long h = FNV_OFFSET;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h ^= (b & 0xff);
+			h *= FNV_PRIME;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
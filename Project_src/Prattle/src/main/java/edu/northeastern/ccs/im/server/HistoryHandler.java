@@ -0,0 +1,17 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Handles the requests (HST) for the messages a client exchanged with another
+ * user.
+ */
+class HistoryHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		for (Message retMsg : MessageArchive.getArchivedMessages(msg)) {
+			client.addImmediateResponse(retMsg);
+		}
+	}
+}
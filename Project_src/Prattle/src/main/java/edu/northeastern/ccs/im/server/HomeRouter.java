@@ -0,0 +1,141 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Decides which node of the cluster a user logging in should be connected
+ * to, so that a user's clients, and most of the people they talk to, end up
+ * on the same node and their messages need not cross between nodes.
+ *
+ * Every user has a home node on a {@link HashRing}, and is sent there unless
+ * it is down or carrying more than its share: a home node with more users
+ * than the least loaded node, by more than the slack allowed, is passed over
+ * for the least loaded node. A client is never sent on from a node within
+ * the slack of the least loaded, so it is redirected at most once.
+ */
+public class HomeRouter {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(HomeRouter.class.getName());
+
+	/** Ring giving every user a home node. */
+	private final HashRing ring;
+
+	/** Address, as host:port, at which clients reach each node, by node id. */
+	private final Map<String, String> addresses;
+
+	/** Id of this node. */
+	private final String self;
+
+	/** Number of users connected to a node, or -1 if it cannot be reached. */
+	private final ToIntFunction<String> loads;
+
+	/** Users by which a node may be busier than the least loaded one. */
+	private final int slack;
+
+	/**
+	 * Create a new router.
+	 *
+	 * @param ring      Ring giving every user a home node.
+	 * @param addresses Address, as host:port, at which clients reach each
+	 *                  node, by node id.
+	 * @param self      Id of this node.
+	 * @param loads     Gives the number of users connected to a node, or -1
+	 *                  if it cannot be reached.
+	 * @param slack     Users by which a node may be busier than the least
+	 *                  loaded one before clients are sent elsewhere.
+	 */
+	public HomeRouter(HashRing ring, Map<String, String> addresses, String self,
+			ToIntFunction<String> loads, int slack) {
+		this.ring = ring;
+		this.addresses = new LinkedHashMap<>(addresses);
+		this.self = self;
+		this.loads = loads;
+		this.slack = Math.max(slack, 0);
+	}
+
+	/**
+	 * Create the router described by the server's configuration, unless no
+	 * ring of nodes is configured.
+	 *
+	 * @param cluster Link to the other nodes, which gives their load.
+	 * @return New router, or null if this server is not in a cluster or no
+	 *         ring is configured.
+	 */
+	public static HomeRouter fromConfig(ClusterLink cluster) {
+		String ring = ServerConfig.getString("prattle.cluster.ring", null);
+		if ((cluster == null) || (ring == null)) {
+			return null;
+		}
+		Map<String, String> addresses = new LinkedHashMap<>();
+		for (String entry : ring.split(",")) {
+			String node = entry.trim();
+			int at = node.indexOf('@');
+			if (at > 0 && node.lastIndexOf(':') > at + 1) {
+				addresses.put(node.substring(0, at), node.substring(at + 1));
+			} else if (!node.isEmpty()) {
+				LOGGER.log(Level.WARN, "Ignoring cluster ring node " + node);
+			}
+		}
+		if (!addresses.containsKey(cluster.getNodeId())) {
+			LOGGER.log(Level.WARN, "Node " + cluster.getNodeId()
+					+ " is not on the cluster ring; clients will not be redirected");
+			return null;
+		}
+		return new HomeRouter(
+				new HashRing(addresses.keySet(), ServerConfig.getInt(
+						"prattle.cluster.ringReplicas", HashRing.DEFAULT_REPLICAS)),
+				addresses, cluster.getNodeId(), cluster::getLoad,
+				ServerConfig.getInt("prattle.cluster.loadSlack", 100));
+	}
+
+	/**
+	 * Get the home node of a user.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Id of the node.
+	 */
+	public String homeOf(String user) {
+		return ring.nodeFor(user);
+	}
+
+	/**
+	 * Decide where a user logging in to this node should be connected.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Address, as host:port, of the node the client should log in
+	 *         at instead, or null if it should stay here.
+	 */
+	public String redirectFor(String user) {
+		String home = homeOf(user);
+		if ((home == null) || home.equals(self)) {
+			return null;
+		}
+		String least = self;
+		int leastLoad = loads.applyAsInt(self);
+		for (String node : ring.getNodes()) {
+			int load = loads.applyAsInt(node);
+			if ((load >= 0) && (load < leastLoad)) {
+				least = node;
+				leastLoad = load;
+			}
+		}
+		int homeLoad = loads.applyAsInt(home);
+		String target;
+		if ((homeLoad >= 0) && (homeLoad <= leastLoad + slack)) {
+			target = home;
+		} else if (loads.applyAsInt(self) <= leastLoad + slack) {
+			// The home node is down or too busy, and this one will do.
+			return null;
+		} else {
+			target = least;
+		}
+		return target.equals(self) ? null : addresses.get(target);
+	}
+}
@@ -0,0 +1,250 @@
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * The rules by which the agency is copied the messages of the users and
+ * groups it is duping (DUP), and the sinks those copies go to.
+ *
+ * The rules are sets of user and group names, regardless of case, that any
+ * thread may read while another changes them, so checking a private message
+ * takes two lookups and nothing is built for it. Copies are handed to the
+ * sinks, such as the agency's session or a capture file, on a thread of
+ * their own, so that a slow sink never holds up the message being copied.
+ * At most {@link #DEFAULT_QUEUE_SIZE} copies, or as many as are configured,
+ * wait for that thread; copies beyond those are dropped and counted rather
+ * than left to fill memory. While nothing is being duped, checking a message
+ * costs a single test.
+ */
+public class InterceptionEngine {
+
+	/** Most copies waiting to be handed to the sinks, unless configured. */
+	public static final int DEFAULT_QUEUE_SIZE = 10000;
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(InterceptionEngine.class.getName());
+
+	/** Users being duped, by canonical user name. */
+	private final Set<String> users = ConcurrentHashMap.newKeySet();
+
+	/** Groups being duped, by canonical group name. */
+	private final Set<String> groups = ConcurrentHashMap.newKeySet();
+
+	/** Where the copies go. */
+	private final List<Consumer<Message>> sinks;
+
+	/** Thread that hands the copies to the sinks, in order. */
+	private final ExecutorService delivery;
+
+	/** Number of messages copied. */
+	private final LongAdder intercepted = new LongAdder();
+
+	/** Number of copies dropped because too many were waiting. */
+	private final LongAdder dropped = new LongAdder();
+
+	/**
+	 * Create a new engine with no rules, holding up to
+	 * {@link #DEFAULT_QUEUE_SIZE} waiting copies.
+	 *
+	 * @param sinks Where the copies go.
+	 */
+	public InterceptionEngine(List<Consumer<Message>> sinks) {
+		this(sinks, DEFAULT_QUEUE_SIZE);
+	}
+
+	/**
+	 * Create a new engine with no rules. Its thread starts the first time a
+	 * message is copied and never stops the server from exiting.
+	 *
+	 * @param sinks     Where the copies go.
+	 * @param queueSize Most copies waiting to be handed to the sinks.
+	 */
+	public InterceptionEngine(List<Consumer<Message>> sinks, int queueSize) {
+		this.sinks = new ArrayList<>(sinks);
+		delivery = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)),
+				task -> {
+					Thread thread = new Thread(task, "prattle-intercept");
+					thread.setDaemon(true);
+					return thread;
+				},
+				(task, executor) -> dropped.increment());
+	}
+
+	/**
+	 * Create the engine described by the server's configuration, copying to
+	 * the agency and, if one is configured, to a capture file.
+	 *
+	 * @param agency Delivers a copy to the agency's session.
+	 * @return New engine.
+	 */
+	public static InterceptionEngine fromConfig(Consumer<Message> agency) {
+		List<Consumer<Message>> sinks = new ArrayList<>();
+		sinks.add(agency);
+		String path = ServerConfig.getString("prattle.intercept.captureFile", null);
+		if (path != null) {
+			try {
+				sinks.add(new CaptureFile(path));
+			} catch (IOException e) {
+				LOGGER.log(Level.WARN, e.toString(), e);
+			}
+		}
+		return new InterceptionEngine(sinks, ServerConfig.getInt(
+				"prattle.intercept.queueSize", DEFAULT_QUEUE_SIZE));
+	}
+
+	/**
+	 * Start duping the given users.
+	 *
+	 * @param names Names of the users.
+	 */
+	public void addUsers(Collection<String> names) {
+		for (String name : names) {
+			if (name != null) {
+				users.add(PresenceIndex.canonical(name));
+			}
+		}
+	}
+
+	/**
+	 * Start duping a group and, with it, each of its members.
+	 *
+	 * @param group   Name of the group.
+	 * @param members Names of the members of the group.
+	 */
+	public void addGroup(String group, Collection<String> members) {
+		addUsers(members);
+		groups.add(PresenceIndex.canonical(group));
+	}
+
+	/**
+	 * Stop duping everyone.
+	 */
+	public void clear() {
+		users.clear();
+		groups.clear();
+	}
+
+	/**
+	 * Check if nothing is being duped.
+	 *
+	 * @return True if there are no rules.
+	 */
+	public boolean isEmpty() {
+		return users.isEmpty() && groups.isEmpty();
+	}
+
+	/**
+	 * Check if a private message is to be copied: it is if its sender or
+	 * recipient is being duped.
+	 *
+	 * @param sender    Name of the sender.
+	 * @param recipient Name of the recipient.
+	 * @return True if the message is to be copied.
+	 */
+	public boolean matchesPrivate(String sender, String recipient) {
+		if (users.isEmpty()) {
+			return false;
+		}
+		return ((sender != null) && users.contains(PresenceIndex.canonical(sender)))
+				|| ((recipient != null)
+						&& users.contains(PresenceIndex.canonical(recipient)));
+	}
+
+	/**
+	 * Check if a group message is to be copied: it is if the group, or any
+	 * of its members, is being duped.
+	 *
+	 * @param group   Name of the group.
+	 * @param members Canonical names of the members of the group.
+	 * @return True if the message is to be copied.
+	 */
+	public boolean matchesGroup(String group, Collection<String> members) {
+		if (isEmpty()) {
+			return false;
+		}
+		if ((group != null) && groups.contains(PresenceIndex.canonical(group))) {
+			return true;
+		}
+		// Look the smaller of the two up in the larger.
+		if (members.size() <= users.size()) {
+			for (String member : members) {
+				if (users.contains(member)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for (String user : users) {
+			if (members.contains(user)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Copy a message to every sink, off the calling thread. If too many
+	 * copies are already waiting, the copy is dropped.
+	 *
+	 * @param msg Message to copy.
+	 */
+	public void intercept(Message msg) {
+		intercepted.increment();
+		delivery.execute(() -> {
+			for (Consumer<Message> sink : sinks) {
+				try {
+					sink.accept(msg);
+				} catch (RuntimeException e) {
+					LOGGER.log(Level.WARN, e.toString(), e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Get the number of messages copied.
+	 *
+	 * @return Messages intercepted.
+	 */
+	public long getIntercepted() {
+		return intercepted.sum();
+	}
+
+	/**
+	 * Get the number of copies dropped because too many were waiting.
+	 *
+	 * @return Copies dropped.
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * Describe the copying done so far, for the server's load report.
+	 *
+	 * @return One line summing up the messages copied and dropped.
+	 */
+	public String report() {
+		return "interception: " + users.size() + " users, " + groups.size()
+				+ " groups duped, " + getIntercepted() + " msgs copied, "
+				+ getDropped() + " dropped";
+	}
+}
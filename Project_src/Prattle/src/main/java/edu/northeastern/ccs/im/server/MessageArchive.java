@@ -2,11 +2,7 @@ package edu.northeastern.ccs.im.server;
 
 
 import edu.northeastern.ccs.im.Database;
-import edu.northeastern.ccs.im.Group;
-import edu.northeastern.ccs.im.GroupCrud;
-import edu.northeastern.ccs.im.GroupCrudImpl;
 import edu.northeastern.ccs.im.Message;
-import edu.northeastern.ccs.im.User;
 import edu.northeastern.ccs.im.UserCrud;
 
 import java.sql.Connection;
@@ -131,7 +127,7 @@ public class MessageArchive {
             pstmt.setString(1, m.getName());
             pstmt.setString(2, m.getRecipientName());
             pstmt.setString(3, m.getRecipientName());
-            pstmt.setString(4, m.toString().substring(0,3));
+            pstmt.setString(4, m.getHandle());
             pstmt.setString(5, m.getText());
             pstmt.setBoolean(6, receivedStatus);
             pstmt.setBoolean(7, flagged);
@@ -501,16 +497,7 @@ public class MessageArchive {
    * @return true if the sender is a member, false otherwise.
    */
   private static boolean isMember(Message sm) {
-    Group group = new Group();
-    group.setGroupName(sm.getRecipientName());
-    GroupCrud crud = new GroupCrudImpl();
-    List<User> users = crud.getUsers(group);
-    for (User x : users) {
-      if (x.getUsername().equalsIgnoreCase(sm.getName())) {
-        return true;
-      }
-    }
-    return false;
+    return Prattle.getGroups().isMember(sm.getRecipientName(), sm.getName());
   }
 
   /**
@@ -0,0 +1,19 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Handles the messages of one or more types sent by a client once it has
+ * logged in. Handlers are registered with a {@link HandlerRegistry}, which
+ * picks the handler for a message by its type alone.
+ */
+public interface MessageHandler {
+
+	/**
+	 * Act on a message sent by a client.
+	 *
+	 * @param client Client that sent the message.
+	 * @param msg    Message that was sent.
+	 */
+	void handle(ClientRunnable client, Message msg);
+}
@@ -0,0 +1,27 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.User;
+
+/**
+ * Handles the messages (PRC) with which a client turns parental controls on
+ * or off.
+ */
+class ParentalControlHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		User user = new User();
+		user.setUsername(client.getName());
+		boolean status = client.getUserCrud().changeParentalControl(user, msg.getText());
+		Message msg1;
+		if (status) {
+			Prattle.publishChange(ClusterLink.Change.ATTRIBUTES, client.getName());
+			msg1 = Message.makeHistoryResponseMessage(client.getName(),
+							String.format("Parental controls have been changed to: %s", msg.getText()));
+		} else {
+			msg1 = Message.makeHistoryResponseMessage(client.getName(), "Parental controls could not be changed. Enter \"PRC <on or off>\" again");
+		}
+		Prattle.sendMessage(msg1, client);
+	}
+}
@@ -8,10 +8,9 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
@@ -19,11 +18,9 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.Level;
 
 import edu.northeastern.ccs.im.ParentalControls;
-import edu.northeastern.ccs.im.Group;
-import edu.northeastern.ccs.im.GroupCrud;
 import edu.northeastern.ccs.im.GroupCrudImpl;
 import edu.northeastern.ccs.im.Message;
-import edu.northeastern.ccs.im.User;
+import edu.northeastern.ccs.im.UserAttributeCache;
 import edu.northeastern.ccs.im.UserCrud;
 import edu.northeastern.ccs.im.UserCrudImpl;
 
@@ -47,10 +44,22 @@ public abstract class Prattle {
 	private static final int DELAY_IN_MS = 50;
 
 	/** Number of threads available in our thread pool. */
-	private static final int THREAD_POOL_SIZE = 20;
+	private static final int THREAD_POOL_SIZE = ServerConfig
+			.getInt("prattle.workers", 20);
 
-	/** Delay between times the thread pool runs the client check. */
-	private static final int CLIENT_CHECK_DELAY = 200;
+	/** Number of reactors that share the client connections. */
+	private static final int REACTOR_COUNT = ServerConfig.getInt(
+			"prattle.reactors", Runtime.getRuntime().availableProcessors());
+
+	/** Seconds between reports of the load on each reactor. */
+	private static final int LOAD_REPORT_SECONDS = ServerConfig
+			.getInt("prattle.reactor.reportSeconds", 60);
+
+	/** Seconds between sweeps for rate limits that are no longer needed. */
+	private static final int RATE_LIMIT_EVICT_SECONDS = 60;
+
+	/** Seconds between sweeps for resumable sessions that have expired. */
+	private static final int SESSION_EVICT_SECONDS = 30;
 
 	private static ParentalControls parentalControls = new ParentalControls();
 
@@ -60,45 +69,125 @@ public abstract class Prattle {
 	private static final Logger LOGGER = LogManager
 			.getLogger(Prattle.class.getName());
 
-	/** Map of socket ip adresses to user names */
-	private static Map<String, String> user_ip_map;
+	/** Where each logged in user is connected from, and their traffic. */
+	private static SessionRegistry sessions;
+
+	/** Number of the busiest sessions listed in each load report. */
+	private static final int TOP_TALKERS_REPORTED = 5;
 
 	/** Collection of threads that are currently being used. */
-	private static ConcurrentLinkedQueue<ClientRunnable> active;
+	private static Set<ClientRunnable> active;
+
+	/** Clients that have logged in, by user name. */
+	private static PresenceIndex presence;
+
+	/** Members of each group, so that group sends need not read them. */
+	private static GroupMembershipCache groups;
+
+	/** Every registered user, so that offline sends need not read them all. */
+	private static UserDirectory users;
+
+	/** Subscribers of each named broadcast channel. */
+	private static ChannelIndex channels;
+
+	/** Delivers the messages of large groups in parallel. */
+	private static FanOutEngine fanOut;
+
+	/** Copies the messages the agency is duping to it. */
+	private static InterceptionEngine interception;
+
+	/** Name of the agent that is sent copies of the messages it is duping. */
+	private static final String AGENCY_AGENT_NAME = "agency";
+
+	/** Reactors that own the channels of our clients. */
+	private static ReactorGroup reactors;
+
+	/** Link to the other nodes of the cluster, or null if we are alone. */
+	private static ClusterLink cluster;
+
+	/** Sends users logging in to their home node, or null if we do not. */
+	private static HomeRouter router;
 
 	/** All of the static initialization occurs in this "method" */
 	static {
-		// Create the new queue of active threads.
-		active = new ConcurrentLinkedQueue<>();
-		user_ip_map = new HashMap<>();
+		// Create the new set of active threads.
+		active = ConcurrentHashMap.newKeySet();
+		presence = new PresenceIndex();
+		groups = new GroupMembershipCache(new GroupCrudImpl());
+		users = new UserDirectory(new UserCrudImpl());
+		fanOut = FanOutEngine.fromConfig();
+		channels = new ChannelIndex();
+		interception = InterceptionEngine.fromConfig(
+				message -> enqueueToUser(message, AGENCY_AGENT_NAME));
+		sessions = new SessionRegistry();
 	}
 
 	/** Used for testing, will cause break out of main run loop if >= 0 */
 	private static int breakLoopAfter = -1;
 
 	/**
-	 * Add a user/ip address pair to the server map (used in message archival)
-	 * @param username
-	 * @param ipAddress
+	 * Get the sessions of the users who are logged in, with where they are
+	 * connected from and how much they have sent and been sent
+	 * @return session of each logged in user
 	 */
-	public static void addIPtoMap(String username, String ipAddress){
-		if (user_ip_map.containsKey(username)){
-			user_ip_map.replace(username, ipAddress);
-		}else{
-			user_ip_map.put(username, ipAddress);
-		}
+	public static SessionRegistry getSessionRegistry() {
+		return sessions;
 	}
 
 	/**
-	 * Remove a user from the server ip map
-	 * @param username
+	 * Record that a client has logged in, so that the messages for its user
+	 * are routed to it
+	 * @param client the client that has logged in
 	 */
-	public static void removeFromIPMap(String username){
-		if(user_ip_map.containsKey(username)){
-			user_ip_map.remove(username);
+	public static void addOnline(ClientRunnable client) {
+		presence.add(client.getName(), client);
+		if (cluster != null) {
+			cluster.presenceChanged(client.getName());
 		}
 	}
 
+	/**
+	 * Get the index of the clients that are logged in
+	 * @return clients that are logged in, by user name
+	 */
+	public static PresenceIndex getPresence() {
+		return presence;
+	}
+
+	/**
+	 * Get the cached members of each group, which the handlers that change
+	 * groups and users keep up to date
+	 * @return members of each group
+	 */
+	public static GroupMembershipCache getGroups() {
+		return groups;
+	}
+
+	/**
+	 * Get the directory of registered users, which registration and account
+	 * deletion keep up to date
+	 * @return every registered user
+	 */
+	public static UserDirectory getUsers() {
+		return users;
+	}
+
+	/**
+	 * Get the subscribers of each broadcast channel
+	 * @return subscribers by channel
+	 */
+	public static ChannelIndex getChannels() {
+		return channels;
+	}
+
+	/**
+	 * Get the engine that delivers the messages of large groups
+	 * @return engine used for group sends
+	 */
+	public static FanOutEngine getFanOut() {
+		return fanOut;
+	}
+
 	/**
 	 * Broadcast a given message to all the other IM clients currently on the
 	 * system. This message _will_ be sent to the client who originally sent it.
@@ -118,6 +207,26 @@ public abstract class Prattle {
 		}
 	}
 
+	/**
+	 * Broadcast a given message to the clients subscribed to a channel. A
+	 * message on the global channel goes to everyone, as a plain broadcast.
+	 * 
+	 * @param message Message that the client sent.
+	 * @param channel Name of the channel it was sent on.
+	 */
+	public static void channelMessage(Message message, String channel) {
+		if (ChannelIndex.isGlobal(channel)) {
+			broadcastMessage(Message.makeBroadcastMessage(message.getName(),
+					message.getText()));
+			return;
+		}
+		for (ClientRunnable tt : channels.getSubscribers(channel)) {
+			if (tt.isInitialized()) {
+				tt.enqueueMessage(message);
+			}
+		}
+	}
+
 	/**
 	 * @param message
 	 * @param tt
@@ -135,28 +244,41 @@ public abstract class Prattle {
 	 * @param recipientName the name of the recipient the message has to be sent
 	 */
 	public static void directMessage(Message message, String recipientName, boolean checkUser) {
-		UserCrud uc = new UserCrudImpl();
+		directMessage(message, recipientName, checkUser, true);
+	}
+
+	/**
+	 * sends the message to active client threads with a particular user name,
+	 * or to the node of the cluster they are connected to
+	 * 
+	 * @param message       the message to be sent
+	 * @param recipientName the name of the recipient the message has to be sent
+	 * @param forward       false if the message must not leave this node
+	 */
+	private static void directMessage(Message message, String recipientName,
+			boolean checkUser, boolean forward) {
 		int flag = 0;
-		// Loop through all of our active threads
-		for (ClientRunnable tt : active) {
-			// Do not send the message to any clients that are not ready to
-			// receive it.
-			if ((tt.isInitialized()
-					&& tt.getName().equalsIgnoreCase(recipientName))
-				|| (tt.isInitialized()
-						&& tt.getName().equalsIgnoreCase("agency")
-						&& checkUser)){
-				flag = 1;
-				tt.enqueueMessage(message);
-			}
+		// Look up the clients of the recipient (and of the agency, when it is
+		// duping the sender) rather than scanning every client.
+		if (offerToUser(message, recipientName)) {
+			flag = 1;
+		}
+		if (checkUser && !AGENCY_AGENT_NAME.equalsIgnoreCase(recipientName)) {
+			interception.intercept(message);
+		}
+		// A recipient connected to another node is not offline.
+		if (flag == 0 && forward && cluster != null
+				&& cluster.forward(recipientName, message)) {
+			flag = 1;
 		}
 		// also archive this direct message (only once, not for each thread)
 		if(flag == 1)
-			MessageArchive.archiveMessage(message, true, user_ip_map.get(message.getName()), user_ip_map.get(recipientName));
+			MessageArchive.archiveMessage(message, true, sessions.getAddress(message.getName()), sessions.getAddress(recipientName));
 		if(flag == 0) {
-			for(String username: uc.getAllUsernames())
-				if(username.equalsIgnoreCase(recipientName))
-					MessageArchive.archiveMessage(message, false, user_ip_map.get(message.getName()), "");
+			// Also hold it in case the recipient resumes a dropped session.
+			ClientRunnable.getSessions().recordOffline(recipientName, message);
+			if(users.exists(recipientName))
+				MessageArchive.archiveMessage(message, false, sessions.getAddress(message.getName()), "");
 		}
 	}
 	
@@ -167,15 +289,47 @@ public abstract class Prattle {
 	 * @param recipientName the name of the recipient the message has to be sent
 	 */
 	public static void sendQueuedMessage(Message message, String recipientName) {
-		// Loop through all of our active threads
-		for (ClientRunnable tt : active) {
+		enqueueToUser(message, recipientName);
+	}
+
+	/**
+	 * Queue a message for every client logged in as the given user.
+	 * 
+	 * @param message  the message to be sent
+	 * @param userName the name of the user to send it to
+	 * @return true if the user had a client ready to receive it
+	 */
+	private static boolean enqueueToUser(Message message, String userName) {
+		boolean sent = false;
+		for (ClientRunnable tt : presence.get(userName)) {
 			// Do not send the message to any clients that are not ready to
 			// receive it.
-			if (tt.isInitialized()
-					&& tt.getName().equalsIgnoreCase(recipientName)) {
+			if (tt.isInitialized()) {
 				tt.enqueueMessage(message);
+				sent = true;
+			}
+		}
+		return sent;
+	}
+
+	/**
+	 * Queue a message for every client logged in as the given user that has
+	 * room for it, without spilling it for those that do not. Used by callers
+	 * that archive the message themselves, so it is archived once: as
+	 * delivered if a client took it, otherwise as queued for the next login.
+	 * 
+	 * @param message  the message to be sent
+	 * @param userName the name of the user to send it to
+	 * @return true if a client of the user queued the message
+	 */
+	private static boolean offerToUser(Message message, String userName) {
+		boolean sent = false;
+		for (ClientRunnable tt : presence.get(userName)) {
+			if (tt.isInitialized() && tt.offerMessage(message)) {
+				sent = true;
 			}
 		}
+		return sent;
 	}
 
 	/**
@@ -184,114 +338,150 @@ public abstract class Prattle {
 	 * @param message   the message to be sent
 	 * @param groupName the name of the group the message has to be sent
 	 */
-	public static void groupMessage(Message message, String sender, String groupName,
-				List<String> dupGroup,List<User> dupUser) {
-		List<String> dupName = new ArrayList<>();
-		
-		if(dupGroup!=null && 
-				dupGroup.isEmpty() && 
-				dupUser!=null &&
-				!dupUser.isEmpty()) {
-			for(User users : dupUser) {
-				dupName.add(users.getUsername().toLowerCase());
-			}
+	public static void groupMessage(Message message, String sender, String groupName) {
+		Set<String> name = groups.getMembers(groupName);
+
+		// The agency also gets the messages of groups it is duping, unless
+		// it is a member and gets them anyway.
+		if (!name.contains(AGENCY_AGENT_NAME)
+				&& interception.matchesGroup(groupName, name)) {
+			interception.intercept(message);
 		}
 
-		Group group = new Group();
-		group.setGroupName(groupName);
-		GroupCrud crud = new GroupCrudImpl();
-		List<User> users = crud.getUsers(group);
-		List<String> name = new ArrayList<>();
-		List<String> activeUsers = new ArrayList<>();
+		// Each member is delivered to on their own lane, off this thread.
+		String filteredContent = parentalControls.replaceWords(message.getText());
+		fanOut.deliver(name,
+				member -> deliverToMember(message, sender, member, filteredContent));
+
+		// also archive this group message (only once, not for each thread)
+		MessageArchive.archiveMessage(message, true);
+	}
+
+	/**
+	 * Deliver a group message to one member: to their clients if they are
+	 * online, otherwise as a private message held for their next login
+	 * @param message the group message
+	 * @param sender name of the user who sent it
+	 * @param member name of the member to deliver it to
+	 * @param filteredContent text of the message with inappropriate words
+	 *        replaced, for members under parental controls
+	 */
+	private static void deliverToMember(Message message, String sender,
+			String member, String filteredContent) {
+		if (!offerToUser(message, member)
+				&& (cluster == null || !cluster.forward(member, message))) {
+			String text = UserCrud.isParentalControl(sender, member)
+					? filteredContent : message.getText();
+			directMessage(Message.makePrivateMessage(sender, member, text),
+					member, false, false);
+		}
+	}
+
+	/**
+	 * Deliver a message that another node of the cluster forwarded for a
+	 * user connected here. If the user has left in the meantime, it is held
+	 * as a private message for their next login, and not forwarded again.
+	 * @param userName name of the user the message is for
+	 * @param message the forwarded message
+	 */
+	static void deliverForwarded(String userName, Message message) {
+		if (!offerToUser(message, userName)) {
+			Message held = message.isPrivateMessage() ? message
+					: Message.makePrivateMessage(message.getName(), userName,
+							message.getText());
+			directMessage(held, userName, false, false);
+		}
+	}
+
+	/**
+	 * Tell the other nodes of the cluster, if there are any, that a user,
+	 * group or user's attributes have changed here, so that they stop
+	 * trusting what they have cached
+	 * @param change kind of thing that changed
+	 * @param name name of the user or group that changed
+	 */
+	public static void publishChange(ClusterLink.Change change, String name) {
+		if (cluster != null) {
+			cluster.publish(change, name);
+		}
+	}
 
-		if (users != null) {
-			for(User user : users) {
-				name.add(user.getUsername().toLowerCase());
+	/**
+	 * Forget what is cached for something another node of the cluster has
+	 * changed, so it is read from the database again
+	 * @param change kind of thing that changed
+	 * @param name name of the user or group that changed, or null if
+	 *        anything of that kind may have changed
+	 */
+	static void applyChange(ClusterLink.Change change, String name) {
+		switch (change) {
+		case USER:
+			if (name == null) {
+				users.reload();
+			} else if (users.refresh(name) < 0) {
+				groups.userDeleted(name);
 			}
-			for (ClientRunnable tt : active) {
-				// Do not send the message to any clients that are not ready to
-				// receive it.
-				if ((tt.isInitialized() && name.contains(tt.getName()))
-						|| (dupGroup!=null &&
-							dupName!=null &&
-							tt.isInitialized()
-								&& tt.getName().equalsIgnoreCase("agency")
-								&& (dupGroup.contains(groupName)
-										|| 
-									checkUser(dupName,name)))) {
-					activeUsers.add(tt.getName());
-					tt.enqueueMessage(message);
-				}
+			break;
+		case GROUP:
+			if (name == null) {
+				groups.clear();
+			} else {
+				groups.groupChanged(name);
 			}
-			// also archive this group message (only once, not for each thread)
-			MessageArchive.archiveMessage(message, true);
-
-
-			Message grpToPvtMsg;
-			String filteredContent = parentalControls.replaceWords(message.getText());
-
-			for(String s: name) {
-				if(!activeUsers.contains(s)) {
-					if (UserCrud.isParentalControl(sender, s)) {
-						grpToPvtMsg = Message.makePrivateMessage(sender, s,
-										filteredContent);
-						directMessage(grpToPvtMsg, s, false);
-					} else {
-						grpToPvtMsg = Message.makePrivateMessage(sender, s,
-										getMessage(message.toString()));
-						directMessage(grpToPvtMsg, s, false);
-					}
-				}
+			break;
+		case ATTRIBUTES:
+		default:
+			if (name == null) {
+				UserAttributeCache.getShared().clear();
+			} else {
+				UserAttributeCache.getShared().forget(name);
 			}
+			break;
 		}
 	}
-	
+
 	/**
-	 * Check if user is part of duping user list
-	 * @param dupUser
-	 * @param grpUser
-	 * @return true if part of duping user
+	 * Decide whether a user logging in here should be sent to another node
+	 * of the cluster
+	 * @param userName name of the user logging in
+	 * @return address, as host:port, of the node to log in at instead, or
+	 *         null if the user should stay here
 	 */
-	public static boolean checkUser(List<String> dupUser,List<String> grpUser) {
-		
-		for(String groupUser : grpUser) {
-			for(String dupliUser : dupUser) {
-				if(groupUser.equals(dupliUser)) {
-					return true;
-				}
-			}
-		}
-		
-		return false;
-		
+	public static String redirectFor(String userName) {
+		return (router != null) ? router.redirectFor(userName) : null;
 	}
-	
-	private static String getMessage(String line) {
-		String lineClone = line;
-		String[] arr = lineClone.split(" ");
-		String message = "";
-		for(int i = 6; i < arr.length; i++)
-			message = message + arr[i] + " ";
-		
-		return message;
+
+	/**
+	 * Get the link to the other nodes of the cluster
+	 * @return link to the cluster, or null if this server is not in one
+	 */
+	public static ClusterLink getCluster() {
+		return cluster;
 	}
 
+	/**
+	 * Get the rules by which the agency is copied the messages it is duping
+	 * @return interception rules and sinks
+	 */
+	public static InterceptionEngine getInterception() {
+		return interception;
+	}
+	
 	/**
 	 * Start up the threaded talk server. This class accepts incoming
 	 * connections on a specific port specified on the command-line. Whenever it
-	 * receives a new connection, it will spawn a thread to perform all of the
-	 * I/O with that client. This class relies on the server not receiving too
-	 * many requests -- it does not include any code to limit the number of
-	 * extant threads.
+	 * receives a new connection, it hands the channel to one of the client
+	 * reactors, which runs the client on our pool of threads only when its
+	 * channel is ready or a message is waiting to be sent to it.
 	 * 
 	 * @param args String arguments to the server from the command line. At
 	 *             present, none.
 	 * @throws IOException Exception thrown if the server cannot connect to the
 	 *                     port to which it is supposed to listen.
 	 */
-	@SuppressWarnings("unchecked")
 	public static void main(String[] args) throws IOException {
 		ServerSocketChannel serverSocket = null;
+		ScheduledExecutorService threadPool = null;
 		try {
 			// Connect to the socket on the appropriate port to which this
 			// server connects.
@@ -303,9 +493,50 @@ public abstract class Prattle {
 			Selector selector = SelectorProvider.provider().openSelector();
 			// Register to receive any incoming connection messages.
 			serverSocket.register(selector, SelectionKey.OP_ACCEPT);
+			// Read the registered users before anyone can send to them.
+			users.load();
+			// Join the other nodes of the cluster, if there are any.
+			cluster = ClusterLink.fromConfig(Prattle::deliverForwarded,
+					user -> presence.isOnline(user));
+			if (cluster != null) {
+				cluster.setChangeListener(Prattle::applyChange);
+				cluster.start();
+			}
+			router = HomeRouter.fromConfig(cluster);
 			// Create our pool of threads on which we will execute.
-			ScheduledExecutorService threadPool = Executors
-					.newScheduledThreadPool(THREAD_POOL_SIZE);
+			threadPool = Executors.newScheduledThreadPool(THREAD_POOL_SIZE);
+			// Start the reactors that watch the channels of our clients.
+			reactors = new ReactorGroup(REACTOR_COUNT,
+					ReactorGroup.Assignment.fromName(ServerConfig.getString(
+							"prattle.reactor.assignment", "least-loaded")),
+					threadPool);
+			reactors.start();
+			if (LOAD_REPORT_SECONDS > 0) {
+				ReactorGroup group = reactors;
+				threadPool.scheduleAtFixedRate(
+						() -> {
+							LOGGER.log(Level.INFO, group.loadReport());
+							LOGGER.log(Level.INFO, ClientRunnable.getHandlers().report());
+							LOGGER.log(Level.INFO, fanOut.report());
+							LOGGER.log(Level.INFO, sessions.report(TOP_TALKERS_REPORTED));
+							LOGGER.log(Level.INFO, interception.report());
+							if (cluster != null) {
+								LOGGER.log(Level.INFO, cluster.report());
+							}
+						},
+						LOAD_REPORT_SECONDS, LOAD_REPORT_SECONDS,
+						TimeUnit.SECONDS);
+			}
+			// Forget the rate limits of clients that have gone quiet.
+			threadPool.scheduleAtFixedRate(
+					() -> ClientRunnable.getRateLimiter().evictIdle(),
+					RATE_LIMIT_EVICT_SECONDS, RATE_LIMIT_EVICT_SECONDS,
+					TimeUnit.SECONDS);
+			// Forget the sessions of users who did not come back in time.
+			threadPool.scheduleAtFixedRate(
+					() -> ClientRunnable.getSessions().evictExpired(),
+					SESSION_EVICT_SECONDS, SESSION_EVICT_SECONDS,
+					TimeUnit.SECONDS);
 			// Listen on this port until ...
 			boolean done = false;
 			int loopIts = 0;
@@ -350,15 +581,9 @@ public abstract class Prattle {
 								ClientRunnable tt = new ClientRunnable(socket);
 								// Add the thread to the queue of active threads
 								active.add(tt);
-								// Have the client executed by our pool of
-								// threads.
-								@SuppressWarnings("rawtypes")
-								ScheduledFuture clientFuture = threadPool
-										.scheduleAtFixedRate(tt,
-												CLIENT_CHECK_DELAY,
-												CLIENT_CHECK_DELAY,
-												TimeUnit.MILLISECONDS);
-								tt.setFuture(clientFuture);
+								// Have a reactor run the client whenever it
+								// has something to do.
+								reactors.register(tt);
 							}
 						} catch (AssertionError ae) {
 							LOGGER.log(Level.WARN, ae.toString(), ae);
@@ -372,10 +597,28 @@ public abstract class Prattle {
 		} catch (Exception e) {
 			LOGGER.log(Level.WARN, e.toString(), e);
 		} finally {
+			if (cluster != null) {
+				cluster.stop();
+			}
+			if (reactors != null) {
+				reactors.shutdown();
+			}
+			if (threadPool != null) {
+				threadPool.shutdown();
+			}
 			serverSocket.close();
 		}
 	}
 
+	/**
+	 * Get the reactors that own the channels of our clients.
+	 *
+	 * @return Group of reactors, or null if the server is not running.
+	 */
+	public static ReactorGroup getReactors() {
+		return reactors;
+	}
+
 	/**
 	 * Returns this ParentalControls instance.
 	 *
@@ -394,7 +637,15 @@ public abstract class Prattle {
 	public static void removeClient(ClientRunnable dead) {
 		// Test and see if the thread was in our list of active clients so that
 		// we can remove it.
-		removeFromIPMap(dead.getName());
+		if (dead.getName() != null) {
+			sessions.close(dead.getName(), dead.getSessionStats());
+			presence.remove(dead.getName(), dead);
+			// The link checks whether any of the user's clients are left.
+			if (cluster != null) {
+				cluster.presenceChanged(dead.getName());
+			}
+		}
+		channels.unsubscribeAll(dead);
 		if (!active.remove(dead)) {
 			LOGGER.log(Level.INFO,
 					"Could not find a thread that I tried to remove!\\n");
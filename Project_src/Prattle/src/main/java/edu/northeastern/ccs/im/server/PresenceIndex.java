@@ -0,0 +1,94 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The clients that are logged in, keyed by user name regardless of case, so
+ * that a message for a user is routed with a single lookup however many
+ * clients are connected. A user logged in from several places has a client
+ * for each of them.
+ *
+ * Clients are added once they have logged in and removed when they are
+ * terminated; the index is safe to use from any thread.
+ */
+public class PresenceIndex {
+
+	/** Live clients of each user, keyed by canonical user name. */
+	private final Map<String, Set<ClientRunnable>> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Get the key under which a user's clients are kept.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Canonical form of the name.
+	 */
+	public static String canonical(String user) {
+		return user.toLowerCase();
+	}
+
+	/**
+	 * Record that a client has logged in as the given user.
+	 *
+	 * @param user   Name the client logged in with.
+	 * @param client Client that logged in.
+	 */
+	public void add(String user, ClientRunnable client) {
+		sessions.compute(canonical(user), (key, clients) -> {
+			Set<ClientRunnable> live = (clients != null) ? clients
+					: ConcurrentHashMap.newKeySet();
+			live.add(client);
+			return live;
+		});
+	}
+
+	/**
+	 * Record that a client of the given user has gone. The user is forgotten
+	 * once they have no clients left.
+	 *
+	 * @param user   Name the client logged in with.
+	 * @param client Client that has gone.
+	 */
+	public void remove(String user, ClientRunnable client) {
+		sessions.computeIfPresent(canonical(user), (key, clients) -> {
+			clients.remove(client);
+			return clients.isEmpty() ? null : clients;
+		});
+	}
+
+	/**
+	 * Get the clients logged in as the given user.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Live view of the user's clients; empty if they are not logged in.
+	 */
+	public Collection<ClientRunnable> get(String user) {
+		if (user == null) {
+			return Collections.emptySet();
+		}
+		Set<ClientRunnable> clients = sessions.get(canonical(user));
+		return (clients != null) ? clients : Collections.<ClientRunnable>emptySet();
+	}
+
+	/**
+	 * Check if the given user has a client logged in.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return True if the user is online.
+	 */
+	public boolean isOnline(String user) {
+		return !get(user).isEmpty();
+	}
+
+	/**
+	 * Get the number of users who are logged in.
+	 *
+	 * @return Number of users with at least one client.
+	 */
+	public int size() {
+		return sessions.size();
+	}
+}
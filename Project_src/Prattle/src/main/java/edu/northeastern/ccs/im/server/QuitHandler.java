@@ -0,0 +1,16 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Handles the message (BYE) a client sends when it logs off.
+ */
+class QuitHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		client.requestTermination();
+		// Reply with a quit message.
+		client.enqueueMessage(Message.makeQuitMessage(client.getName()));
+	}
+}
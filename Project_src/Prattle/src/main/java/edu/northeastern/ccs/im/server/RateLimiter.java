@@ -0,0 +1,222 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.northeastern.ccs.im.Message.MessageType;
+
+/**
+ * Limits how quickly clients may send messages, with a token bucket for each
+ * user, for each source address and, for the message types that have a limit
+ * of their own, for each user and type. A message is allowed only if every
+ * bucket that applies to it has a token. A rate of zero turns a limit off.
+ *
+ * Buckets are made the first time they are needed and are forgotten by
+ * {@link #evictIdle()} once they have refilled, so only clients that have
+ * been busy recently take up any memory.
+ */
+public class RateLimiter {
+
+	/** Messages per second allowed for each user. */
+	private final int userRate;
+
+	/** Messages each user may send at once. */
+	private final int userBurst;
+
+	/** Messages per second allowed from each source address. */
+	private final int addressRate;
+
+	/** Messages that may be sent from each source address at once. */
+	private final int addressBurst;
+
+	/** Messages per second allowed for each user for each message type. */
+	private final int[] typeRates;
+
+	/** Burst allowed for each user for each message type. */
+	private final int[] typeBursts;
+
+	/** Buckets for each user. */
+	private final Map<String, TokenBucket> users = new ConcurrentHashMap<>();
+
+	/** Buckets for each source address. */
+	private final Map<String, TokenBucket> addresses = new ConcurrentHashMap<>();
+
+	/** Buckets for each user, one map per message type. */
+	private final Map<String, TokenBucket>[] typed;
+
+	/**
+	 * Create a limiter without any per-type limits.
+	 *
+	 * @param userRate     Messages per second allowed for each user.
+	 * @param userBurst    Messages a user may send at once.
+	 * @param addressRate  Messages per second allowed from each address.
+	 * @param addressBurst Messages that may be sent from an address at once.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public RateLimiter(int userRate, int userBurst, int addressRate,
+			int addressBurst) {
+		this.userRate = userRate;
+		this.userBurst = userBurst;
+		this.addressRate = addressRate;
+		this.addressBurst = addressBurst;
+		int types = MessageType.values().length;
+		typeRates = new int[types];
+		typeBursts = new int[types];
+		typed = new Map[types];
+		for (int i = 0; i < types; i++) {
+			typed[i] = new ConcurrentHashMap<>();
+		}
+	}
+
+	/**
+	 * Create the limiter described by our settings. Every setting is named
+	 * "prattle.limit." followed by "user", "ip" or "type.&lt;handle&gt;" and
+	 * then ".perSecond" or ".burst".
+	 *
+	 * @return New limiter.
+	 */
+	public static RateLimiter fromConfig() {
+		RateLimiter limiter = new RateLimiter(
+				ServerConfig.getInt("prattle.limit.user.perSecond", 10),
+				ServerConfig.getInt("prattle.limit.user.burst", 20),
+				ServerConfig.getInt("prattle.limit.ip.perSecond", 50),
+				ServerConfig.getInt("prattle.limit.ip.burst", 100));
+		for (MessageType type : MessageType.values()) {
+			String prefix = "prattle.limit.type." + type + ".";
+			int rate = ServerConfig.getInt(prefix + "perSecond", 0);
+			if (rate > 0) {
+				limiter.setTypeLimit(type, rate,
+						ServerConfig.getInt(prefix + "burst", rate));
+			}
+		}
+		return limiter;
+	}
+
+	/**
+	 * Limit how quickly each user may send messages of the given type.
+	 *
+	 * @param type      Type of message.
+	 * @param perSecond Messages of that type per second allowed for each user.
+	 * @param burst     Messages of that type a user may send at once.
+	 */
+	public void setTypeLimit(MessageType type, int perSecond, int burst) {
+		typeRates[type.ordinal()] = perSecond;
+		typeBursts[type.ordinal()] = burst;
+	}
+
+	/**
+	 * Take a token for a message from every bucket that applies to it.
+	 *
+	 * @param user    Name of the user sending the message.
+	 * @param address Address from which the message was sent.
+	 * @param type    Type of the message.
+	 * @return True if the message may be handled; false if it is over a limit.
+	 */
+	public boolean tryAcquire(String user, String address, MessageType type) {
+		int index = type.ordinal();
+		// The narrowest limit is checked last, and the tokens already taken
+		// are given back when a later bucket turns the message away, so a
+		// rejected message costs none of the user's quota.
+		TokenBucket userBucket = bucket(users, user, userRate, userBurst);
+		if (!acquire(userBucket)) {
+			return false;
+		}
+		TokenBucket addressBucket = bucket(addresses, address, addressRate,
+				addressBurst);
+		if (!acquire(addressBucket)) {
+			release(userBucket);
+			return false;
+		}
+		if (!acquire(bucket(typed[index], user, typeRates[index],
+				typeBursts[index]))) {
+			release(userBucket);
+			release(addressBucket);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Forget every bucket that has refilled, since a new bucket would behave
+	 * just the same.
+	 */
+	public void evictIdle() {
+		long now = System.nanoTime();
+		evictIdle(users, now);
+		evictIdle(addresses, now);
+		for (Map<String, TokenBucket> buckets : typed) {
+			evictIdle(buckets, now);
+		}
+	}
+
+	/**
+	 * Get the number of buckets being kept.
+	 *
+	 * @return Number of users, addresses and user/type pairs with a bucket.
+	 */
+	public int getBucketCount() {
+		int count = users.size() + addresses.size();
+		for (Map<String, TokenBucket> buckets : typed) {
+			count += buckets.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Find the bucket for the given key, creating it if there is none.
+	 *
+	 * @param buckets Buckets for one kind of limit.
+	 * @param key     Whose bucket to use.
+	 * @param rate    Tokens per second; zero or less means no limit.
+	 * @param burst   Size of the bucket.
+	 * @return Bucket to take from, or null if there is no limit.
+	 */
+	private static TokenBucket bucket(Map<String, TokenBucket> buckets,
+			String key, int rate, int burst) {
+		if ((rate <= 0) || (key == null)) {
+			return null;
+		}
+		TokenBucket bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(rate, burst));
+		}
+		return bucket;
+	}
+
+	/**
+	 * Take a token from a bucket.
+	 *
+	 * @param bucket Bucket to take from, or null if there is no limit.
+	 * @return True if a token was taken or there is no limit.
+	 */
+	private static boolean acquire(TokenBucket bucket) {
+		return (bucket == null) || bucket.tryAcquire();
+	}
+
+	/**
+	 * Give back a token taken from a bucket.
+	 *
+	 * @param bucket Bucket the token came from, or null if there is no limit.
+	 */
+	private static void release(TokenBucket bucket) {
+		if (bucket != null) {
+			bucket.release();
+		}
+	}
+
+	/**
+	 * Forget the buckets of one kind of limit that have refilled.
+	 *
+	 * @param buckets Buckets to look through.
+	 * @param now     Current time, on the System.nanoTime() clock.
+	 */
+	private static void evictIdle(Map<String, TokenBucket> buckets, long now) {
+		Iterator<TokenBucket> iter = buckets.values().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().isFull(now)) {
+				iter.remove();
+			}
+		}
+	}
+}
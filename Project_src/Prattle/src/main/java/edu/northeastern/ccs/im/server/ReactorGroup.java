@@ -0,0 +1,177 @@
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The reactors among which the server spreads its client connections. The
+ * accept loop hands every new client to the group, which gives it to one of
+ * its reactors either round-robin or to whichever reactor currently owns the
+ * fewest connections. A message for a client owned by another reactor is
+ * not passed through that reactor's thread: it is added to the recipient's
+ * queue, and the recipient is run on the shared worker pool, at most one
+ * worker at a time. The owning reactor is only asked, through its task
+ * queue, to watch the recipient's channel again once the worker is done or
+ * the socket could not take all of its output.
+ */
+public class ReactorGroup {
+
+	/** Milliseconds in each tick of the wheel that runs client timers. */
+	private static final long TIMER_TICK_MS = ServerConfig
+			.getLong("prattle.timers.tickMs", 100);
+
+	/** Number of slots in the wheel that runs client timers. */
+	private static final int TIMER_SLOTS = ServerConfig
+			.getInt("prattle.timers.slots", 512);
+
+	/** The ways in which a new connection can be given to a reactor. */
+	public enum Assignment {
+		/** Hand out reactors in turn. */
+		ROUND_ROBIN,
+		/** Pick the reactor that owns the fewest connections. */
+		LEAST_LOADED;
+
+		/**
+		 * Find the assignment with the given name, i.e. "round-robin".
+		 *
+		 * @param name Name of the assignment, ignoring case.
+		 * @return Matching assignment, or LEAST_LOADED if none matches.
+		 */
+		public static Assignment fromName(String name) {
+			if (name != null
+					&& name.replace('-', '_').equalsIgnoreCase(ROUND_ROBIN.name())) {
+				return ROUND_ROBIN;
+			}
+			return LEAST_LOADED;
+		}
+	}
+
+	/** Reactors in this group. */
+	private final ClientReactor[] reactors;
+
+	/** How new connections are given to the reactors. */
+	private final Assignment assignment;
+
+	/** Index of the next reactor to use for round-robin assignment. */
+	private final AtomicInteger nextReactor;
+
+	/** Wheel running the timers of every client in the group. */
+	private final TimingWheel timers;
+
+	/**
+	 * Create a group of reactors whose clients are run on the given pool. The
+	 * reactors are not started until {@link #start()} is called.
+	 *
+	 * @param size       Number of reactors in the group (at least one).
+	 * @param assignment How new connections are given to the reactors.
+	 * @param workers    Pool on which client handlers are run.
+	 * @throws IOException Exception thrown if a selector cannot be opened.
+	 */
+	public ReactorGroup(int size, Assignment assignment,
+			ScheduledExecutorService workers) throws IOException {
+		timers = new TimingWheel(TIMER_TICK_MS, TIMER_SLOTS);
+		reactors = new ClientReactor[Math.max(size, 1)];
+		for (int i = 0; i < reactors.length; i++) {
+			reactors[i] = new ClientReactor("prattle-reactor-" + i, workers,
+					timers);
+		}
+		this.assignment = assignment;
+		nextReactor = new AtomicInteger();
+	}
+
+	/** Start a thread for every reactor in the group and one for the timers. */
+	public void start() {
+		for (ClientReactor reactor : reactors) {
+			new Thread(reactor, reactor.getName()).start();
+		}
+		Thread timerThread = new Thread(timers, "prattle-timers");
+		timerThread.setDaemon(true);
+		timerThread.start();
+	}
+
+	/** Stop every reactor in the group and the timers. */
+	public void shutdown() {
+		for (ClientReactor reactor : reactors) {
+			reactor.shutdown();
+		}
+		timers.stop();
+	}
+
+	/**
+	 * Get the wheel that runs the timers of the clients in this group.
+	 *
+	 * @return Timing wheel shared by all of our reactors.
+	 */
+	public TimingWheel getTimers() {
+		return timers;
+	}
+
+	/**
+	 * Give the channel of a newly connected client to one of the reactors.
+	 *
+	 * @param client Client that has just connected.
+	 * @return Reactor that now owns the client.
+	 */
+	public ClientReactor register(ClientRunnable client) {
+		ClientReactor reactor = choose();
+		reactor.register(client);
+		return reactor;
+	}
+
+	/**
+	 * Pick the reactor that should own the next connection.
+	 *
+	 * @return Reactor chosen according to our assignment.
+	 */
+	ClientReactor choose() {
+		if (assignment == Assignment.ROUND_ROBIN) {
+			int next = nextReactor.getAndIncrement() & Integer.MAX_VALUE;
+			return reactors[next % reactors.length];
+		}
+		ClientReactor best = reactors[0];
+		for (int i = 1; i < reactors.length; i++) {
+			if (reactors[i].getConnectionCount() < best.getConnectionCount()) {
+				best = reactors[i];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Get the number of reactors in this group.
+	 *
+	 * @return Number of reactors.
+	 */
+	public int size() {
+		return reactors.length;
+	}
+
+	/**
+	 * Get the number of connections currently owned by each reactor.
+	 *
+	 * @return Array holding the connection count of each reactor, in order.
+	 */
+	public int[] getLoads() {
+		int[] loads = new int[reactors.length];
+		for (int i = 0; i < reactors.length; i++) {
+			loads[i] = reactors[i].getConnectionCount();
+		}
+		return loads;
+	}
+
+	/**
+	 * Describe the load on each reactor, for the server log.
+	 *
+	 * @return One line listing the connections and events of each reactor.
+	 */
+	public String loadReport() {
+		StringBuilder report = new StringBuilder("reactor load:");
+		for (ClientReactor reactor : reactors) {
+			report.append(' ').append(reactor.getName()).append('=')
+					.append(reactor.getConnectionCount()).append(" conn/")
+					.append(reactor.getEventCount()).append(" events");
+		}
+		return report.toString();
+	}
+}
@@ -0,0 +1,22 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Handles the messages with which a client recalls (RCL) a message it sent.
+ */
+class RecallHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		if (client.messageChecks(msg)) {
+			if ((msg.getText() != null)
+					&& (msg.getText().compareToIgnoreCase(
+							ServerConstants.BOMB_TEXT) == 0)) {
+				client.handleBomb();
+			} else if (msg.getName() != null) {
+				MessageArchive.recallMessage(client.getName(), msg.getText());
+			}
+		}
+	}
+}
@@ -0,0 +1,266 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.List;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * The last messages sent to one user, numbered in the order they were sent,
+ * so that a client that loses its connection can pick up where it left off.
+ * The numbers count the messages (see {@link #isReplayable(Message)}) sent to
+ * the user since the ring was opened, starting from 1; a client keeps the same
+ * count of the messages it has received and, when it reconnects, presents the
+ * last number it saw to be sent only what it missed.
+ *
+ * While the user is connected, the ring holds the messages most recently sent
+ * to them. While they are not, it also collects the private messages sent to
+ * them in the meantime. Those are still archived as before; the ring only
+ * saves having to read them back. Once a message that arrived while the user
+ * was away has been pushed out of the ring, the ring is overrun and the
+ * archive must be read after all. A client that takes the session over keeps
+ * collecting them until it is listed as online (see
+ * {@link #online(ClientRunnable, List)}), so none are lost in between.
+ */
+public class ReplayRing {
+
+	/** Secret the client must present to take the session over again. */
+	private final String token;
+
+	/** Messages by sequence number, modulo the size of the ring. */
+	private final Message[] ring;
+
+	/** Number of the last message added, or 0 if none has been. */
+	private long lastSeq;
+
+	/** Number of messages held, counting back from the last one. */
+	private int count;
+
+	/** Client currently connected as the user, or null while they are away. */
+	private ClientRunnable owner;
+
+	/** Time, on the System.nanoTime() clock, at which the user went away. */
+	private long detachedAt;
+
+	/** Number of the last message sent before the user went away. */
+	private long detachedSeq;
+
+	/** Set once a message that arrived while the user was away is lost. */
+	private boolean overrun;
+
+	/**
+	 * Set while the owner has taken the session over but is not yet listed
+	 * as online, so messages sent to the user are still held here.
+	 */
+	private boolean attaching;
+
+	/** Number of the last message held when the owner took the session over. */
+	private long attachedSeq;
+
+	/**
+	 * Create a new, empty ring for a connected user.
+	 *
+	 * @param token    Secret the client must present to resume the session.
+	 * @param capacity Most messages the ring holds (at least one).
+	 * @param owner    Client connected as the user.
+	 */
+	public ReplayRing(String token, int capacity, ClientRunnable owner) {
+		this.token = token;
+		ring = new Message[Math.max(capacity, 1)];
+		this.owner = owner;
+	}
+
+	/**
+	 * Check if a message is one of those that are numbered and replayed. These
+	 * are the messages other users send; replies to the user's own requests
+	 * are not replayed.
+	 *
+	 * @param msg Message sent to the user.
+	 * @return True if the message is numbered.
+	 */
+	public static boolean isReplayable(Message msg) {
+		return msg.isPrivateMessage() || msg.isGroupMessage()
+				|| msg.isBroadcastMessage() || msg.isChannelMessage();
+	}
+
+	/**
+	 * Get the secret the client must present to resume the session.
+	 *
+	 * @return Resume token of this ring.
+	 */
+	public String getToken() {
+		return token;
+	}
+
+	/**
+	 * Get the number of the last message sent to, or held for, the user.
+	 *
+	 * @return Last sequence number used.
+	 */
+	public synchronized long getLastSequence() {
+		return lastSeq;
+	}
+
+	/**
+	 * Number and remember a message that is being sent to the user.
+	 *
+	 * @param sender Client sending the message.
+	 * @param msg    Message being sent.
+	 * @return False if the client no longer owns the ring, in which case the
+	 *         message is not numbered.
+	 */
+	public synchronized boolean record(ClientRunnable sender, Message msg) {
+		if (owner != sender) {
+			return false;
+		}
+		append(msg);
+		return true;
+	}
+
+	/**
+	 * Hold a message sent to the user while they are away.
+	 *
+	 * @param msg Message sent to the user.
+	 * @return False if the user is connected, in which case nothing is held.
+	 */
+	public synchronized boolean recordOffline(Message msg) {
+		if ((owner != null) && !attaching) {
+			return false;
+		}
+		if ((count == ring.length) && (firstSeq() > detachedSeq)) {
+			// The oldest message held for the user is about to be lost.
+			overrun = true;
+		}
+		append(msg);
+		return true;
+	}
+
+	/**
+	 * Note that the given client has lost its connection. Nothing happens if
+	 * another client has since taken the session over.
+	 *
+	 * @param client Client that is going away.
+	 * @param now    Current time, on the System.nanoTime() clock.
+	 */
+	public synchronized void detach(ClientRunnable client, long now) {
+		if (owner == client) {
+			owner = null;
+			attaching = false;
+			detachedAt = now;
+			detachedSeq = lastSeq;
+			overrun = false;
+		}
+	}
+
+	/**
+	 * Check if the user has been away for longer than the session is kept.
+	 *
+	 * @param now         Current time, on the System.nanoTime() clock.
+	 * @param retainNanos Nanoseconds for which a session is kept.
+	 * @return True if the ring may be forgotten.
+	 */
+	public synchronized boolean isExpired(long now, long retainNanos) {
+		return (owner == null) && (now - detachedAt > retainNanos);
+	}
+
+	/**
+	 * Give the session to a client that has reconnected as the user and find
+	 * the messages it missed. The numbers of those messages are given up, as
+	 * they are numbered again when they are resent, so that the numbers carry
+	 * on from the last one the client saw.
+	 *
+	 * @param client   Client that has reconnected.
+	 * @param lastSeen Number of the last message the client received.
+	 * @param missed   List to which the messages to resend are added, oldest
+	 *                 first.
+	 * @return Number of the messages added that arrived while the user was
+	 *         away, or -1 if some of those are no longer held, in which case
+	 *         only the messages sent before the user went away are added and
+	 *         the rest must be read from the archive.
+	 */
+	public synchronized int attach(ClientRunnable client, long lastSeen,
+			List<Message> missed) {
+		long seen = Math.max(Math.min(lastSeen, lastSeq), 0);
+		long sentBefore = (owner == null) ? detachedSeq : lastSeq;
+		long last = overrun ? Math.min(sentBefore, lastSeq) : lastSeq;
+		for (long seq = Math.max(seen + 1, firstSeq()); seq <= last; seq++) {
+			missed.add(ring[slot(seq)]);
+		}
+		int heldOffline = overrun ? -1 : (int) (lastSeq - Math.max(sentBefore, seen));
+		// Forget everything after the last message the client saw.
+		for (long seq = Math.max(seen + 1, firstSeq()); seq <= lastSeq; seq++) {
+			ring[slot(seq)] = null;
+		}
+		count = (int) Math.max(count - (lastSeq - seen), 0);
+		lastSeq = seen;
+		owner = client;
+		overrun = false;
+		attaching = true;
+		attachedSeq = seen;
+		return heldOffline;
+	}
+
+	/**
+	 * Note that the client that took the session over is now listed as
+	 * online, so messages reach it directly, and find those held for the user
+	 * since it took the session over. Their numbers are given up, as with
+	 * {@link #attach(ClientRunnable, long, List)}.
+	 *
+	 * @param client  Client that took the session over.
+	 * @param arrived List to which the messages to send are added, oldest
+	 *                first.
+	 * @return Number of the messages added, or -1 if some of them are no
+	 *         longer held, in which case none are added and they must all be
+	 *         read from the archive.
+	 */
+	public synchronized int online(ClientRunnable client, List<Message> arrived) {
+		if ((owner != client) || !attaching) {
+			return 0;
+		}
+		attaching = false;
+		int held = (int) (lastSeq - attachedSeq);
+		boolean lost = firstSeq() > attachedSeq + 1;
+		for (long seq = Math.max(attachedSeq + 1, firstSeq()); seq <= lastSeq; seq++) {
+			if (!lost) {
+				arrived.add(ring[slot(seq)]);
+			}
+			ring[slot(seq)] = null;
+		}
+		count = (int) Math.max(count - held, 0);
+		lastSeq = attachedSeq;
+		overrun = false;
+		return lost ? -1 : held;
+	}
+
+	/**
+	 * Add a message after the last one, pushing out the oldest if the ring is
+	 * full.
+	 *
+	 * @param msg Message to add.
+	 */
+	private void append(Message msg) {
+		lastSeq++;
+		ring[slot(lastSeq)] = msg;
+		if (count < ring.length) {
+			count++;
+		}
+	}
+
+	/**
+	 * Get the number of the oldest message held.
+	 *
+	 * @return Oldest sequence number held, or one past the last if none are.
+	 */
+	private long firstSeq() {
+		return lastSeq - count + 1;
+	}
+
+	/**
+	 * Get the slot of the ring holding the given message.
+	 *
+	 * @param seq Sequence number of the message.
+	 * @return Index into the ring.
+	 */
+	private int slot(long seq) {
+		return (int) (seq % ring.length);
+	}
+}
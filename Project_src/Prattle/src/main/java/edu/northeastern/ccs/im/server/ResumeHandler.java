@@ -0,0 +1,18 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Handles the request (RSM) of a logged in client for a session it can resume
+ * if its connection drops, answering with the resume token and the number of
+ * the last message sent so far.
+ */
+class ResumeHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		ReplayRing ring = client.openResumableSession();
+		client.addImmediateResponse(Message.makeResumeMessage(client.getName(),
+				ring.getToken() + " " + ring.getLastSequence()));
+	}
+}
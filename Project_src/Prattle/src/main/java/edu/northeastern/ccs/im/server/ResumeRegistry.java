@@ -0,0 +1,176 @@
+package edu.northeastern.ccs.im.server;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * The {@link ReplayRing}s of the users whose clients have asked to be able to
+ * resume their sessions, keyed by user name. A client that reconnects with
+ * the token of its ring is logged back in without checking its password and
+ * sent only what it missed, without reading anything from the database unless
+ * its ring was overrun.
+ *
+ * Only clients that ask for it get a ring, and the ring of a user who has
+ * been away for longer than we keep sessions is forgotten by
+ * {@link #evictExpired()}.
+ */
+public class ResumeRegistry {
+
+	/** Random bytes in each resume token. */
+	private static final int TOKEN_BYTES = 16;
+
+	/** Most messages held in each ring. */
+	private final int capacity;
+
+	/** Nanoseconds for which the ring of a user who has gone away is kept. */
+	private final long retainNanos;
+
+	/** Rings by user name, in lower case. */
+	private final Map<String, ReplayRing> rings = new ConcurrentHashMap<>();
+
+	/** Source of the resume tokens. */
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * Create a new registry without any rings.
+	 *
+	 * @param capacity Most messages held in each ring.
+	 * @param retainMs Milliseconds for which a session is kept after the user
+	 *                 goes away.
+	 */
+	public ResumeRegistry(int capacity, long retainMs) {
+		this.capacity = capacity;
+		retainNanos = TimeUnit.MILLISECONDS.toNanos(retainMs);
+	}
+
+	/**
+	 * Create the registry described by our settings.
+	 *
+	 * @return New registry.
+	 */
+	public static ResumeRegistry fromConfig() {
+		return new ResumeRegistry(
+				ServerConfig.getInt("prattle.resume.ringSize", 256),
+				TimeUnit.SECONDS.toMillis(
+						ServerConfig.getLong("prattle.resume.retainSeconds", 300)));
+	}
+
+	/**
+	 * Start a new resumable session for a user who has just logged in,
+	 * replacing any they had before.
+	 *
+	 * @param user  Name of the user.
+	 * @param owner Client connected as the user.
+	 * @return The ring of the new session.
+	 */
+	public ReplayRing open(String user, ClientRunnable owner) {
+		byte[] bytes = new byte[TOKEN_BYTES];
+		random.nextBytes(bytes);
+		StringBuilder token = new StringBuilder(TOKEN_BYTES * 2);
+		for (byte b : bytes) {
+			token.append(Character.forDigit((b >> 4) & 0xF, 16))
+					.append(Character.forDigit(b & 0xF, 16));
+		}
+		ReplayRing ring = new ReplayRing(token.toString(), capacity, owner);
+		rings.put(user.toLowerCase(), ring);
+		return ring;
+	}
+
+	/**
+	 * Find the session a reconnecting client asks to resume.
+	 *
+	 * @param user  Name of the user.
+	 * @param token Resume token the client presented.
+	 * @return Ring of the session, or null if there is none or the token does
+	 *         not match.
+	 */
+	public ReplayRing find(String user, String token) {
+		if ((user == null) || (token == null)) {
+			return null;
+		}
+		ReplayRing ring = rings.get(user.toLowerCase());
+		if ((ring == null) || !MessageDigest.isEqual(
+				ring.getToken().getBytes(StandardCharsets.US_ASCII),
+				token.getBytes(StandardCharsets.US_ASCII))) {
+			return null;
+		}
+		return ring;
+	}
+
+	/**
+	 * Hold a message for a user who is away, so that it can be resent if they
+	 * resume their session.
+	 *
+	 * @param user Name of the user to whom the message was sent.
+	 * @param msg  Message sent to the user.
+	 * @return True if the message is being held.
+	 */
+	public boolean recordOffline(String user, Message msg) {
+		ReplayRing ring = rings.get(user.toLowerCase());
+		return (ring != null) && ring.recordOffline(msg);
+	}
+
+	/**
+	 * End the session of a user, so that it can no longer be resumed.
+	 *
+	 * @param user Name of the user.
+	 * @param ring Ring of the session to end; a newer session is kept.
+	 */
+	public void close(String user, ReplayRing ring) {
+		rings.remove(user.toLowerCase(), ring);
+	}
+
+	/**
+	 * End the session of a user, whichever it is.
+	 *
+	 * @param user Name of the user.
+	 */
+	public void close(String user) {
+		rings.remove(user.toLowerCase());
+	}
+
+	/**
+	 * Forget the sessions of users who have been away for longer than we keep
+	 * them. Anything held for them is in the archive too.
+	 *
+	 * @return Number of sessions forgotten.
+	 */
+	public int evictExpired() {
+		return evictExpired(System.nanoTime());
+	}
+
+	/**
+	 * Forget the sessions of users who have been away for longer than we keep
+	 * them, as of the given time.
+	 *
+	 * @param now Current time, on the System.nanoTime() clock.
+	 * @return Number of sessions forgotten.
+	 */
+	int evictExpired(long now) {
+		int evicted = 0;
+		Iterator<ReplayRing> iter = rings.values().iterator();
+		while (iter.hasNext()) {
+			if (iter.next().isExpired(now, retainNanos)) {
+				iter.remove();
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	/**
+	 * Get the number of sessions being kept.
+	 *
+	 * @return Number of users with a ring.
+	 */
+	public int size() {
+		return rings.size();
+	}
+}
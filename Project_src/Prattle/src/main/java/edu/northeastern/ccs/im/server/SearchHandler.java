@@ -0,0 +1,16 @@
+package edu.northeastern.ccs.im.server;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Handles the searches (SRC) a client makes through the archived messages.
+ */
+class SearchHandler implements MessageHandler {
+
+	@Override
+	public void handle(ClientRunnable client, Message msg) {
+		for (Message retMsg : MessageArchive.searchMessages(msg)) {
+			client.addImmediateResponse(retMsg);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package edu.northeastern.ccs.im.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tunable settings for the server. Values are read from the prattle.properties
+ * resource and may be overridden on the command line with the matching system
+ * property, i.e. {@code java -Dprattle.reactors=4 -jar ...}. Any setting that
+ * is missing or malformed falls back to the default given by the caller.
+ */
+public class ServerConfig {
+	private static final Logger LOGGER = LogManager
+			.getLogger(ServerConfig.class.getName());
+
+	private static final String PROPERTY_FILE = "/prattle.properties";
+
+	/** Settings loaded from the property file. */
+	private static final Properties SETTINGS = load();
+
+	private ServerConfig() {
+		/*
+		 * private constructor to hide the implicit public one
+		 */
+	}
+
+	/**
+	 * Read the property file, if there is one.
+	 *
+	 * @return Settings found in the property file.
+	 */
+	private static Properties load() {
+		Properties prop = new Properties();
+		try (InputStream inputStream = ServerConfig.class
+				.getResourceAsStream(PROPERTY_FILE)) {
+			if (inputStream != null) {
+				prop.load(inputStream);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+		return prop;
+	}
+
+	/**
+	 * Get the value of a setting as a String.
+	 *
+	 * @param key          Name of the setting.
+	 * @param defaultValue Value used when the setting is not given.
+	 * @return Value of the setting.
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value = System.getProperty(key, SETTINGS.getProperty(key));
+		return (value == null || value.trim().isEmpty()) ? defaultValue
+				: value.trim();
+	}
+
+	/**
+	 * Get the value of a setting as an int.
+	 *
+	 * @param key          Name of the setting.
+	 * @param defaultValue Value used when the setting is not given or is not
+	 *                     a number.
+	 * @return Value of the setting.
+	 */
+	public static int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	/**
+	 * Get the value of a setting as a long.
+	 *
+	 * @param key          Name of the setting.
+	 * @param defaultValue Value used when the setting is not given or is not
+	 *                     a number.
+	 * @return Value of the setting.
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			LOGGER.log(Level.WARN, "invalid number for " + key + ": " + value);
+			return defaultValue;
+		}
+	}
+}
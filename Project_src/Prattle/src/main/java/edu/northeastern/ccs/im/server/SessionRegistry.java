@@ -0,0 +1,125 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The {@link SessionStats} of every logged in user, keyed by user name
+ * regardless of case. Any thread may add, remove or read a session without
+ * blocking the others, so routing and the archive can look up where a user
+ * is connected from while clients come and go. A user logged in from several
+ * places is known by the connection that logged in last.
+ */
+public class SessionRegistry {
+
+	/** Ranks sessions from the quietest to the busiest. */
+	private static final Comparator<SessionStats> BY_TRAFFIC = Comparator
+			.comparingLong(SessionStats::getTotalMessages);
+
+	/** Statistics of each user's latest connection, by canonical user name. */
+	private final Map<String, SessionStats> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * Start keeping the statistics of a client that has just logged in,
+	 * replacing those of any connection the user had before.
+	 *
+	 * @param user          Name the client logged in with.
+	 * @param remoteAddress Address the client connected from.
+	 * @param client        Client that logged in.
+	 * @return Statistics of the new session.
+	 */
+	public SessionStats open(String user, String remoteAddress,
+			ClientRunnable client) {
+		SessionStats stats = new SessionStats(user, remoteAddress, client,
+				System.currentTimeMillis());
+		sessions.put(PresenceIndex.canonical(user), stats);
+		return stats;
+	}
+
+	/**
+	 * Stop keeping the statistics of a session that has ended.
+	 *
+	 * @param user  Name the client logged in with.
+	 * @param stats Statistics of the session; a newer session is kept.
+	 */
+	public void close(String user, SessionStats stats) {
+		if ((user != null) && (stats != null)) {
+			sessions.remove(PresenceIndex.canonical(user), stats);
+		}
+	}
+
+	/**
+	 * Get the statistics of a user's connection.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Statistics of the user's latest session, or null if they are not
+	 *         logged in.
+	 */
+	public SessionStats get(String user) {
+		return (user != null) ? sessions.get(PresenceIndex.canonical(user)) : null;
+	}
+
+	/**
+	 * Get the address a user is connected from.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Remote address of the user, or null if they are not logged in.
+	 */
+	public String getAddress(String user) {
+		SessionStats stats = get(user);
+		return (stats != null) ? stats.getRemoteAddress() : null;
+	}
+
+	/**
+	 * Find the sessions that have received and sent the most messages.
+	 *
+	 * @param count Most sessions to return.
+	 * @return The busiest sessions, busiest first.
+	 */
+	public List<SessionStats> topTalkers(int count) {
+		if (count <= 0) {
+			return Collections.emptyList();
+		}
+		// Keep only the busiest few seen so far, quietest on top.
+		PriorityQueue<SessionStats> busiest = new PriorityQueue<>(count + 1,
+				BY_TRAFFIC);
+		for (SessionStats stats : sessions.values()) {
+			busiest.add(stats);
+			if (busiest.size() > count) {
+				busiest.poll();
+			}
+		}
+		List<SessionStats> top = new ArrayList<>(busiest);
+		top.sort(BY_TRAFFIC.reversed());
+		return top;
+	}
+
+	/**
+	 * Describe the busiest sessions, for logging.
+	 *
+	 * @param count Most sessions to describe.
+	 * @return One line listing the busiest sessions.
+	 */
+	public String report(int count) {
+		StringBuilder report = new StringBuilder("top talkers of ")
+				.append(size()).append(" sessions:");
+		for (SessionStats stats : topTalkers(count)) {
+			report.append(' ').append(stats);
+		}
+		return report.toString();
+	}
+
+	/**
+	 * Get the number of users logged in.
+	 *
+	 * @return Number of sessions kept.
+	 */
+	public int size() {
+		return sessions.size();
+	}
+}
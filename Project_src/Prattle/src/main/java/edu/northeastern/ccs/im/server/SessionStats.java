@@ -0,0 +1,174 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * What we know about one logged in connection: where it came from, when it
+ * logged in and was last heard from, and how much it has sent and been sent.
+ * The counts are kept by the worker running the client and may be read from
+ * any thread without locking; bytes are counted as the messages are encoded
+ * on the wire.
+ */
+public class SessionStats {
+
+	/** Name the client logged in with. */
+	private final String user;
+
+	/** Address the client connected from, or null if it is not known. */
+	private final String remoteAddress;
+
+	/** Client whose output queue is reported, or null if there is none. */
+	private final ClientRunnable client;
+
+	/** Time, in milliseconds since the epoch, at which the client logged in. */
+	private final long loginMillis;
+
+	/** Time, in milliseconds since the epoch, of the last message received. */
+	private volatile long lastActiveMillis;
+
+	/** Messages and bytes received from the client. */
+	private final AtomicLong messagesIn = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+
+	/** Messages and bytes sent to the client. */
+	private final AtomicLong messagesOut = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	/**
+	 * Create the statistics of a client that has just logged in.
+	 *
+	 * @param user          Name the client logged in with.
+	 * @param remoteAddress Address the client connected from.
+	 * @param client        Client whose output queue is reported.
+	 * @param now           Current time, in milliseconds since the epoch.
+	 */
+	public SessionStats(String user, String remoteAddress, ClientRunnable client,
+			long now) {
+		this.user = user;
+		this.remoteAddress = remoteAddress;
+		this.client = client;
+		loginMillis = now;
+		lastActiveMillis = now;
+	}
+
+	/**
+	 * Count a message received from the client.
+	 *
+	 * @param msg Message that was received.
+	 */
+	void received(Message msg) {
+		messagesIn.incrementAndGet();
+		bytesIn.addAndGet(msg.encodedLength());
+		lastActiveMillis = System.currentTimeMillis();
+	}
+
+	/**
+	 * Count a message sent to the client.
+	 *
+	 * @param msg Message that is being sent.
+	 */
+	void sent(Message msg) {
+		messagesOut.incrementAndGet();
+		bytesOut.addAndGet(msg.encodedLength());
+	}
+
+	/**
+	 * Get the name the client logged in with.
+	 *
+	 * @return Name of the user.
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Get the address the client connected from.
+	 *
+	 * @return Remote address of the client, or null if it is not known.
+	 */
+	public String getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * Get the time at which the client logged in.
+	 *
+	 * @return Milliseconds since the epoch.
+	 */
+	public long getLoginMillis() {
+		return loginMillis;
+	}
+
+	/**
+	 * Get the time at which the client last sent a message.
+	 *
+	 * @return Milliseconds since the epoch.
+	 */
+	public long getLastActiveMillis() {
+		return lastActiveMillis;
+	}
+
+	/**
+	 * Get the number of messages received from the client.
+	 *
+	 * @return Messages received.
+	 */
+	public long getMessagesIn() {
+		return messagesIn.get();
+	}
+
+	/**
+	 * Get the number of bytes received from the client.
+	 *
+	 * @return Bytes received.
+	 */
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * Get the number of messages sent to the client.
+	 *
+	 * @return Messages sent.
+	 */
+	public long getMessagesOut() {
+		return messagesOut.get();
+	}
+
+	/**
+	 * Get the number of bytes sent to the client.
+	 *
+	 * @return Bytes sent.
+	 */
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * Get the number of messages both received from and sent to the client,
+	 * by which the busiest clients are ranked.
+	 *
+	 * @return Messages in and out.
+	 */
+	public long getTotalMessages() {
+		return getMessagesIn() + getMessagesOut();
+	}
+
+	/**
+	 * Get the number of messages waiting to be sent to the client.
+	 *
+	 * @return Depth of the client's output queue.
+	 */
+	public int getQueueDepth() {
+		return (client != null) ? client.getQueuedMessageCount() : 0;
+	}
+
+	@Override
+	public String toString() {
+		return user + "@" + remoteAddress + " in=" + getMessagesIn() + "/"
+				+ getBytesIn() + "B out=" + getMessagesOut() + "/" + getBytesOut()
+				+ "B queued=" + getQueueDepth();
+	}
+}
@@ -0,0 +1,276 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A hashed timing wheel that runs tasks once their delay has passed. Time is
+ * cut into ticks, and every timeout is kept in the slot of the tick in which
+ * it falls due, along with the number of turns of the wheel still to go. Each
+ * tick looks only at its own slot, so scheduling, cancelling and expiring a
+ * timeout each take the same time however many timeouts there are, and a tick
+ * allocates nothing. The price is that a task may run up to one tick late.
+ *
+ * A single thread, started by running the wheel, turns it and runs the tasks
+ * that fall due; tasks must therefore be short and should hand any real work
+ * to another thread. Any thread may schedule or cancel a timeout.
+ */
+public class TimingWheel implements Runnable {
+
+	private static final Logger LOGGER = LogManager
+			.getLogger(TimingWheel.class.getName());
+
+	/** Most new timeouts moved into the wheel by a single tick. */
+	private static final int MAX_ADDED_PER_TICK = 100000;
+
+	/** A task waiting in the wheel, which can be cancelled until it runs. */
+	public static final class Timeout {
+
+		/** Task to run once the timeout falls due. */
+		private final Runnable task;
+
+		/** Nanoseconds after the wheel started at which the task falls due. */
+		private final long deadline;
+
+		/** Set once the task has run or been cancelled. */
+		private final AtomicBoolean done;
+
+		/** Turns of the wheel still to go; only used by the wheel thread. */
+		private long rounds;
+
+		/** Neighbours in the slot holding this timeout. */
+		private Timeout prev;
+		private Timeout next;
+
+		/**
+		 * Create a new timeout that has not yet been put in a slot.
+		 *
+		 * @param task     Task to run once the timeout falls due.
+		 * @param deadline Nanoseconds after the wheel started at which it is due.
+		 */
+		private Timeout(Runnable task, long deadline) {
+			this.task = task;
+			this.deadline = deadline;
+			done = new AtomicBoolean();
+		}
+
+		/**
+		 * Stop the task from running. The timeout leaves the wheel the next time
+		 * its slot comes round.
+		 *
+		 * @return True if the task had not yet run or been cancelled.
+		 */
+		public boolean cancel() {
+			return done.compareAndSet(false, true);
+		}
+
+		/**
+		 * Check if the task has already run or been cancelled.
+		 *
+		 * @return True if the task will not be run (again).
+		 */
+		public boolean isDone() {
+			return done.get();
+		}
+	}
+
+	/** Length of a tick in nanoseconds. */
+	private final long tickNanos;
+
+	/** First timeout of each slot, or null when the slot is empty. */
+	private final Timeout[] slots;
+
+	/** Mask turning a tick number into the index of its slot. */
+	private final int mask;
+
+	/** Time, on the System.nanoTime() clock, at which the wheel started. */
+	private final long startNanos;
+
+	/** Timeouts scheduled since the last tick, waiting to go into a slot. */
+	private final Queue<Timeout> added;
+
+	/** Number of timeouts that are in the wheel or waiting to go in. */
+	private final AtomicInteger pending;
+
+	/** Number of the next tick to be processed; only used by the wheel thread. */
+	private long tick;
+
+	/** Cleared to make the wheel thread exit. */
+	private volatile boolean running;
+
+	/**
+	 * Create a new wheel. The wheel does not turn until it is run.
+	 *
+	 * @param tickMs    Milliseconds in each tick (at least one).
+	 * @param slotCount Number of slots, rounded up to a power of two.
+	 */
+	public TimingWheel(long tickMs, int slotCount) {
+		tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(tickMs, 1));
+		int size = Integer.highestOneBit(Math.max(slotCount, 1) * 2 - 1);
+		slots = new Timeout[size];
+		mask = size - 1;
+		startNanos = System.nanoTime();
+		added = new ConcurrentLinkedQueue<>();
+		pending = new AtomicInteger();
+		running = true;
+	}
+
+	/**
+	 * Run the given task once the delay has passed.
+	 *
+	 * @param task    Task to be run on the wheel thread.
+	 * @param delayMs Number of milliseconds to wait before running the task.
+	 * @return Timeout that can be used to cancel the task.
+	 */
+	public Timeout schedule(Runnable task, long delayMs) {
+		Timeout timeout = new Timeout(task, System.nanoTime() - startNanos
+				+ TimeUnit.MILLISECONDS.toNanos(Math.max(delayMs, 0)));
+		pending.incrementAndGet();
+		added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Get the number of timeouts that have neither run nor left the wheel
+	 * after being cancelled.
+	 *
+	 * @return Number of timeouts held by the wheel.
+	 */
+	public int size() {
+		return pending.get();
+	}
+
+	/**
+	 * Get the length of a tick, which is as late as a task may run.
+	 *
+	 * @return Milliseconds in each tick.
+	 */
+	public long getTickMs() {
+		return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+	}
+
+	/** Turn the wheel, once per tick, until it is stopped. */
+	@Override
+	public void run() {
+		while (running) {
+			long wait = startNanos + ((tick + 1) * tickNanos) - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(this, wait);
+			} else {
+				advance(System.nanoTime());
+			}
+		}
+	}
+
+	/** Stop turning the wheel; tasks that have not yet run never will. */
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Process every tick that has ended by the given time, running the tasks
+	 * that have fallen due.
+	 *
+	 * @param now Current time, on the System.nanoTime() clock.
+	 */
+	void advance(long now) {
+		long elapsed = now - startNanos;
+		while ((tick + 1) * tickNanos <= elapsed) {
+			transferAdded();
+			expireSlot((int) (tick & mask));
+			tick++;
+		}
+	}
+
+	/**
+	 * Put the timeouts scheduled since the last tick into the slots in which
+	 * they fall due. Timeouts whose time has already come go into the slot of
+	 * the current tick.
+	 */
+	private void transferAdded() {
+		for (int i = 0; i < MAX_ADDED_PER_TICK; i++) {
+			Timeout timeout = added.poll();
+			if (timeout == null) {
+				return;
+			}
+			if (timeout.isDone()) {
+				// Cancelled before it ever went into the wheel.
+				pending.decrementAndGet();
+				continue;
+			}
+			long due = Math.max(timeout.deadline / tickNanos, tick);
+			timeout.rounds = (due - tick) / slots.length;
+			int index = (int) (due & mask);
+			timeout.next = slots[index];
+			if (timeout.next != null) {
+				timeout.next.prev = timeout;
+			}
+			slots[index] = timeout;
+		}
+	}
+
+	/**
+	 * Run the tasks in the given slot that are due this turn of the wheel and
+	 * drop any that were cancelled; the rest wait for another turn.
+	 *
+	 * @param index Index of the slot for the current tick.
+	 */
+	private void expireSlot(int index) {
+		Timeout timeout = slots[index];
+		while (timeout != null) {
+			Timeout next = timeout.next;
+			if (timeout.isDone()) {
+				remove(index, timeout);
+			} else if (timeout.rounds <= 0) {
+				remove(index, timeout);
+				if (timeout.done.compareAndSet(false, true)) {
+					runTask(timeout.task);
+				}
+			} else {
+				timeout.rounds--;
+			}
+			timeout = next;
+		}
+	}
+
+	/**
+	 * Take a timeout out of its slot.
+	 *
+	 * @param index   Index of the slot holding the timeout.
+	 * @param timeout Timeout to be removed.
+	 */
+	private void remove(int index, Timeout timeout) {
+		if (timeout.prev != null) {
+			timeout.prev.next = timeout.next;
+		} else {
+			slots[index] = timeout.next;
+		}
+		if (timeout.next != null) {
+			timeout.next.prev = timeout.prev;
+		}
+		timeout.prev = null;
+		timeout.next = null;
+		pending.decrementAndGet();
+	}
+
+	/**
+	 * Run a task that has fallen due, without letting it stop the wheel.
+	 *
+	 * @param task Task to be run.
+	 */
+	private static void runTask(Runnable task) {
+		try {
+			task.run();
+		} catch (RuntimeException e) {
+			LOGGER.log(Level.WARN, e.toString(), e);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket that refills at a steady rate up to a fixed number of
+ * tokens. Rather than counting tokens, the bucket remembers the time at which
+ * it will next be full; taking a token pushes that time back by one refill
+ * interval, and a token is only available while that time is no further
+ * ahead than a full bucket's worth of intervals. All of the state is one
+ * number, so taking a token is a single compare-and-set and never blocks.
+ */
+public class TokenBucket {
+
+	/** Nanoseconds it takes to refill one token. */
+	private final long interval;
+
+	/** Nanoseconds it takes to refill the whole bucket. */
+	private final long capacity;
+
+	/** Time, on the System.nanoTime() clock, at which the bucket is full. */
+	private final AtomicLong fullAt;
+
+	/**
+	 * Create a new bucket that starts out full.
+	 *
+	 * @param perSecond Tokens added to the bucket every second.
+	 * @param burst     Most tokens the bucket holds.
+	 */
+	public TokenBucket(double perSecond, int burst) {
+		interval = Math.max((long) (TimeUnit.SECONDS.toNanos(1) / perSecond), 1);
+		capacity = interval * Math.max(burst, 1);
+		fullAt = new AtomicLong(System.nanoTime());
+	}
+
+	/**
+	 * Take a token from the bucket, if there is one.
+	 *
+	 * @return True if a token was taken; false if the bucket is empty.
+	 */
+	public boolean tryAcquire() {
+		return tryAcquire(System.nanoTime());
+	}
+
+	/**
+	 * Take a token from the bucket, if there is one, as of the given time.
+	 *
+	 * @param now Current time, on the System.nanoTime() clock.
+	 * @return True if a token was taken; false if the bucket is empty.
+	 */
+	boolean tryAcquire(long now) {
+		while (true) {
+			long full = fullAt.get();
+			// A bucket that filled up in the past holds no more than when full.
+			long next = Math.max(full, now) + interval;
+			if (next - now > capacity) {
+				return false;
+			}
+			if (fullAt.compareAndSet(full, next)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Give back a token that was taken but not used. A bucket that has since
+	 * refilled completely stays full.
+	 */
+	void release() {
+		fullAt.addAndGet(-interval);
+	}
+
+	/**
+	 * Check if the bucket has refilled completely, in which case forgetting
+	 * it loses nothing.
+	 *
+	 * @param now Current time, on the System.nanoTime() clock.
+	 * @return True if the bucket is full.
+	 */
+	boolean isFull(long now) {
+		return fullAt.get() - now <= 0;
+	}
+}
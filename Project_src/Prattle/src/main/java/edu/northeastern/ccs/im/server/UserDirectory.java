@@ -0,0 +1,142 @@
+package edu.northeastern.ccs.im.server;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.northeastern.ccs.im.UserCrud;
+
+/**
+ * The id of every registered user, keyed by user name regardless of case, so
+ * that checking whether a user exists does not read the whole users table.
+ * The directory is read from the database once, when the server starts or
+ * when it is first needed, and is then kept up to date as users register and
+ * delete their accounts. A name it does not hold is looked up in the
+ * database, in case the user registered on another node of a cluster.
+ */
+public class UserDirectory {
+
+	/** Source of the users when the directory is read. */
+	private final UserCrud crud;
+
+	/** Id of each user, keyed by canonical user name. */
+	private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+	/** Set once the users have been read from the database. */
+	private volatile boolean loaded;
+
+	/**
+	 * Create a new directory, which is read the first time it is used.
+	 *
+	 * @param crud Source of the users.
+	 */
+	public UserDirectory(UserCrud crud) {
+		this.crud = crud;
+	}
+
+	/**
+	 * Read every user from the database, unless they have already been read.
+	 * An empty result is not trusted, as the database may have been out of
+	 * reach, so the users are read again the next time they are needed.
+	 *
+	 * @return Number of users in the directory.
+	 */
+	public synchronized int load() {
+		if (!loaded) {
+			Map<String, Integer> all = crud.getAllUserIds();
+			for (Map.Entry<String, Integer> user : all.entrySet()) {
+				if (user.getKey() != null) {
+					ids.putIfAbsent(PresenceIndex.canonical(user.getKey()),
+							user.getValue());
+				}
+			}
+			loaded = !all.isEmpty();
+		}
+		return ids.size();
+	}
+
+	/**
+	 * Check if a user with the given name is registered.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return True if the user exists.
+	 */
+	public boolean exists(String user) {
+		return getId(user) >= 0;
+	}
+
+	/**
+	 * Get the id of a registered user, looking it up in the database if it
+	 * is not in the directory.
+	 *
+	 * @param user Name of the user, in any case.
+	 * @return Id of the user, or -1 if there is no such user.
+	 */
+	public int getId(String user) {
+		if (user == null) {
+			return -1;
+		}
+		if (!loaded) {
+			load();
+		}
+		Integer id = ids.get(PresenceIndex.canonical(user));
+		if (id == null) {
+			return refresh(user);
+		}
+		return id;
+	}
+
+	/**
+	 * Record a user who has just registered.
+	 *
+	 * @param user Name of the new user.
+	 */
+	public synchronized void userAdded(String user) {
+		int id = crud.getUserId(user);
+		if (id >= 0) {
+			ids.put(PresenceIndex.canonical(user), id);
+		}
+	}
+
+	/**
+	 * Forget a user whose account has just been deleted.
+	 *
+	 * @param user Name of the user.
+	 */
+	public synchronized void userDeleted(String user) {
+		ids.remove(PresenceIndex.canonical(user));
+	}
+
+	/**
+	 * Read a user from the database again, adding or removing them as they
+	 * are found. Called when another node says the user has changed.
+	 *
+	 * @param user Name of the user.
+	 * @return Id of the user, or -1 if there is no such user.
+	 */
+	public synchronized int refresh(String user) {
+		int id = crud.getUserId(user);
+		if (id >= 0) {
+			ids.put(PresenceIndex.canonical(user), id);
+		} else {
+			ids.remove(PresenceIndex.canonical(user));
+		}
+		return id;
+	}
+
+	/**
+	 * Forget every user, so that they are all read again when next needed.
+	 */
+	public synchronized void reload() {
+		ids.clear();
+		loaded = false;
+	}
+
+	/**
+	 * Get the number of users in the directory.
+	 *
+	 * @return Number of users known.
+	 */
+	public int size() {
+		return ids.size();
+	}
+}
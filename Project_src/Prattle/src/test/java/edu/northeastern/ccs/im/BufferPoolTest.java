@@ -0,0 +1,53 @@
+package edu.northeastern.ccs.im;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testing the BufferPool class.
+ */
+class BufferPoolTest {
+
+	@Test
+	void testSizeClasses() {
+		BufferPool pool = new BufferPool(4096, 100000, 1 << 20);
+		assertEquals(4096, pool.getSmallestSize());
+		assertEquals(100000, pool.getLargestSize());
+		assertEquals(4096, pool.acquire(1).capacity());
+		assertEquals(16384, pool.acquire(4097).capacity());
+		assertEquals(65536, pool.acquire(16385).capacity());
+		assertEquals(100000, pool.acquire(65537).capacity());
+		assertEquals(100000, pool.acquire(1 << 30).capacity());
+		assertTrue(pool.acquire(1).isDirect());
+	}
+
+	@Test
+	void testBuffersAreReused() {
+		BufferPool pool = new BufferPool(4096, 16384, 1 << 20);
+		ByteBuffer first = pool.acquire(10);
+		first.put((byte) 1);
+		pool.release(first);
+		assertEquals(1, pool.getFreeCount(4096));
+
+		ByteBuffer second = pool.acquire(10);
+		assertSame(first, second);
+		assertEquals(0, second.position(), "borrowed buffers are cleared");
+		assertEquals(0, pool.getFreeCount(4096));
+	}
+
+	@Test
+	void testRetainedBytesAreBounded() {
+		BufferPool pool = new BufferPool(4096, 16384, 8192);
+		pool.release(pool.acquire(1));
+		pool.release(ByteBuffer.allocateDirect(4096));
+		pool.release(ByteBuffer.allocateDirect(4096));
+		assertEquals(2, pool.getFreeCount(4096));
+
+		// Buffers of a size we never hand out are not kept.
+		pool.release(ByteBuffer.allocateDirect(5000));
+		assertEquals(0, pool.getFreeCount(16384));
+	}
+}
@@ -0,0 +1,222 @@
+package edu.northeastern.ccs.im;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testing the FrameParser class.
+ */
+class FrameParserTest {
+
+	/** One message of every layout the protocol uses. */
+	private static final Message[] SAMPLES = {
+			Message.makeSimpleLoginMessage("Cole", "secret"),
+			Message.makeBroadcastMessage("Cole", "hello everyone"),
+			Message.makePrivateMessage("Cole", "Sarah", "hi Sarah"),
+			Message.makeHistoryMessage("Cole", "Sarah", "10"),
+			Message.makeGroupMessage("Cole", "team", "hi team"),
+			Message.makeSearchMessage("Cole", "sent", "Sarah", "2018-01-01", "2019-01-01"),
+			Message.makeParentalControlMessage("Cole", "on"),
+			Message.makeQuitMessage("Cole")
+	};
+
+	/**
+	 * Feed the given bytes to a parser in pieces of the given size, the way
+	 * ScanNetNB does, and collect the messages that come out.
+	 */
+	private static List<Message> parseInPieces(byte[] bytes, int pieceSize) {
+		FrameParser parser = new FrameParser(1024);
+		Queue<Message> messages = new LinkedList<>();
+		ByteBuffer buff = ByteBuffer.allocate(1024);
+		for (int i = 0; i < bytes.length; i += pieceSize) {
+			buff.put(bytes, i, Math.min(pieceSize, bytes.length - i));
+			buff.flip();
+			assertTrue(parser.parse(buff, messages));
+			buff.compact();
+		}
+		assertEquals(0, buff.position(), "no bytes should be left over");
+		return new ArrayList<>(messages);
+	}
+
+	private static byte[] allSamples() {
+		StringBuilder wire = new StringBuilder();
+		for (Message msg : SAMPLES) {
+			wire.append(msg.toString());
+		}
+		return wire.toString().getBytes();
+	}
+
+	@Test
+	void testEveryLayoutInOneRead() {
+		List<Message> parsed = parseInPieces(allSamples(), Integer.MAX_VALUE / 2);
+		assertEquals(SAMPLES.length, parsed.size());
+		for (int i = 0; i < SAMPLES.length; i++) {
+			assertEquals(SAMPLES[i].toString(), parsed.get(i).toString());
+		}
+	}
+
+	@Test
+	void testArbitraryFragmentation() {
+		byte[] bytes = allSamples();
+		for (int pieceSize = 1; pieceSize < 40; pieceSize++) {
+			List<Message> parsed = parseInPieces(bytes, pieceSize);
+			assertEquals(SAMPLES.length, parsed.size(), "pieces of " + pieceSize);
+			for (int i = 0; i < SAMPLES.length; i++) {
+				assertEquals(SAMPLES[i].toString(), parsed.get(i).toString());
+			}
+		}
+	}
+
+	@Test
+	void testFieldsAreDecoded() {
+		List<Message> parsed = parseInPieces(
+				Message.makeSearchMessage("Cole", "both", "Sarah", "a", "b").toString().getBytes(), 3);
+		Message search = parsed.get(0);
+		assertTrue(search.isSearchMessage());
+		assertEquals("Cole", search.getName());
+		assertEquals("both", search.getSentReceivedBoth());
+		assertEquals("Sarah", search.getRecipientName());
+		assertEquals("a", search.getStartTime());
+		assertEquals("b", search.getEndTime());
+
+		parsed = parseInPieces("REG 4 Cole 6 secret".getBytes(), 5);
+		assertTrue(parsed.get(0).isRegister());
+		assertEquals("secret", parsed.get(0).getText());
+	}
+
+	@Test
+	void testGroupChangesCarryThreeArguments() {
+		List<Message> parsed = parseInPieces(
+				"GAD 4 Cole 10 Cole,Sarah 4 teamGUP 4 Cole 5 Sarah 4 team".getBytes(), 7);
+		assertEquals(2, parsed.size());
+		assertTrue(parsed.get(0).isGroupAddMessage());
+		assertTrue(parsed.get(1).isGroupUpdate());
+		assertEquals("Cole", parsed.get(1).getName());
+	}
+
+	@Test
+	void testEmptyArgumentIsNull() {
+		List<Message> parsed = parseInPieces("BCT 4 Cole 0 BCT 4 Cole 2 hi".getBytes(), 2);
+		assertEquals(2, parsed.size());
+		assertNull(parsed.get(0).getText());
+		assertEquals("hi", parsed.get(1).getText());
+	}
+
+	@Test
+	void testUnknownHandleIsSkipped() {
+		List<Message> parsed = parseInPieces("XYZ 4 Cole 2 hiBCT 4 Cole 2 ok".getBytes(), 4);
+		assertEquals(1, parsed.size());
+		assertEquals("ok", parsed.get(0).getText());
+	}
+
+	@Test
+	void testOversizedMessageIsRejected() {
+		FrameParser parser = new FrameParser(64);
+		Queue<Message> messages = new LinkedList<>();
+		ByteBuffer buff = ByteBuffer.wrap("BCT 4 Cole 100 ".getBytes());
+		assertFalse(parser.parse(buff, messages));
+		assertTrue(messages.isEmpty());
+	}
+
+	private static byte[] allSamplesAsBinary() {
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		for (Message msg : SAMPLES) {
+			byte[] frame = WireProtocol.encode(msg, 0);
+			wire.write(frame, 0, frame.length);
+		}
+		return wire.toByteArray();
+	}
+
+	@Test
+	void testBinaryFramesCarryTheSameMessages() {
+		byte[] bytes = allSamplesAsBinary();
+		for (int pieceSize = 1; pieceSize < 40; pieceSize++) {
+			List<Message> parsed = parseInPieces(bytes, pieceSize);
+			assertEquals(SAMPLES.length, parsed.size(), "pieces of " + pieceSize);
+			for (int i = 0; i < SAMPLES.length; i++) {
+				assertEquals(SAMPLES[i].toString(), parsed.get(i).toString());
+			}
+		}
+	}
+
+	@Test
+	void testTextAndBinaryFramesMix() {
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		byte[] text = Message.makeBroadcastMessage("Cole", "text").toString().getBytes();
+		byte[] binary = WireProtocol.encode(Message.makeBroadcastMessage("Cole", "binary"), 0);
+		wire.write(binary, 0, binary.length);
+		wire.write(text, 0, text.length);
+		wire.write(binary, 0, binary.length);
+		List<Message> parsed = parseInPieces(wire.toByteArray(), 5);
+		assertEquals(3, parsed.size());
+		assertEquals("binary", parsed.get(0).getText());
+		assertEquals("text", parsed.get(1).getText());
+		assertEquals("binary", parsed.get(2).getText());
+	}
+
+	@Test
+	void testBinaryLoginRequestsBinaryReplies() {
+		FrameParser parser = new FrameParser(1024);
+		Queue<Message> messages = new LinkedList<>();
+		parser.parse(ByteBuffer.wrap(WireProtocol.encode(
+				Message.makeSimpleLoginMessage("Cole", "secret"), 0)), messages);
+		assertFalse(parser.isBinaryRequested());
+		parser.parse(ByteBuffer.wrap(WireProtocol.encode(
+				Message.makeSimpleLoginMessage("Cole", "secret"), WireProtocol.FLAG_V2)),
+				messages);
+		assertTrue(parser.isBinaryRequested());
+		assertEquals(2, messages.size());
+		assertTrue(messages.peek().isInitialization());
+	}
+
+	@Test
+	void testBinaryCorrelationIdAndUnicode() {
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		byte[] sender = "Cole".getBytes(StandardCharsets.UTF_8);
+		byte[] text = "h\u00e9llo \u2603".getBytes(StandardCharsets.UTF_8);
+		wire.write(WireProtocol.MAGIC);
+		wire.write(WireProtocol.typeCode("BCT"));
+		wire.write(WireProtocol.FLAG_CORRELATION);
+		WireProtocol.writeVarint(wire, 300);
+		WireProtocol.writeVarint(wire, 2);
+		WireProtocol.writeVarint(wire, sender.length);
+		wire.write(sender, 0, sender.length);
+		WireProtocol.writeVarint(wire, text.length);
+		wire.write(text, 0, text.length);
+		List<Message> parsed = parseInPieces(wire.toByteArray(), 1);
+		assertEquals(1, parsed.size());
+		assertEquals("Cole", parsed.get(0).getName());
+		assertEquals("h\u00e9llo \u2603", parsed.get(0).getText());
+	}
+
+	@Test
+	void testOversizedBinaryFrameIsRejected() {
+		ByteArrayOutputStream wire = new ByteArrayOutputStream();
+		wire.write(WireProtocol.MAGIC);
+		wire.write(WireProtocol.typeCode("BCT"));
+		wire.write(0);
+		WireProtocol.writeVarint(wire, 2);
+		WireProtocol.writeVarint(wire, 100);
+		FrameParser parser = new FrameParser(64);
+		assertFalse(parser.parse(ByteBuffer.wrap(wire.toByteArray()), new LinkedList<>()));
+	}
+
+	@Test
+	void testSharedEncodingIsBuiltOnce() {
+		Message msg = Message.makeGroupMessage("Cole", "team", "hello");
+		byte[] frame = WireProtocol.encodeShared(msg);
+		assertSame(frame, WireProtocol.encodeShared(msg));
+		assertArrayEquals(WireProtocol.encode(msg, 0), frame);
+		List<Message> parsed = parseInPieces(frame, 5);
+		assertEquals("hello", parsed.get(0).getText());
+	}
+}
@@ -1,5 +1,7 @@
 package edu.northeastern.ccs.im;
 
+import java.nio.ByteBuffer;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -782,6 +784,72 @@ class MessageTest {
 
   }
 
+  @Test
+  void sharedFrameIsEncodedOnce() {
+    Message msg = Message.makeBroadcastMessage("Cole", "hello everyone");
+    int[] encodings = {0};
+    ByteBuffer first = msg.sharedFrame(m -> {
+      encodings[0]++;
+      return m.getEncoded();
+    });
+    ByteBuffer second = msg.sharedFrame(m -> {
+      encodings[0]++;
+      return m.getEncoded();
+    });
+    assertEquals(1, encodings[0]);
+    assertTrue(first.isReadOnly());
+
+    // Each recipient consumes its own view of the same bytes.
+    byte[] bytes = new byte[first.remaining()];
+    first.get(bytes);
+    assertEquals(msg.toString(), new String(bytes));
+    assertFalse(first.hasRemaining());
+    assertEquals(bytes.length, second.remaining());
+  }
 
-}
+  @Test
+  void encodeWritesTheTextProtocol() {
+    Message[] messages = {
+        Message.makeBroadcastMessage("Cole", "hello everyone"),
+        Message.makePrivateMessage("Cole", "Sarah", null),
+        Message.makeSearchMessage("Cole", "both", "Sarah", "2018-01-01", "2019-01-01"),
+        Message.makeQuitMessage("Cole"),
+        Message.makeBroadcastMessage("Cole", new String(new char[1234]).replace('\0', 'x'))
+    };
+    for (Message msg : messages) {
+      ByteBuffer out = ByteBuffer.allocate(msg.encodedLength() + 2);
+      out.put((byte) '!');
+      msg.encode(out);
+      assertEquals(msg.encodedLength() + 1, out.position());
+      out.flip();
+      out.get();
+      byte[] bytes = new byte[out.remaining()];
+      out.get(bytes);
+      assertEquals(msg.toString(), new String(bytes));
+    }
+  }
 
+  @Test
+  void encodedBytesAreMemoized() {
+    Message msg = Message.makePrivateMessage("Cole", "Sarah", "hi");
+    ByteBuffer first = msg.getEncoded();
+    first.get();
+    ByteBuffer second = msg.getEncoded();
+    assertEquals(msg.encodedLength(), second.remaining());
+    assertTrue(second.isReadOnly());
+    assertEquals("PVT", msg.getHandle());
+  }
+
+  @Test
+  void handlesAreLookedUpDirectly() {
+    for (Message.MessageType type : Message.MessageType.values()) {
+      assertSame(type, Message.MessageType.fromHandle(type.toString()));
+    }
+    assertSame(Message.MessageType.PRIVATE, Message.MessageType.fromHandle('P', 'V', 'T'));
+    assertNull(Message.MessageType.fromHandle("pvt"));
+    assertNull(Message.MessageType.fromHandle("XYZ"));
+    assertNull(Message.MessageType.fromHandle("PVTX"));
+    assertNull(Message.MessageType.fromHandle(null));
+    assertNull(Message.makeMessage("XYZ", "Cole", "hi", null, null));
+  }
+}
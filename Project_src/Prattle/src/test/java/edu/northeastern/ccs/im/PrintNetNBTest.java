@@ -8,7 +8,13 @@ import org.junit.jupiter.api.TestInstance;
 import java.io.IOException;
 
 import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -218,6 +224,119 @@ class PrintNetNBTest {
     }
   }
 
+  /**
+   * Testing that channel messages are filtered when their sender has parental controls on, the
+   * same as broadcasts, and keep the channel they were sent on.
+   */
+  @Test
+  void testInappropriateLanguageOnChannel() throws Exception {
+    UserAttributeCache.getShared().setParentalControl("pottyMouth", "on");
+    UserAttributeCache.getShared().setParentalControl("Cole", "off");
+    Method method = PrintNetNB.class.getDeclaredMethod("inappropriateLanguage", Message.class);
+    method.setAccessible(true);
+
+    Message output = (Message) method.invoke(printNetNB1,
+        Message.makeChannelMessage("pottyMouth", "news", "oh shit"));
+    assertTrue(output.isChannelMessage());
+    assertEquals("oh ****", output.getText());
+    assertEquals("pottyMouth", output.getName());
+    assertEquals("news", output.getRecipientName());
+
+    output = (Message) method.invoke(printNetNB1,
+        Message.makeChannelMessage("Cole", "news", "oh shit"));
+    assertEquals("oh shit", output.getText());
+  }
+
+  /**
+   * Testing that output the peer is not reading is queued rather than dropped, that the write
+   * interest is asked for, and that flushing sends the rest once the peer catches up.
+   */
+  @Test
+  void testFullSocketQueuesOutput() throws IOException {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress(5002));
+    SocketNB client = new SocketNB("127.0.0.1", 5002);
+    SocketChannel peer = server.accept();
+    PrintNetNB printer = new PrintNetNB(client);
+    AtomicInteger interest = new AtomicInteger();
+    printer.setWriteInterest(interest::incrementAndGet);
+
+    char[] filler = new char[16 * 1024];
+    Arrays.fill(filler, 'x');
+    Message big = Message.makeAcknowledgeMessage("Cole", new String(filler));
+    int sent = 0;
+    while (!printer.hasPendingOutput()) {
+      assertTrue(printer.print(big), "a full socket must not drop the user");
+      sent++;
+    }
+    assertTrue(interest.get() > 0);
+
+    // The message being written is kept; untouched ones can be dropped.
+    int partial = printer.getPendingCount();
+    printer.queue(big);
+    printer.queue(big);
+    assertEquals(partial + 2, printer.getPendingCount());
+    assertEquals(big.toString().length(), printer.dropOldest());
+    assertEquals(1, printer.discardUnsent());
+    assertEquals(partial, printer.getPendingCount());
+    assertEquals(-1, printer.dropOldest());
+    assertTrue(printer.getPendingBytes() > 0);
+
+    long expected = (long) sent * big.toString().length();
+    long received = 0;
+    ByteBuffer buff = ByteBuffer.allocate(64 * 1024);
+    while (received < expected) {
+      buff.clear();
+      received += peer.read(buff);
+      assertTrue(printer.flush());
+    }
+    assertFalse(printer.hasPendingOutput());
+    assertEquals(expected, received);
+
+    client.close();
+    peer.close();
+    server.close();
+  }
+
+  /**
+   * Testing that queued messages are written in batches no larger than the limit, and that the
+   * write interest is asked for while more batches remain.
+   */
+  @Test
+  void testQueuedMessagesAreBatched() throws IOException {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress(5003));
+    SocketNB client = new SocketNB("127.0.0.1", 5003);
+    SocketChannel peer = server.accept();
+    PrintNetNB printer = new PrintNetNB(client.getSocket(), 4, 1024);
+    AtomicInteger interest = new AtomicInteger();
+    printer.setWriteInterest(interest::incrementAndGet);
+
+    for (int i = 0; i < 10; i++) {
+      printer.queue(messageAcknowledge);
+    }
+    int flushes = 0;
+    while (printer.hasPendingOutput()) {
+      assertTrue(printer.flush());
+      flushes++;
+    }
+    assertEquals(3, flushes);
+    assertEquals(2, interest.get());
+
+    long expected = 10L * messageAcknowledge.toString().length();
+    long received = 0;
+    ByteBuffer buff = ByteBuffer.allocate(1024);
+    while (received < expected) {
+      buff.clear();
+      received += peer.read(buff);
+    }
+    assertEquals(expected, received);
+
+    client.close();
+    peer.close();
+    server.close();
+  }
+
   /**
    * Turns the parental controls on or off for the given user.
    *
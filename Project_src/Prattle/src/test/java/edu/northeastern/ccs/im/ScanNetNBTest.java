@@ -5,8 +5,11 @@ import static org.junit.jupiter.api.Assertions.*;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -121,6 +124,95 @@ class ScanNetNBTest {
 		}
 	}
 
+	@Test
+	void testReadsWithoutSelector() throws IOException, InterruptedException {
+		SocketNB sock = new SocketNB("127.0.0.1", 4546);
+		SocketChannel accepted = null;
+		while (accepted == null) {
+			accepted = socket.accept();
+		}
+		accepted.configureBlocking(false);
+		ScanNetNB tester = new ScanNetNB(accepted);
+		assertFalse(tester.hasNextMessage(), "nothing has been sent yet");
+
+		sock.getSocket().write(ByteBuffer.wrap(
+				Message.makeBroadcastMessage("me", "hi").toString().getBytes()));
+		for (int i = 0; i < 50 && !tester.hasNextMessage(); i++) {
+			Thread.sleep(10);
+		}
+		assertTrue(tester.hasBufferedMessages());
+		assertEquals("hi", tester.nextMessage().getText());
+
+		sock.close();
+		for (int i = 0; i < 50 && !tester.isEndOfStream(); i++) {
+			tester.hasNextMessage();
+			Thread.sleep(10);
+		}
+		assertTrue(tester.isEndOfStream(), "client hung up");
+		accepted.close();
+	}
+
+	@Test
+	void testLargeAndSplitMessages() throws IOException, InterruptedException {
+		SocketNB sock = new SocketNB("127.0.0.1", 4546);
+		SocketChannel accepted = null;
+		while (accepted == null) {
+			accepted = socket.accept();
+		}
+		accepted.configureBlocking(false);
+		ScanNetNB tester = new ScanNetNB(accepted);
+
+		// A message far larger than the smallest buffer, sent in two pieces.
+		char[] filler = new char[200 * 1024];
+		Arrays.fill(filler, 'x');
+		byte[] bytes = Message.makeBroadcastMessage("me", new String(filler))
+				.toString().getBytes();
+		int half = bytes.length / 2;
+		writeFully(sock, ByteBuffer.wrap(bytes, 0, half));
+		Thread.sleep(50);
+		assertFalse(tester.hasNextMessage(), "only half of the message has arrived");
+		writeFully(sock, ByteBuffer.wrap(bytes, half, bytes.length - half));
+		for (int i = 0; i < 50 && !tester.hasNextMessage(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(filler.length, tester.nextMessage().getText().length());
+		assertFalse(tester.isFrameTooLarge());
+
+		sock.close();
+		accepted.close();
+	}
+
+	@Test
+	void testRejectsOversizedMessage() throws IOException, InterruptedException {
+		SocketNB sock = new SocketNB("127.0.0.1", 4546);
+		SocketChannel accepted = null;
+		while (accepted == null) {
+			accepted = socket.accept();
+		}
+		accepted.configureBlocking(false);
+		ScanNetNB tester = new ScanNetNB(accepted, new BufferPool(1024, 4096, 8192));
+
+		char[] filler = new char[8192];
+		Arrays.fill(filler, 'x');
+		writeFully(sock, ByteBuffer.wrap(Message.makeBroadcastMessage("me",
+				new String(filler)).toString().getBytes()));
+		for (int i = 0; i < 50 && !tester.isEndOfStream(); i++) {
+			assertFalse(tester.hasNextMessage());
+			Thread.sleep(10);
+		}
+		assertTrue(tester.isFrameTooLarge());
+		assertTrue(tester.isEndOfStream());
+
+		sock.close();
+		accepted.close();
+	}
+
+	private static void writeFully(SocketNB sock, ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			sock.getSocket().write(bytes);
+		}
+	}
+
 	@Test
 	void testNextMessage() {
 		SocketNB sock = null;
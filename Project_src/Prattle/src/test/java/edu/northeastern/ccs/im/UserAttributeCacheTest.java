@@ -0,0 +1,131 @@
+package edu.northeastern.ccs.im;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the UserAttributeCache class.
+ */
+class UserAttributeCacheTest {
+
+    /** User store held in a map, counting how often it is read. */
+    private static class StubUserCrud extends UserCrudImpl {
+        private final Map<String, String> status = new HashMap<>();
+        private int reads;
+        private boolean down;
+
+        @Override
+        public String getParentalControl(String username) throws SQLException {
+            reads++;
+            if (down) {
+                throw new SQLException("database is down");
+            }
+            return status.get(username);
+        }
+    }
+
+    @Test
+    void statusIsReadOnceRegardlessOfCase() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.status.put("cole", "on");
+        crud.status.put("sarah", "off");
+        UserAttributeCache cache = new UserAttributeCache(crud);
+
+        assertTrue(cache.isParentalControl("Cole"));
+        assertTrue(cache.isParentalControl("COLE"));
+        assertFalse(cache.isParentalControl("sarah"));
+        assertFalse(cache.isParentalControl(null));
+        // Names that are not users are remembered too.
+        assertFalse(cache.isParentalControl("team"));
+        assertFalse(cache.isParentalControl("team"));
+        assertEquals(3, crud.reads);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    void changesAndLoginsUpdateTheCache() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.status.put("cole", "off");
+        UserAttributeCache cache = new UserAttributeCache(crud);
+
+        cache.load("cole");
+        assertFalse(cache.isParentalControl("cole"));
+        cache.setParentalControl("Cole", "on");
+        assertTrue(cache.isParentalControl("cole"));
+        assertEquals(1, crud.reads);
+
+        // A user registering under a name that was not a user is read again.
+        assertFalse(cache.isParentalControl("avik"));
+        crud.status.put("avik", "on");
+        cache.forget("avik");
+        assertTrue(cache.isParentalControl("avik"));
+
+        // Logging in reads the user afresh.
+        crud.status.put("cole", "off");
+        cache.load("cole");
+        assertFalse(cache.isParentalControl("cole"));
+    }
+
+    @Test
+    void unreadableNamesFailClosedAndAreReadAgainLater() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.status.put("sarah", "off");
+        UserAttributeCache cache = new UserAttributeCache(crud, 0);
+
+        crud.down = true;
+        assertTrue(cache.isParentalControl("sarah"));
+        assertTrue(cache.isParentalControl("team"));
+        assertEquals(0, cache.size());
+
+        // Both are read again once the database is back.
+        crud.down = false;
+        assertFalse(cache.isParentalControl("sarah"));
+        assertFalse(cache.isParentalControl("team"));
+        assertEquals(4, crud.reads);
+    }
+
+    @Test
+    void anOutageDoesNotReadEveryLookup() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.status.put("cole", "off");
+        UserAttributeCache cache = new UserAttributeCache(crud, 60000);
+        cache.load("cole");
+
+        crud.down = true;
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cache.isParentalControl("sarah"));
+        }
+        // What was read before the outage is still served.
+        cache.load("cole");
+        assertFalse(cache.isParentalControl("cole"));
+        assertEquals(3, crud.reads);
+
+        // A change made here does not wait for the retry.
+        cache.setParentalControl("sarah", "off");
+        assertFalse(cache.isParentalControl("sarah"));
+    }
+
+    @Test
+    void theLeastRecentlyUsedNonUsersAreForgotten() {
+        StubUserCrud crud = new StubUserCrud();
+        UserAttributeCache cache = new UserAttributeCache(crud);
+
+        for (int i = 0; i <= UserAttributeCache.MAX_UNKNOWN_NAMES; i++) {
+            assertFalse(cache.isParentalControl("group" + i));
+            // The first is kept in use, so it is never the one forgotten.
+            assertFalse(cache.isParentalControl("group0"));
+        }
+        int reads = crud.reads;
+        assertFalse(cache.isParentalControl("group0"));
+        assertFalse(cache.isParentalControl("group" + UserAttributeCache.MAX_UNKNOWN_NAMES));
+        assertEquals(reads, crud.reads);
+        // The next oldest made room for the last.
+        assertFalse(cache.isParentalControl("group1"));
+        assertEquals(reads + 1, crud.reads);
+    }
+}
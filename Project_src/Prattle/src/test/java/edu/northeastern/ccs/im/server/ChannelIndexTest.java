@@ -0,0 +1,52 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ChannelIndex class.
+ */
+class ChannelIndexTest {
+
+    @Test
+    void subscribersAreFoundRegardlessOfCase() throws IOException {
+        ChannelIndex index = new ChannelIndex();
+        ClientRunnable cole = new ClientRunnable(SocketChannel.open());
+        ClientRunnable sarah = new ClientRunnable(SocketChannel.open());
+
+        assertTrue(index.subscribe("Sports", cole));
+        assertTrue(index.subscribe("sports", sarah));
+        assertTrue(index.subscribe("sports", sarah));
+        assertEquals(2, index.getSubscribers("SPORTS").size());
+        assertTrue(index.getSubscribers("news").isEmpty());
+        assertTrue(index.getSubscribers(null).isEmpty());
+        // Everyone is on the global channel already.
+        assertFalse(index.subscribe("Global", cole));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void channelsAreLeftOneAtATimeOrAllAtOnce() throws IOException {
+        ChannelIndex index = new ChannelIndex();
+        ClientRunnable cole = new ClientRunnable(SocketChannel.open());
+        ClientRunnable sarah = new ClientRunnable(SocketChannel.open());
+        index.subscribe("sports", cole);
+        index.subscribe("news", cole);
+        index.subscribe("news", sarah);
+
+        assertTrue(index.unsubscribe("Sports", cole));
+        assertFalse(index.unsubscribe("sports", cole));
+        assertFalse(index.unsubscribe("weather", sarah));
+        assertEquals(1, index.size());
+
+        index.unsubscribeAll(cole);
+        assertFalse(index.getSubscribers("news").contains(cole));
+        assertTrue(index.getSubscribers("news").contains(sarah));
+        index.unsubscribeAll(sarah);
+        assertEquals(0, index.size());
+    }
+}
@@ -0,0 +1,81 @@
+package edu.northeastern.ccs.im.server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.northeastern.ccs.im.Message;
+
+/**
+ * Tests that the messages waiting for a client that does not read them are
+ * kept within our limits.
+ */
+class ClientOutboundQueueTest {
+	ServerSocketChannel serverSocket;
+	SocketChannel clientSide;
+	ClientRunnable runnable;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		serverSocket = ServerSocketChannel.open();
+		serverSocket.socket().bind(new InetSocketAddress(5004));
+		clientSide = SocketChannel.open(new InetSocketAddress("127.0.0.1", 5004));
+		runnable = new ClientRunnable(serverSocket.accept());
+	}
+
+	@AfterEach
+	void tearDown() throws IOException {
+		runnable.terminateClient();
+		clientSide.close();
+		serverSocket.close();
+	}
+
+	@Test
+	void testQueueDepthIsReported() {
+		Message msg = Message.makeBroadcastMessage("Cole", "hello everyone");
+		runnable.enqueueMessage(msg);
+		runnable.enqueueMessage(msg);
+		assertEquals(2, runnable.getQueuedMessageCount());
+		assertEquals(2L * msg.encodedLength(), runnable.getQueuedBytes());
+		assertEquals(0, runnable.getDroppedCount());
+	}
+
+	@Test
+	void testOldestMessagesAreDroppedWhenFull() {
+		// Nobody reads from clientSide, so nothing ever leaves the queue.
+		int sent = 5000;
+		for (int i = 0; i < sent; i++) {
+			runnable.enqueueMessage(Message.makeBroadcastMessage("Cole", "message " + i));
+		}
+		assertEquals(4096, runnable.getQueuedMessageCount());
+		assertEquals(sent - 4096, runnable.getDroppedCount());
+	}
+
+	@Test
+	void testByteLimitIsEnforced() {
+		String text = new String(new char[64 * 1024]).replace('\0', 'x');
+		Message big = Message.makeBroadcastMessage("Cole", text);
+		for (int i = 0; i < 100; i++) {
+			runnable.enqueueMessage(big);
+		}
+		assertTrue(runnable.getQueuedBytes() <= 4L * 1024 * 1024);
+		assertEquals(4L * 1024 * 1024 / big.encodedLength(), runnable.getQueuedMessageCount());
+	}
+
+	@Test
+	void testOfferReportsAMessageThatDidNotFit() {
+		String text = new String(new char[64 * 1024]).replace('\0', 'x');
+		assertTrue(runnable.offerMessage(Message.makePrivateMessage("Cole", "Sarah", text)));
+		// Too large to fit even once everything else is dropped.
+		String huge = new String(new char[5 * 1024 * 1024]).replace('\0', 'x');
+		assertFalse(runnable.offerMessage(Message.makePrivateMessage("Cole", "Sarah", huge)));
+		assertEquals(0, runnable.getQueuedMessageCount());
+	}
+}
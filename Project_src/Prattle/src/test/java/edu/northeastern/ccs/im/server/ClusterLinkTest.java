@@ -0,0 +1,187 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import edu.northeastern.ccs.im.Message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ClusterLink class.
+ */
+class ClusterLinkTest {
+
+    private static final long WAIT_MS = 5000;
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private static final String SECRET = "s3cret";
+
+    /** Wait until the condition holds, or fail once it has taken too long. */
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void presenceIsPublishedAndMessagesForwarded() throws IOException, InterruptedException {
+        Map<String, Message> delivered = new ConcurrentHashMap<>();
+        Set<String> onB = ConcurrentHashMap.newKeySet();
+        ClusterLink b = new ClusterLink("b", LOOPBACK, 0, SECRET, Collections.emptyList(), 10,
+                delivered::put, onB::contains);
+        ClusterLink a = new ClusterLink("a", LOOPBACK, 0, SECRET,
+                Collections.singletonList(new InetSocketAddress("localhost", b.getPort())),
+                10, (user, msg) -> fail("nothing is forwarded to a"), user -> false);
+        try {
+            // Users who came before the link are sent when it is made.
+            onB.add("cole");
+            b.presenceChanged("Cole");
+            b.start();
+            a.start();
+            await(() -> a.getNodes("cole").contains("b"));
+            assertEquals(1, a.size());
+            assertEquals(1, b.size());
+
+            // Later arrivals and departures follow in batches.
+            onB.add("sarah");
+            b.presenceChanged("sarah");
+            onB.remove("cole");
+            b.presenceChanged("cole");
+            await(() -> a.getNodes("SARAH").contains("b"));
+            await(() -> a.getNodes("cole").isEmpty());
+
+            assertFalse(a.forward("cole", Message.makePrivateMessage("sarah", "cole", "hi")));
+            assertTrue(a.forward("sarah", Message.makePrivateMessage("cole", "sarah", "hello")));
+            await(() -> delivered.containsKey("sarah"));
+            Message msg = delivered.get("sarah");
+            assertTrue(msg.isPrivateMessage());
+            assertEquals("cole", msg.getName());
+            assertEquals("hello", msg.getText());
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    @Test
+    void usersOfALostNodeAreForgotten() throws IOException, InterruptedException {
+        ClusterLink b = new ClusterLink("b", LOOPBACK, 0, SECRET, Collections.emptyList(), 10,
+                (user, msg) -> { }, "cole"::equals);
+        ClusterLink a = new ClusterLink("a", LOOPBACK, 0, SECRET,
+                Collections.singletonList(new InetSocketAddress("localhost", b.getPort())),
+                10, (user, msg) -> { }, user -> false);
+        try {
+            b.start();
+            a.start();
+            b.presenceChanged("cole");
+            await(() -> !a.getNodes("cole").isEmpty());
+
+            b.stop();
+            await(() -> a.getNodes("cole").isEmpty());
+            assertEquals(0, a.size());
+        } finally {
+            a.stop();
+        }
+    }
+
+    @Test
+    void presenceIsPublishedAsItIsWhenFlushed() throws IOException, InterruptedException {
+        Set<String> onB = ConcurrentHashMap.newKeySet();
+        ClusterLink b = new ClusterLink("b", LOOPBACK, 0, SECRET, Collections.emptyList(), 10,
+                (user, msg) -> { }, onB::contains);
+        ClusterLink a = new ClusterLink("a", LOOPBACK, 0, SECRET,
+                Collections.singletonList(new InetSocketAddress("localhost", b.getPort())),
+                10, (user, msg) -> { }, user -> false);
+        try {
+            b.start();
+            a.start();
+            await(() -> a.size() == 1 && b.size() == 1);
+
+            // A client logging out as another logs in leaves the user here,
+            // whatever order the two changes are reported in.
+            onB.add("cole");
+            b.presenceChanged("cole");
+            b.presenceChanged("cole");
+            onB.add("sarah");
+            b.presenceChanged("sarah");
+            await(() -> !a.getNodes("sarah").isEmpty());
+            assertTrue(a.getNodes("cole").contains("b"));
+            assertEquals(2, b.getLoad("b"));
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+
+    @Test
+    void nodesWithoutTheSecretAreNotLinked() throws IOException, InterruptedException {
+        ClusterLink b = new ClusterLink("b", LOOPBACK, 0, SECRET, Collections.emptyList(), 10,
+                (user, msg) -> { }, "cole"::equals);
+        ClusterLink a = new ClusterLink("a", LOOPBACK, 0, "guess",
+                Collections.singletonList(new InetSocketAddress("localhost", b.getPort())),
+                10, (user, msg) -> { }, user -> false);
+        ClusterLink c = new ClusterLink("c", LOOPBACK, 0, SECRET,
+                Collections.singletonList(new InetSocketAddress("localhost", b.getPort())),
+                10, (user, msg) -> { }, user -> false);
+        try {
+            b.start();
+            a.start();
+            c.start();
+            b.presenceChanged("cole");
+            await(() -> !c.getNodes("cole").isEmpty());
+            // a has had time to dial b, but never got past the handshake.
+            assertEquals(1, b.size());
+            assertEquals(0, a.size());
+            assertTrue(a.getNodes("cole").isEmpty());
+        } finally {
+            a.stop();
+            b.stop();
+            c.stop();
+        }
+    }
+
+    @Test
+    void changesArePublishedToTheOtherNodes() throws IOException, InterruptedException {
+        List<String> changes = new CopyOnWriteArrayList<>();
+        ClusterLink b = new ClusterLink("b", LOOPBACK, 0, SECRET, Collections.emptyList(), 10,
+                (user, msg) -> { }, user -> false);
+        ClusterLink a = new ClusterLink("a", LOOPBACK, 0, SECRET,
+                Collections.singletonList(new InetSocketAddress("localhost", b.getPort())),
+                10, (user, msg) -> { }, user -> false);
+        a.setChangeListener((change, name) -> changes.add(change + ":" + name));
+        try {
+            b.start();
+            a.start();
+            // Anything may have changed while the nodes were apart.
+            await(() -> changes.size() == ClusterLink.Change.values().length);
+            assertTrue(changes.contains("USER:null"));
+            assertTrue(changes.contains("GROUP:null"));
+            assertTrue(changes.contains("ATTRIBUTES:null"));
+
+            b.publish(ClusterLink.Change.USER, "Cole");
+            b.publish(ClusterLink.Change.GROUP, "team");
+            b.publish(ClusterLink.Change.ATTRIBUTES, "sarah");
+            await(() -> changes.size() == ClusterLink.Change.values().length + 3);
+            assertTrue(changes.contains("USER:cole"));
+            assertTrue(changes.contains("GROUP:team"));
+            assertTrue(changes.contains("ATTRIBUTES:sarah"));
+        } finally {
+            a.stop();
+            b.stop();
+        }
+    }
+}
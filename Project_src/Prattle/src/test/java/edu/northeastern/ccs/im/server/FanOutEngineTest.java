@@ -0,0 +1,102 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the FanOutEngine class.
+ */
+class FanOutEngineTest {
+
+    private static List<String> users(int count) {
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add("user" + i);
+        }
+        return users;
+    }
+
+    @Test
+    void smallGroupsAreDeliveredOnTheLanes() throws Exception {
+        FanOutEngine engine = new FanOutEngine(4);
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+        Thread caller = Thread.currentThread();
+
+        engine.deliver(users(9), user -> {
+            assertNotSame(caller, Thread.currentThread());
+            seen.add(user);
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals(9, seen.size());
+        assertTrue(seen.containsAll(users(9)));
+        assertEquals(1, engine.getFanOutCount());
+        assertEquals(9, engine.getLargest());
+    }
+
+    @Test
+    void largeAndSmallGroupsKeepTheOrderOfEachRecipient() throws Exception {
+        FanOutEngine engine = new FanOutEngine(4);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        List<String> large = users(1000);
+        List<String> small = users(3);
+
+        // The members of the small group are also in the large one.
+        for (int msg = 0; msg < 6; msg++) {
+            int number = msg;
+            engine.deliver((msg % 2 == 0) ? large : small, user -> received
+                    .computeIfAbsent(user, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(number));
+        }
+        engine.deliver(large, user -> { }).get(10, TimeUnit.SECONDS);
+
+        for (String user : small) {
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), received.get(user));
+        }
+        assertEquals(Arrays.asList(0, 2, 4), received.get("user999"));
+    }
+
+    @Test
+    void largeGroupsKeepTheOrderOfEachRecipient() throws Exception {
+        FanOutEngine engine = new FanOutEngine(4);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        List<String> users = users(1000);
+
+        for (int msg = 0; msg < 5; msg++) {
+            int number = msg;
+            engine.deliver(users, user -> received
+                    .computeIfAbsent(user, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(number));
+        }
+        engine.deliver(users, user -> { }).get(10, TimeUnit.SECONDS);
+
+        assertEquals(1000, received.size());
+        for (List<Integer> messages : received.values()) {
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), messages);
+        }
+        assertEquals(6, engine.getParallelCount());
+        assertEquals(6000, engine.getRecipientCount());
+    }
+
+    @Test
+    void oneFailedDeliveryDoesNotStopTheRest() throws Exception {
+        FanOutEngine engine = new FanOutEngine(2);
+        List<String> seen = Collections.synchronizedList(new ArrayList<>());
+
+        engine.deliver(users(100), user -> {
+            if (user.equals("user7")) {
+                throw new IllegalStateException("gone");
+            }
+            seen.add(user);
+        }).get(10, TimeUnit.SECONDS);
+        assertEquals(99, seen.size());
+        assertTrue(engine.report().startsWith("fan-out load: 1 msgs, 1 parallel"));
+    }
+}
@@ -0,0 +1,112 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import edu.northeastern.ccs.im.Group;
+import edu.northeastern.ccs.im.GroupCrud;
+import edu.northeastern.ccs.im.User;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the GroupMembershipCache class.
+ */
+class GroupMembershipCacheTest {
+
+    /** Group store holding a single group, counting how often it is read. */
+    private static class StubGroupCrud implements GroupCrud {
+        private final List<User> members = new ArrayList<>();
+        private int reads;
+
+        @Override
+        public void addGroup(Group group) {
+        }
+
+        @Override
+        public Boolean getGroup(Group group) {
+            return "team".equalsIgnoreCase(group.getGroupName());
+        }
+
+        @Override
+        public void updateGroup(Group group) {
+        }
+
+        @Override
+        public void deleteGroup(Group group) {
+        }
+
+        @Override
+        public List<User> getUsers(Group group) {
+            reads++;
+            return getGroup(group) ? members : Collections.<User>emptyList();
+        }
+    }
+
+    private static User user(String name) {
+        User user = new User();
+        user.setUsername(name);
+        return user;
+    }
+
+    @Test
+    void membersAreReadOnce() {
+        StubGroupCrud crud = new StubGroupCrud();
+        crud.members.add(user("Cole"));
+        crud.members.add(user("sarah"));
+        GroupMembershipCache cache = new GroupMembershipCache(crud);
+
+        assertTrue(cache.isMember("Team", "cole"));
+        assertTrue(cache.isMember("team", "SARAH"));
+        assertFalse(cache.isMember("team", "Rahul"));
+        assertFalse(cache.isMember("team", null));
+        assertEquals(1, crud.reads);
+        assertTrue(cache.getMembers(null).isEmpty());
+    }
+
+    @Test
+    void changesAreWrittenThrough() {
+        StubGroupCrud crud = new StubGroupCrud();
+        crud.members.add(user("Cole"));
+        GroupMembershipCache cache = new GroupMembershipCache(crud);
+        cache.getMembers("team");
+
+        cache.membersAdded("TEAM", Arrays.asList(user("Sarah")));
+        assertEquals(2, cache.getMembers("team").size());
+        cache.groupCreated("Other", Arrays.asList(user("sarah"), user("Rahul")));
+        assertTrue(cache.isMember("other", "rahul"));
+        // Adding to a group that is not cached leaves it to be read later.
+        cache.membersAdded("unknown", Arrays.asList(user("Cole")));
+        assertEquals(2, cache.size());
+
+        cache.userDeleted("SARAH");
+        assertFalse(cache.isMember("team", "sarah"));
+        assertFalse(cache.isMember("other", "sarah"));
+        assertTrue(cache.isMember("team", "cole"));
+
+        cache.groupDeleted("Other");
+        assertFalse(cache.isMember("other", "rahul"));
+        // A deleted group is read again if it is asked for.
+        assertEquals(2, crud.reads);
+    }
+
+    @Test
+    void emptyReadsAreNotCached() {
+        StubGroupCrud crud = new StubGroupCrud();
+        GroupMembershipCache cache = new GroupMembershipCache(crud);
+
+        assertTrue(cache.getMembers("nobody").isEmpty());
+        // The read of a real group failed, or it had no members yet.
+        assertTrue(cache.getMembers("team").isEmpty());
+        assertEquals(0, cache.size());
+
+        crud.members.add(user("Cole"));
+        assertTrue(cache.isMember("team", "cole"));
+        assertEquals(1, cache.size());
+        assertEquals(3, crud.reads);
+    }
+}
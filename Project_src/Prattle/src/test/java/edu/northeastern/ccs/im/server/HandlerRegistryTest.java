@@ -0,0 +1,67 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.northeastern.ccs.im.Message;
+import edu.northeastern.ccs.im.Message.MessageType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the table that picks the handler for each message type.
+ */
+class HandlerRegistryTest {
+
+    @Test
+    void dispatchGoesToTheHandlerForTheType() {
+        HandlerRegistry registry = new HandlerRegistry();
+        List<Message> handled = new ArrayList<>();
+        registry.register((client, msg) -> handled.add(msg),
+                MessageType.PRIVATE, MessageType.GROUP);
+
+        Message pvt = Message.makePrivateMessage("Cole", "Sarah", "hi");
+        Message grp = Message.makeGroupMessage("Cole", "team", "hi");
+        assertTrue(registry.dispatch(null, pvt));
+        assertTrue(registry.dispatch(null, grp));
+        assertFalse(registry.dispatch(null, Message.makeBroadcastMessage("Cole", "hi")));
+
+        assertEquals(2, handled.size());
+        assertSame(pvt, handled.get(0));
+        assertEquals(1, registry.getCount(MessageType.PRIVATE));
+        assertEquals(1, registry.getCount(MessageType.GROUP));
+        assertEquals(0, registry.getCount(MessageType.BROADCAST));
+        assertTrue(registry.report().contains("PVT=1 msgs/"));
+        assertFalse(registry.report().contains("BCT"));
+    }
+
+    @Test
+    void failingHandlersAreStillCounted() {
+        HandlerRegistry registry = new HandlerRegistry();
+        registry.register((client, msg) -> {
+            throw new IllegalStateException("boom");
+        }, MessageType.RECALL);
+        assertThrows(IllegalStateException.class,
+                () -> registry.dispatch(null, Message.makeRecallMessage("Cole", "hi")));
+        assertEquals(1, registry.getCount(MessageType.RECALL));
+    }
+
+    @Test
+    void defaultRegistryHandlesEveryClientMessage() {
+        HandlerRegistry registry = HandlerRegistry.createDefault();
+        MessageType[] clientTypes = {MessageType.BROADCAST, MessageType.UPDATE,
+                MessageType.DELETE, MessageType.PRIVATE, MessageType.RECALL,
+                MessageType.GROUPADD, MessageType.GROUPUPDATE,
+                MessageType.GROUPDELETE, MessageType.GROUP, MessageType.HISTORY,
+                MessageType.DUPING, MessageType.SEARCH,
+                MessageType.PARENTAL_CONTROL, MessageType.QUIT};
+        for (MessageType type : clientTypes) {
+            assertNotNull(registry.getHandler(type), type.toString());
+        }
+        assertNull(registry.getHandler(MessageType.ACKNOWLEDGE));
+        assertSame(registry.getHandler(MessageType.GROUPADD),
+                registry.getHandler(MessageType.GROUPDELETE));
+    }
+}
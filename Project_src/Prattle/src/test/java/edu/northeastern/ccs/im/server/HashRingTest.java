@@ -0,0 +1,48 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HashRing class.
+ */
+class HashRingTest {
+
+    @Test
+    void usersAreSpreadOverTheNodesRegardlessOfCase() {
+        HashRing ring = new HashRing(Arrays.asList("a", "b", "c"), HashRing.DEFAULT_REPLICAS);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            counts.merge(ring.nodeFor("user" + i), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        for (int count : counts.values()) {
+            assertTrue(count > 700, "uneven spread " + counts);
+        }
+        assertEquals(ring.nodeFor("Cole"), ring.nodeFor("cole"));
+        assertNull(new HashRing(Collections.emptyList(), 10).nodeFor("cole"));
+        assertNull(ring.nodeFor(null));
+    }
+
+    @Test
+    void addingANodeMovesOnlyTheUsersItTakes() {
+        HashRing before = new HashRing(Arrays.asList("a", "b"), HashRing.DEFAULT_REPLICAS);
+        HashRing after = new HashRing(Arrays.asList("a", "b", "c"), HashRing.DEFAULT_REPLICAS);
+        int moved = 0;
+        for (int i = 0; i < 3000; i++) {
+            String was = before.nodeFor("user" + i);
+            String now = after.nodeFor("user" + i);
+            if (!was.equals(now)) {
+                assertEquals("c", now);
+                moved++;
+            }
+        }
+        assertTrue(moved > 0 && moved < 1500, moved + " users moved");
+    }
+}
@@ -0,0 +1,66 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the HomeRouter class.
+ */
+class HomeRouterTest {
+
+    private final HashRing ring = new HashRing(Arrays.asList("a", "b", "c"),
+            HashRing.DEFAULT_REPLICAS);
+    private final Map<String, String> addresses = new LinkedHashMap<>();
+    private final Map<String, Integer> loads = new HashMap<>();
+
+    HomeRouterTest() {
+        addresses.put("a", "localhost:4545");
+        addresses.put("b", "localhost:4547");
+        addresses.put("c", "localhost:4549");
+        loads.put("a", 10);
+        loads.put("b", 10);
+        loads.put("c", 10);
+    }
+
+    /** Find a user whose home is the given node. */
+    private String userAt(String node) {
+        for (int i = 0; ; i++) {
+            if (node.equals(ring.nodeFor("user" + i))) {
+                return "user" + i;
+            }
+        }
+    }
+
+    private HomeRouter router(String self) {
+        return new HomeRouter(ring, addresses, self,
+                node -> loads.getOrDefault(node, -1), 5);
+    }
+
+    @Test
+    void usersAreSentToTheirHomeNode() {
+        assertNull(router("a").redirectFor(userAt("a")));
+        assertEquals("localhost:4547", router("a").redirectFor(userAt("b")));
+        assertEquals("b", router("a").homeOf(userAt("b")));
+    }
+
+    @Test
+    void busyOrMissingHomesArePassedOver() {
+        String cole = userAt("b");
+        // Home is down: stay, as this node is not busy.
+        loads.remove("b");
+        assertNull(router("a").redirectFor(cole));
+        // Home is much busier than this node: stay.
+        loads.put("b", 100);
+        assertNull(router("a").redirectFor(cole));
+        // Both are busy: go to the least loaded node, and stay there.
+        loads.put("a", 100);
+        assertEquals("localhost:4549", router("a").redirectFor(cole));
+        assertNull(router("c").redirectFor(cole));
+    }
+}
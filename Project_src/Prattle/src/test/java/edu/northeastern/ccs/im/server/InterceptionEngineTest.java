@@ -0,0 +1,104 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Consumer;
+
+import edu.northeastern.ccs.im.Message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the InterceptionEngine class.
+ */
+class InterceptionEngineTest {
+
+    @Test
+    void rulesMatchUsersAndGroupsRegardlessOfCase() {
+        InterceptionEngine engine = new InterceptionEngine(Collections.<Consumer<Message>>emptyList());
+        assertTrue(engine.isEmpty());
+        assertFalse(engine.matchesPrivate("cole", "sarah"));
+        assertFalse(engine.matchesGroup("team", Arrays.asList("cole", "sarah")));
+
+        engine.addUsers(Collections.singletonList("Avik"));
+        assertTrue(engine.matchesPrivate("AVIK", "sarah"));
+        assertTrue(engine.matchesPrivate("cole", "avik"));
+        assertFalse(engine.matchesPrivate("cole", "sarah"));
+        assertTrue(engine.matchesGroup("other", Arrays.asList("cole", "avik")));
+
+        engine.addGroup("Team", Arrays.asList("Tanmay"));
+        assertTrue(engine.matchesGroup("TEAM", Collections.<String>emptyList()));
+        assertTrue(engine.matchesPrivate("tanmay", "sarah"));
+
+        engine.clear();
+        assertTrue(engine.isEmpty());
+        assertFalse(engine.matchesGroup("team", Arrays.asList("avik")));
+    }
+
+    @Test
+    void copiesGoToEverySink() throws IOException, InterruptedException {
+        Path capture = Files.createTempFile("capture", ".log");
+        List<Message> agency = new CopyOnWriteArrayList<>();
+        CaptureFile file = new CaptureFile(capture.toString());
+        InterceptionEngine engine = new InterceptionEngine(Arrays.<Consumer<Message>>asList(agency::add, file));
+        try {
+            engine.intercept(Message.makePrivateMessage("cole", "avik", "hi"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (agency.isEmpty() || Files.readAllLines(capture, StandardCharsets.UTF_8).isEmpty()) {
+                assertTrue(System.currentTimeMillis() < deadline, "timed out");
+                Thread.sleep(10);
+            }
+            assertEquals(1, engine.getIntercepted());
+            assertEquals("hi", agency.get(0).getText());
+            assertTrue(Files.readAllLines(capture, StandardCharsets.UTF_8).get(0)
+                    .endsWith("PVT 4 cole 4 avik 2 hi"));
+        } finally {
+            file.close();
+            Files.delete(capture);
+        }
+    }
+
+    @Test
+    void copiesBeyondTheQueueAreDropped() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Message> agency = new CopyOnWriteArrayList<>();
+        Consumer<Message> slow = msg -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            agency.add(msg);
+        };
+        InterceptionEngine engine = new InterceptionEngine(Collections.singletonList(slow), 2);
+
+        // One copy is being handed over, two wait, and the rest are dropped.
+        engine.intercept(Message.makePrivateMessage("cole", "avik", "0"));
+        started.await();
+        for (int i = 1; i < 5; i++) {
+            engine.intercept(Message.makePrivateMessage("cole", "avik", Integer.toString(i)));
+        }
+        assertEquals(5, engine.getIntercepted());
+        assertEquals(2, engine.getDropped());
+        assertTrue(engine.report().endsWith("5 msgs copied, 2 dropped"));
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (agency.size() < 3) {
+            assertTrue(System.currentTimeMillis() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+        assertEquals("2", agency.get(2).getText());
+    }
+}
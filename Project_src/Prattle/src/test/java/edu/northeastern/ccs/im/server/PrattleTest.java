@@ -11,10 +11,9 @@ import java.net.InetSocketAddress;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -25,7 +24,7 @@ import static org.junit.jupiter.api.Assertions.*;
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class PrattleTest {
 
-    ConcurrentLinkedQueue<ClientRunnable> active;
+    Set<ClientRunnable> active;
     ServerSocketChannel serverSocket;
     List<IMConnection> clientTerminals;
 
@@ -50,7 +49,7 @@ class PrattleTest {
         try {
             Field f = Prattle.class.getDeclaredField("active");
             f.setAccessible(true);
-            active = (ConcurrentLinkedQueue<ClientRunnable>) f.get(null);
+            active = (Set<ClientRunnable>) f.get(null);
         }catch(Exception e){
             e.printStackTrace();
             fail();
@@ -107,42 +106,34 @@ class PrattleTest {
     }
 
     @Test
-    void addRemoveIPMap() {
-        // use reflection to look at the IP map after changing it
-        try {
-            Field f = Prattle.class.getDeclaredField("user_ip_map");
-            f.setAccessible(true);
-            // remove the user we set up in BeforeEach
-            Prattle.removeFromIPMap("avik");
-
-            Prattle.addIPtoMap("me", "127.0.0.1");
-            HashMap<String, String> res = (HashMap<String, String>) f.get(null);
-            assertEquals(1, res.size());
-            assertEquals("127.0.0.1", res.get("me"));
-
-            Prattle.addIPtoMap("you", "127.0.0.1");
-            assertEquals(2, res.size());
+    void addRemoveSessions() {
+        SessionRegistry sessions = Prattle.getSessionRegistry();
+        int before = sessions.size();
 
-            Prattle.removeFromIPMap("you");
-            assertEquals(1, res.size());
-            assertFalse(res.containsKey("you"));
-            assertTrue(res.containsKey("me"));
+        SessionStats me = sessions.open("me", "127.0.0.1", null);
+        assertEquals(before + 1, sessions.size());
+        assertEquals("127.0.0.1", sessions.getAddress("me"));
 
-            Prattle.removeFromIPMap("someone");
-            assertEquals(1, res.size());
+        SessionStats you = sessions.open("you", "127.0.0.1", null);
+        assertEquals(before + 2, sessions.size());
 
-            Prattle.addIPtoMap("me", "127.4.4.4");
-            assertEquals(1, res.size());
-            assertEquals("127.4.4.4", res.get("me"));
+        sessions.close("you", you);
+        assertEquals(before + 1, sessions.size());
+        assertNull(sessions.getAddress("you"));
+        assertEquals("127.0.0.1", sessions.getAddress("me"));
 
-            Prattle.removeFromIPMap("me");
-            assertEquals(0, res.size());
+        sessions.close("someone", you);
+        assertEquals(before + 1, sessions.size());
 
-        }catch(Exception e){
-            e.printStackTrace();
-            fail("couldn't access Prattle ip map for testing");
-        }
+        SessionStats meAgain = sessions.open("me", "127.4.4.4", null);
+        assertEquals(before + 1, sessions.size());
+        assertEquals("127.4.4.4", sessions.getAddress("me"));
+        // The session that was replaced can no longer remove the new one.
+        sessions.close("me", me);
+        assertEquals("127.4.4.4", sessions.getAddress("me"));
 
+        sessions.close("me", meAgain);
+        assertEquals(before, sessions.size());
     }
 
     @Test
@@ -214,14 +205,16 @@ class PrattleTest {
     	list2.add("avik");
     	list3.add("tanmay");
     	
-    	assertTrue(Prattle.checkUser(list1, list2));
-    	assertFalse(Prattle.checkUser(list1, list3));
+    	InterceptionEngine interception = new InterceptionEngine(new ArrayList<>());
+    	interception.addUsers(list1);
+    	assertTrue(interception.matchesGroup("team", list2));
+    	assertFalse(interception.matchesGroup("team", list3));
     }
     @Test
     void groupMessage() {
         // note: this test will only work if both Cole and Avik are in the "team" group in our database!
         Message testMsg = Message.makeGroupMessage("Cole", "team", "hi test users");
-        Prattle.groupMessage(testMsg, "Cole", testMsg.getRecipientName(),null,null);
+        Prattle.groupMessage(testMsg, "Cole", testMsg.getRecipientName());
         // ensure all the client sockets received this!
         // TODO: solve duplicate threads setup issue in this test class
         /*try {
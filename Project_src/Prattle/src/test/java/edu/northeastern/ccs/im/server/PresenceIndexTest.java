@@ -0,0 +1,45 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the PresenceIndex class.
+ */
+class PresenceIndexTest {
+
+    @Test
+    void lookupIgnoresCase() throws IOException {
+        PresenceIndex index = new PresenceIndex();
+        ClientRunnable client = new ClientRunnable(SocketChannel.open());
+        index.add("Cole", client);
+        assertTrue(index.isOnline("cole"));
+        assertTrue(index.get("COLE").contains(client));
+        assertFalse(index.isOnline("Sarah"));
+        assertTrue(index.get(null).isEmpty());
+    }
+
+    @Test
+    void userStaysOnlineUntilTheirLastClientGoes() throws IOException {
+        PresenceIndex index = new PresenceIndex();
+        ClientRunnable phone = new ClientRunnable(SocketChannel.open());
+        ClientRunnable laptop = new ClientRunnable(SocketChannel.open());
+        index.add("Cole", phone);
+        index.add("cole", laptop);
+        assertEquals(1, index.size());
+        assertEquals(2, index.get("Cole").size());
+
+        index.remove("Cole", phone);
+        assertTrue(index.isOnline("Cole"));
+        // Removing a client twice, or one that was never added, is harmless.
+        index.remove("Cole", phone);
+        index.remove("Sarah", phone);
+        index.remove("COLE", laptop);
+        assertFalse(index.isOnline("Cole"));
+        assertEquals(0, index.size());
+    }
+}
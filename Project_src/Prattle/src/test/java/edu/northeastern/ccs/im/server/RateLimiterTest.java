@@ -0,0 +1,115 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import edu.northeastern.ccs.im.Message.MessageType;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the token buckets that limit how quickly clients send messages.
+ */
+class RateLimiterTest {
+
+    @Test
+    void bucketAllowsABurstThenRefills() {
+        TokenBucket bucket = new TokenBucket(10, 5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(now), "token " + i);
+        }
+        assertFalse(bucket.tryAcquire(now));
+        assertFalse(bucket.isFull(now));
+
+        // One token comes back every tenth of a second.
+        long later = now + TimeUnit.MILLISECONDS.toNanos(100);
+        assertTrue(bucket.tryAcquire(later));
+        assertFalse(bucket.tryAcquire(later));
+
+        // A long quiet spell refills the bucket, but no further.
+        long muchLater = later + TimeUnit.SECONDS.toNanos(60);
+        assertTrue(bucket.isFull(muchLater));
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire(muchLater));
+        }
+        assertFalse(bucket.tryAcquire(muchLater));
+    }
+
+    @Test
+    void typeLimitsApplyPerUser() {
+        RateLimiter limiter = new RateLimiter(0, 0, 0, 0);
+        limiter.setTypeLimit(MessageType.BROADCAST, 1, 2);
+        assertTrue(limiter.tryAcquire("cole", "10.0.0.1", MessageType.BROADCAST));
+        assertTrue(limiter.tryAcquire("cole", "10.0.0.1", MessageType.BROADCAST));
+        assertFalse(limiter.tryAcquire("cole", "10.0.0.1", MessageType.BROADCAST));
+        // Other users and other types are not held back.
+        assertTrue(limiter.tryAcquire("sarah", "10.0.0.1", MessageType.BROADCAST));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire("cole", "10.0.0.1", MessageType.PRIVATE));
+        }
+    }
+
+    @Test
+    void rejectedMessagesCostNoQuota() {
+        RateLimiter limiter = new RateLimiter(1, 3, 1, 2);
+        limiter.setTypeLimit(MessageType.GROUP, 1, 2);
+        assertTrue(limiter.tryAcquire("sarah", "10.0.0.1", MessageType.PRIVATE));
+        assertTrue(limiter.tryAcquire("sarah", "10.0.0.1", MessageType.PRIVATE));
+        // Turned away by the address limit, which keeps cole's tokens.
+        assertFalse(limiter.tryAcquire("cole", "10.0.0.1", MessageType.GROUP));
+        assertFalse(limiter.tryAcquire("cole", "10.0.0.1", MessageType.GROUP));
+        assertTrue(limiter.tryAcquire("cole", "10.0.0.2", MessageType.GROUP));
+        assertTrue(limiter.tryAcquire("cole", "10.0.0.2", MessageType.GROUP));
+        // Turned away by the type limit, which gives back his user token.
+        assertFalse(limiter.tryAcquire("cole", "10.0.0.3", MessageType.GROUP));
+        assertTrue(limiter.tryAcquire("cole", "10.0.0.3", MessageType.PRIVATE));
+    }
+
+    @Test
+    void addressLimitCoversEveryUserOnIt() {
+        RateLimiter limiter = new RateLimiter(0, 0, 1, 3);
+        assertTrue(limiter.tryAcquire("a", "10.0.0.1", MessageType.PRIVATE));
+        assertTrue(limiter.tryAcquire("b", "10.0.0.1", MessageType.PRIVATE));
+        assertTrue(limiter.tryAcquire("c", "10.0.0.1", MessageType.GROUP));
+        assertFalse(limiter.tryAcquire("d", "10.0.0.1", MessageType.PRIVATE));
+        assertTrue(limiter.tryAcquire("d", "10.0.0.2", MessageType.PRIVATE));
+    }
+
+    @Test
+    void idleBucketsAreForgotten() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(1000, 1, 0, 0);
+        assertTrue(limiter.tryAcquire("cole", null, MessageType.PRIVATE));
+        assertEquals(1, limiter.getBucketCount());
+        Thread.sleep(5);
+        limiter.evictIdle();
+        assertEquals(0, limiter.getBucketCount());
+    }
+
+    @Test
+    void clientsNotLoggedInAreLimitedByAddress() {
+        RateLimiter limiter = new RateLimiter(1, 1, 1, 2);
+        assertTrue(limiter.tryAcquire(null, "10.0.0.1", MessageType.HELLO));
+        assertTrue(limiter.tryAcquire(null, "10.0.0.1", MessageType.REGISTER));
+        assertFalse(limiter.tryAcquire(null, "10.0.0.1", MessageType.HELLO));
+        assertTrue(limiter.tryAcquire(null, "10.0.0.2", MessageType.HELLO));
+    }
+
+    @Test
+    void violationsAreCountedOverAWindow() throws IOException {
+        ClientRunnable client = new ClientRunnable(SocketChannel.open());
+        long now = System.nanoTime();
+        for (int i = 1; i < 50; i++) {
+            assertFalse(client.countViolation(now), "violation " + i);
+        }
+        // Once the window has passed, counting starts again.
+        long later = now + TimeUnit.SECONDS.toNanos(61);
+        for (int i = 1; i < 50; i++) {
+            assertFalse(client.countViolation(later), "violation " + i);
+        }
+        assertTrue(client.countViolation(later));
+    }
+}
@@ -0,0 +1,68 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the way a ReactorGroup spreads new connections over its reactors.
+ * The reactors are never started, so registrations are only counted.
+ */
+class ReactorGroupTest {
+
+    private ScheduledExecutorService workers;
+
+    @BeforeEach
+    void setUp() {
+        workers = Executors.newScheduledThreadPool(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        workers.shutdownNow();
+    }
+
+    @Test
+    void assignmentFromName() {
+        assertEquals(ReactorGroup.Assignment.ROUND_ROBIN, ReactorGroup.Assignment.fromName("round-robin"));
+        assertEquals(ReactorGroup.Assignment.ROUND_ROBIN, ReactorGroup.Assignment.fromName("ROUND_ROBIN"));
+        assertEquals(ReactorGroup.Assignment.LEAST_LOADED, ReactorGroup.Assignment.fromName("least-loaded"));
+        assertEquals(ReactorGroup.Assignment.LEAST_LOADED, ReactorGroup.Assignment.fromName(null));
+    }
+
+    @Test
+    void roundRobinTakesTurns() throws IOException {
+        ReactorGroup group = new ReactorGroup(3, ReactorGroup.Assignment.ROUND_ROBIN, workers);
+        assertEquals(3, group.size());
+        ClientReactor first = group.choose();
+        ClientReactor second = group.choose();
+        ClientReactor third = group.choose();
+        assertNotSame(first, second);
+        assertNotSame(second, third);
+        assertNotSame(first, third);
+        assertSame(first, group.choose());
+    }
+
+    @Test
+    void leastLoadedEvensOutConnections() throws IOException {
+        ReactorGroup group = new ReactorGroup(2, ReactorGroup.Assignment.LEAST_LOADED, workers);
+        for (int i = 0; i < 4; i++) {
+            group.register(new ClientRunnable(SocketChannel.open()));
+        }
+        assertArrayEquals(new int[]{2, 2}, group.getLoads());
+        assertTrue(group.loadReport().contains("prattle-reactor-1=2 conn"));
+    }
+
+    @Test
+    void atLeastOneReactor() throws IOException {
+        ReactorGroup group = new ReactorGroup(0, ReactorGroup.Assignment.LEAST_LOADED, workers);
+        assertEquals(1, group.size());
+    }
+}
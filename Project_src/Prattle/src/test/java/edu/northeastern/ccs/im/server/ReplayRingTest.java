@@ -0,0 +1,152 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import edu.northeastern.ccs.im.Message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the ReplayRing and ResumeRegistry classes.
+ */
+class ReplayRingTest {
+
+    private static Message pvt(int i) {
+        return Message.makePrivateMessage("Sarah", "Cole", "message " + i);
+    }
+
+    private static List<String> texts(List<Message> messages) {
+        List<String> texts = new ArrayList<>();
+        for (Message msg : messages) {
+            texts.add(msg.getText());
+        }
+        return texts;
+    }
+
+    @Test
+    void onlyMessagesFromOtherUsersAreNumbered() {
+        assertTrue(ReplayRing.isReplayable(pvt(1)));
+        assertTrue(ReplayRing.isReplayable(Message.makeBroadcastMessage("Sarah", "hi")));
+        assertTrue(ReplayRing.isReplayable(Message.makeGroupMessage("Sarah", "team", "hi")));
+        assertFalse(ReplayRing.isReplayable(Message.makeAcknowledgeMessage("Cole", "ok")));
+        assertFalse(ReplayRing.isReplayable(Message.makeHistoryResponseMessage("Cole", "old")));
+    }
+
+    @Test
+    void resumeResendsOnlyWhatWasMissed() throws IOException {
+        ClientRunnable first = new ClientRunnable(SocketChannel.open());
+        ClientRunnable second = new ClientRunnable(SocketChannel.open());
+        ReplayRing ring = new ReplayRing("token", 8, first);
+        for (int i = 1; i <= 3; i++) {
+            assertTrue(ring.record(first, pvt(i)));
+        }
+        ring.detach(first, System.nanoTime());
+        assertFalse(ring.record(first, pvt(0)));
+        assertTrue(ring.recordOffline(pvt(4)));
+        assertEquals(4, ring.getLastSequence());
+
+        // The client saw the first two; the third was lost with the connection.
+        List<Message> missed = new ArrayList<>();
+        assertEquals(1, ring.attach(second, 2, missed));
+        assertEquals(Arrays.asList("message 3", "message 4"), texts(missed));
+        // Resent messages are numbered again, after the last one the client saw.
+        assertEquals(2, ring.getLastSequence());
+        assertEquals(0, ring.online(second, missed));
+        assertFalse(ring.recordOffline(pvt(5)));
+        assertTrue(ring.record(second, missed.get(0)));
+        assertEquals(3, ring.getLastSequence());
+        // The old connection going away does not take the session with it.
+        ring.detach(first, System.nanoTime());
+        assertTrue(ring.record(second, missed.get(1)));
+    }
+
+    @Test
+    void messagesBeforeTheClientIsOnlineAreHeld() throws IOException {
+        ClientRunnable first = new ClientRunnable(SocketChannel.open());
+        ClientRunnable second = new ClientRunnable(SocketChannel.open());
+        ReplayRing ring = new ReplayRing("token", 8, first);
+        ring.record(first, pvt(1));
+        ring.detach(first, System.nanoTime());
+        ring.recordOffline(pvt(2));
+
+        List<Message> missed = new ArrayList<>();
+        assertEquals(1, ring.attach(second, 1, missed));
+        // Sent after the session was taken over but before the client was
+        // listed as online, so it could not be queued for the client.
+        assertTrue(ring.recordOffline(pvt(3)));
+        assertEquals(1, ring.online(second, missed));
+        assertEquals(Arrays.asList("message 2", "message 3"), texts(missed));
+        assertEquals(1, ring.getLastSequence());
+        assertFalse(ring.recordOffline(pvt(4)));
+        assertEquals(0, ring.online(second, missed));
+    }
+
+    @Test
+    void overrunBeforeTheClientIsOnlineFallsBackToTheArchive() throws IOException {
+        ClientRunnable first = new ClientRunnable(SocketChannel.open());
+        ClientRunnable second = new ClientRunnable(SocketChannel.open());
+        ReplayRing ring = new ReplayRing("token", 2, first);
+        ring.detach(first, System.nanoTime());
+
+        List<Message> missed = new ArrayList<>();
+        assertEquals(0, ring.attach(second, 0, missed));
+        for (int i = 1; i <= 3; i++) {
+            ring.recordOffline(pvt(i));
+        }
+        assertEquals(-1, ring.online(second, missed));
+        assertTrue(missed.isEmpty());
+        assertEquals(0, ring.getLastSequence());
+    }
+
+    @Test
+    void overrunRingFallsBackToTheArchive() throws IOException {
+        ClientRunnable first = new ClientRunnable(SocketChannel.open());
+        ClientRunnable second = new ClientRunnable(SocketChannel.open());
+        ReplayRing ring = new ReplayRing("token", 4, first);
+        ring.record(first, pvt(1));
+        ring.record(first, pvt(2));
+        ring.detach(first, System.nanoTime());
+        for (int i = 3; i <= 7; i++) {
+            ring.recordOffline(pvt(i));
+        }
+        List<Message> missed = new ArrayList<>();
+        assertEquals(-1, ring.attach(second, 1, missed));
+        // Message 3 was pushed out, so only the archive has everything now.
+        assertTrue(missed.isEmpty());
+        assertEquals(1, ring.getLastSequence());
+    }
+
+    @Test
+    void registryChecksTokensAndForgetsExpiredSessions() throws IOException {
+        ResumeRegistry registry = new ResumeRegistry(16, 1000);
+        ClientRunnable client = new ClientRunnable(SocketChannel.open());
+        ReplayRing ring = registry.open("Cole", client);
+        assertEquals(32, ring.getToken().length());
+        assertSame(ring, registry.find("cole", ring.getToken()));
+        assertNull(registry.find("Cole", "wrong"));
+        assertNull(registry.find("Sarah", ring.getToken()));
+
+        assertFalse(registry.recordOffline("Cole", pvt(1)));
+        long now = System.nanoTime();
+        ring.detach(client, now);
+        assertTrue(registry.recordOffline("COLE", pvt(1)));
+        assertFalse(registry.recordOffline("Sarah", pvt(1)));
+
+        assertEquals(0, registry.evictExpired(now + TimeUnit.MILLISECONDS.toNanos(500)));
+        assertEquals(1, registry.evictExpired(now + TimeUnit.SECONDS.toNanos(2)));
+        assertNull(registry.find("Cole", ring.getToken()));
+
+        ReplayRing newer = registry.open("Cole", client);
+        registry.close("Cole", ring);
+        assertEquals(1, registry.size());
+        registry.close("Cole", newer);
+        assertEquals(0, registry.size());
+    }
+}
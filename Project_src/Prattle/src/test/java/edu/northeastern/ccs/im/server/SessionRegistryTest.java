@@ -0,0 +1,54 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import edu.northeastern.ccs.im.Message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the SessionRegistry class.
+ */
+class SessionRegistryTest {
+
+    @Test
+    void trafficIsCountedPerSession() {
+        SessionRegistry sessions = new SessionRegistry();
+        SessionStats stats = sessions.open("Cole", "/127.0.0.1:4545", null);
+        Message msg = Message.makeBroadcastMessage("Cole", "hello");
+
+        stats.received(msg);
+        stats.sent(msg);
+        stats.sent(msg);
+        assertSame(stats, sessions.get("cole"));
+        assertEquals(1, stats.getMessagesIn());
+        assertEquals(2, stats.getMessagesOut());
+        assertEquals(msg.encodedLength(), stats.getBytesIn());
+        assertEquals(2L * msg.encodedLength(), stats.getBytesOut());
+        assertEquals(0, stats.getQueueDepth());
+        assertTrue(stats.getLastActiveMillis() >= stats.getLoginMillis());
+        assertNull(sessions.get(null));
+    }
+
+    @Test
+    void topTalkersAreTheBusiestFirst() {
+        SessionRegistry sessions = new SessionRegistry();
+        Message msg = Message.makeBroadcastMessage("x", "hi");
+        for (int i = 0; i < 10; i++) {
+            SessionStats stats = sessions.open("user" + i, null, null);
+            for (int j = 0; j < i; j++) {
+                stats.received(msg);
+            }
+        }
+
+        List<SessionStats> top = sessions.topTalkers(3);
+        assertEquals(3, top.size());
+        assertEquals("user9", top.get(0).getUser());
+        assertEquals("user8", top.get(1).getUser());
+        assertEquals("user7", top.get(2).getUser());
+        assertTrue(sessions.topTalkers(0).isEmpty());
+        assertTrue(sessions.report(1).startsWith("top talkers of 10 sessions: user9@"));
+    }
+}
@@ -0,0 +1,97 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the TimingWheel class. Most tests turn the wheel by hand so that
+ * they do not depend on how fast the machine is.
+ */
+class TimingWheelTest {
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    void taskRunsOnceItsDelayHasPassed() {
+        TimingWheel wheel = new TimingWheel(10, 8);
+        AtomicInteger runs = new AtomicInteger();
+        long now = System.nanoTime();
+        TimingWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 50);
+        wheel.advance(now + ms(30));
+        assertEquals(0, runs.get());
+        assertFalse(timeout.isDone());
+        wheel.advance(now + ms(80));
+        assertEquals(1, runs.get());
+        assertTrue(timeout.isDone());
+        assertEquals(0, wheel.size());
+        wheel.advance(now + ms(500));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void delaysLongerThanOneTurnWaitForTheirRound() {
+        TimingWheel wheel = new TimingWheel(10, 4);
+        AtomicInteger runs = new AtomicInteger();
+        long now = System.nanoTime();
+        wheel.schedule(runs::incrementAndGet, 105);
+        // The slot comes round every 40 ms, so it is passed twice first.
+        wheel.advance(now + ms(90));
+        assertEquals(0, runs.get());
+        assertEquals(1, wheel.size());
+        wheel.advance(now + ms(130));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void cancelledTaskNeverRunsAndLeavesTheWheel() {
+        TimingWheel wheel = new TimingWheel(10, 8);
+        AtomicInteger runs = new AtomicInteger();
+        long now = System.nanoTime();
+        TimingWheel.Timeout early = wheel.schedule(runs::incrementAndGet, 20);
+        TimingWheel.Timeout late = wheel.schedule(runs::incrementAndGet, 40);
+        assertTrue(early.cancel());
+        wheel.advance(now + ms(10));
+        assertTrue(late.cancel());
+        assertFalse(late.cancel());
+        assertEquals(1, wheel.size());
+        wheel.advance(now + ms(200));
+        assertEquals(0, runs.get());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void failingTaskDoesNotStopTheWheel() {
+        TimingWheel wheel = new TimingWheel(10, 8);
+        AtomicInteger runs = new AtomicInteger();
+        long now = System.nanoTime();
+        wheel.schedule(() -> {
+            throw new IllegalStateException("boom");
+        }, 10);
+        wheel.schedule(runs::incrementAndGet, 10);
+        wheel.advance(now + ms(50));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void wheelThreadRunsTasks() throws InterruptedException {
+        TimingWheel wheel = new TimingWheel(5, 16);
+        Thread thread = new Thread(wheel, "test-timers");
+        thread.start();
+        try {
+            CountDownLatch ran = new CountDownLatch(1);
+            wheel.schedule(ran::countDown, 20);
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+        } finally {
+            wheel.stop();
+            thread.join(5000);
+        }
+        assertFalse(thread.isAlive());
+    }
+}
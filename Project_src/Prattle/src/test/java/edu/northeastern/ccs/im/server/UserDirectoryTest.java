@@ -0,0 +1,145 @@
+package edu.northeastern.ccs.im.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.northeastern.ccs.im.User;
+import edu.northeastern.ccs.im.UserCrud;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the UserDirectory class.
+ */
+class UserDirectoryTest {
+
+    /** User store held in a map, counting how often all of it is read. */
+    private static class StubUserCrud implements UserCrud {
+        private final Map<String, Integer> users = new HashMap<>();
+        private int fullReads;
+
+        @Override
+        public void addUser(User user) {
+            users.put(user.getUsername(), users.size() + 1);
+        }
+
+        @Override
+        public Boolean getUser(User user) {
+            return users.containsKey(user.getUsername());
+        }
+
+        @Override
+        public void updateUser(User user) {
+        }
+
+        @Override
+        public void deleteUser(User user) {
+            users.remove(user.getUsername());
+        }
+
+        @Override
+        public List<String> getAllUsernames() {
+            fullReads++;
+            return new ArrayList<>(users.keySet());
+        }
+
+        @Override
+        public Map<String, Integer> getAllUserIds() {
+            fullReads++;
+            return new HashMap<>(users);
+        }
+
+        @Override
+        public int getUserId(String username) {
+            Integer id = users.get(username);
+            return (id != null) ? id : -1;
+        }
+
+        @Override
+        public boolean changeParentalControl(User user, String newStatus) {
+            return false;
+        }
+
+        @Override
+        public String getParentalControl(String username) {
+            return null;
+        }
+    }
+
+    @Test
+    void usersAreReadOnceAndFoundRegardlessOfCase() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.users.put("Cole", 7);
+        crud.users.put("sarah", 9);
+        UserDirectory directory = new UserDirectory(crud);
+
+        assertTrue(directory.exists("cole"));
+        assertEquals(9, directory.getId("SARAH"));
+        assertFalse(directory.exists("Rahul"));
+        assertFalse(directory.exists(null));
+        assertEquals(1, crud.fullReads);
+        assertEquals(2, directory.load());
+        assertEquals(1, crud.fullReads);
+    }
+
+    @Test
+    void registrationsAndDeletionsAreWrittenThrough() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.users.put("Cole", 1);
+        UserDirectory directory = new UserDirectory(crud);
+        directory.load();
+
+        User user = new User();
+        user.setUsername("Rahul");
+        crud.addUser(user);
+        directory.userAdded("Rahul");
+        assertEquals(2, directory.getId("rahul"));
+
+        User cole = new User();
+        cole.setUsername("Cole");
+        crud.deleteUser(cole);
+        directory.userDeleted("COLE");
+        assertFalse(directory.exists("Cole"));
+        assertEquals(1, directory.size());
+        assertEquals(1, crud.fullReads);
+    }
+
+    @Test
+    void emptyReadIsRetried() {
+        StubUserCrud crud = new StubUserCrud();
+        UserDirectory directory = new UserDirectory(crud);
+
+        assertFalse(directory.exists("Cole"));
+        crud.users.put("Cole", 1);
+        assertTrue(directory.exists("Cole"));
+        assertEquals(2, crud.fullReads);
+    }
+
+    @Test
+    void usersRegisteredElsewhereAreReadWhenAskedFor() {
+        StubUserCrud crud = new StubUserCrud();
+        crud.users.put("cole", 7);
+        UserDirectory directory = new UserDirectory(crud);
+        assertEquals(1, directory.load());
+
+        // Another node registers a user this one has never been told about.
+        crud.users.put("sarah", 9);
+        assertEquals(9, directory.getId("sarah"));
+        assertEquals(2, directory.size());
+
+        // And deletes one.
+        crud.users.remove("cole");
+        assertEquals(-1, directory.refresh("cole"));
+        assertFalse(directory.exists("cole"));
+        assertEquals(1, crud.fullReads);
+
+        directory.reload();
+        assertEquals(0, directory.size());
+        assertEquals(1, directory.load());
+        assertEquals(2, crud.fullReads);
+    }
+}